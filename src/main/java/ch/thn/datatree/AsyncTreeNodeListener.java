@@ -0,0 +1,341 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+
+/**
+ * A {@link TreeNodeListener} which delivers the events to another listener on 
+ * an {@link Executor}, so the thread which modifies the tree does not have to 
+ * wait for the listener.<br />
+ * <br />
+ * The events are queued and delivered one after the other in the order they 
+ * have been fired, never concurrently, even if the executor has multiple 
+ * threads. To get the events of a whole tree in order, register this listener 
+ * as sub tree listener on the root node 
+ * (see {@link CollectionTreeNodeInterface#addSubtreeListener(TreeNodeListener)}).<br />
+ * <br />
+ * The queue is bounded. The {@link OverflowPolicy} defines what happens when 
+ * an event is fired while the queue is full. The events are delivered as they 
+ * have been created; the tree might have changed again by the time the 
+ * listener receives them.<br />
+ * <br />
+ * If the executor rejects the delivery, the events stay queued and the next 
+ * event hands them to the executor again. With {@link OverflowPolicy#BLOCK}, 
+ * the thread which fires the event delivers the queued events itself instead.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <N>
+ */
+public class AsyncTreeNodeListener<N extends CollectionTreeNodeInterface<?, N>> 
+	implements TreeNodeListener<N> {
+	
+	/**
+	 * What to do with an event when the queue is full
+	 *
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The thread which fires the event waits until there is space in the 
+		 * queue. If there is no delivery running which could make space, the 
+		 * thread delivers the queued events itself. The only events which are 
+		 * queued beyond the capacity are the events fired by the listener itself 
+		 * (while it is delivering an event), waiting for itself would never end.
+		 */
+		BLOCK, 
+		
+		/**
+		 * The new event is discarded
+		 */
+		DISCARD_NEWEST, 
+		
+		/**
+		 * The oldest event in the queue is discarded to make space for the new event
+		 */
+		DISCARD_OLDEST;
+	}
+	
+	private final TreeNodeListener<N> listener;
+	private final Executor executor;
+	private final int capacity;
+	private final OverflowPolicy overflowPolicy;
+	
+	//Guarded by the queue
+	private final ArrayDeque<TreeNodeEvent<N>> queue = new ArrayDeque<TreeNodeEvent<N>>();
+	//True while a drain task is submitted to the executor or running
+	private boolean draining = false;
+	private Thread drainThread = null;
+	private long discardedCount = 0;
+	
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+	
+	/**
+	 * 
+	 * 
+	 * @param listener The listener which receives the events
+	 * @param executor The executor which runs the delivery
+	 * @param capacity The maximum number of events waiting for delivery
+	 * @param overflowPolicy What to do when the queue is full
+	 */
+	public AsyncTreeNodeListener(TreeNodeListener<N> listener, Executor executor, 
+			int capacity, OverflowPolicy overflowPolicy) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity has to be at least 1");
+		}
+		
+		this.listener = listener;
+		this.executor = executor;
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+	}
+	
+	/**
+	 * Returns the listener which receives the events
+	 * 
+	 * @return
+	 */
+	public TreeNodeListener<N> getListener() {
+		return listener;
+	}
+	
+	/**
+	 * Returns the number of events waiting for delivery
+	 * 
+	 * @return
+	 */
+	public int getQueuedEventCount() {
+		synchronized (queue) {
+			return queue.size();
+		}
+	}
+	
+	/**
+	 * Returns the number of events which have been discarded because the 
+	 * queue was full
+	 * 
+	 * @return
+	 */
+	public long getDiscardedEventCount() {
+		synchronized (queue) {
+			return discardedCount;
+		}
+	}
+	
+	/**
+	 * Waits until all queued events have been delivered
+	 * 
+	 * @param timeout
+	 * @param unit
+	 * @return <code>true</code> if all events have been delivered, <code>false</code> 
+	 * if the timeout elapsed before
+	 * @throws InterruptedException
+	 */
+	public boolean awaitDelivery(long timeout, TimeUnit unit) throws InterruptedException {
+		long end = System.nanoTime() + unit.toNanos(timeout);
+		
+		synchronized (queue) {
+			while (draining) {
+				long remaining = end - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				
+				TimeUnit.NANOSECONDS.timedWait(queue, remaining);
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Queues the event and makes sure a drain task is running
+	 * 
+	 * @param e
+	 */
+	private void enqueue(TreeNodeEvent<N> e) {
+		while (true) {
+			synchronized (queue) {
+				if (queue.size() < capacity || Thread.currentThread() == drainThread) {
+					queue.add(e);
+					
+					if (draining) {
+						return;
+					}
+					
+					draining = true;
+					break;
+				}
+				
+				if (overflowPolicy == OverflowPolicy.DISCARD_NEWEST) {
+					discardedCount++;
+					return;
+				} else if (overflowPolicy == OverflowPolicy.DISCARD_OLDEST) {
+					queue.poll();
+					discardedCount++;
+					continue;
+				} else if (draining) {
+					try {
+						queue.wait();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						discardedCount++;
+						return;
+					}
+					
+					continue;
+				}
+				
+				//Nobody makes space (the executor rejected the last drain task)
+				draining = true;
+			}
+			
+			drain();
+		}
+		
+		try {
+			executor.execute(drainTask);
+		} catch (RejectedExecutionException ex) {
+			if (overflowPolicy == OverflowPolicy.BLOCK) {
+				drain();
+			} else {
+				//Stays queued until the next event
+				synchronized (queue) {
+					draining = false;
+					queue.notifyAll();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Delivers the queued events until the queue is empty. If the listener 
+	 * throws an exception, a new drain task is submitted for the remaining 
+	 * events and the exception is passed on to the executor (or the thread 
+	 * which delivers the events itself). If the executor rejects the new task, 
+	 * the remaining events stay queued until the next event is fired.
+	 * 
+	 */
+	private void drain() {
+		boolean done = false;
+		
+		try {
+			while (true) {
+				TreeNodeEvent<N> e = null;
+				
+				synchronized (queue) {
+					e = queue.poll();
+					
+					if (e == null) {
+						draining = false;
+						drainThread = null;
+						done = true;
+						//Wakes up the threads waiting for space or for the delivery
+						queue.notifyAll();
+						return;
+					}
+					
+					drainThread = Thread.currentThread();
+					queue.notifyAll();
+				}
+				
+				deliver(e);
+			}
+		} finally {
+			if (! done) {
+				synchronized (queue) {
+					drainThread = null;
+				}
+				
+				try {
+					executor.execute(drainTask);
+				} catch (RejectedExecutionException ex) {
+					synchronized (queue) {
+						draining = false;
+						queue.notifyAll();
+					}
+					
+					//The exception of the listener is passed on, not this one
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param e
+	 */
+	private void deliver(TreeNodeEvent<N> e) {
+		switch (e.getEventType()) {
+		case CHILD_ADDED:
+			listener.childNodeAdded(e);
+			break;
+		case CHILD_REMOVED:
+			listener.childNodeRemoved(e);
+			break;
+		case VALUE_CHANGED:
+			listener.nodeValueChanged(e);
+			break;
+		case ADDED:
+			listener.addedToTree(e);
+			break;
+		case REMOVED:
+			listener.removedFromTree(e);
+			break;
+		default:
+			break;
+		}
+	}
+
+	@Override
+	public void childNodeRemoved(TreeNodeEvent<N> e) {
+		enqueue(e);
+	}
+
+	@Override
+	public void childNodeAdded(TreeNodeEvent<N> e) {
+		enqueue(e);
+	}
+
+	@Override
+	public void nodeValueChanged(TreeNodeEvent<N> e) {
+		enqueue(e);
+	}
+
+	@Override
+	public void addedToTree(TreeNodeEvent<N> e) {
+		enqueue(e);
+	}
+
+	@Override
+	public void removedFromTree(TreeNodeEvent<N> e) {
+		enqueue(e);
+	}
+
+}
@@ -0,0 +1,44 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+
+
+/**
+ * A {@link TreeNodeListener} which receives the changes made during a batch 
+ * (see {@link ch.thn.datatree.core.GenericCollectionTreeNode#beginBatch()}) as 
+ * one {@link TreeNodeBatchEvent} instead of one event per added or removed 
+ * child node. Listeners which do not implement this interface receive the single 
+ * events when the batch is committed.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <N>
+ */
+public interface BatchTreeNodeListener<N extends CollectionTreeNodeInterface<?, N>> extends TreeNodeListener<N> {
+	
+	/**
+	 * Called when a batch has been committed, with all child nodes which have 
+	 * been added or removed during the batch
+	 * 
+	 * @param e
+	 */
+	public void batchCommitted(TreeNodeBatchEvent<N> e);
+
+}
@@ -0,0 +1,187 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+
+/**
+ * This is an {@link Iterator} which travels through the tree level by level 
+ * (breadth first): first the start node, then all its child nodes, then all 
+ * their child nodes and so on.<br />
+ * The tree
+ * <pre>
+ * Head
+ * ├─ Child 0
+ * │  └─ Child 0.1
+ * ├─ Child 1
+ * │  ├─ Child 1.1
+ * │  ├─ Child 1.2
+ * </pre>
+ * would be iterated through as follows:<br />
+ * <pre>
+ * 1. Head
+ * 2. Child 0
+ * 3. Child 1
+ * 4. Child 0.1
+ * 5. Child 1.1
+ * 6. Child 1.2
+ * </pre>
+ * 
+ * When starting to iterate the tree at node "Child 1" without the <code>subtreeOnly</code> 
+ * flag, the iteration returns all nodes which follow "Child 1" in the level order of the 
+ * whole tree ("Child 1" -> "Child 0.1" -> "Child 1.1" -> ...). Since the nodes 
+ * of a level which come before the start node have to be known for this, the 
+ * levels above the start node are traveled through (without returning them) 
+ * when the iterator is created.<br />
+ * <br />
+ * The nodes which still have to be returned are kept in an array queue.
+ * 
+ * 
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <N>
+ */
+public class BreadthFirstTreeIterator<N extends CollectionTreeNodeInterface<?, N>> 
+	implements Iterator<N> {
+	
+	private static final int INITIAL_QUEUE_SIZE = 16;
+	
+	//Circular queue
+	private Object[] queue = null;
+	private int queueHead = 0;
+	private int queueSize = 0;
+	
+	/**
+	 * Iterates through the sub tree of the given start node (including the 
+	 * start node)
+	 * 
+	 * @param toIterate
+	 */
+	public BreadthFirstTreeIterator(N toIterate) {
+		this(toIterate, true);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param toIterate
+	 * @param subtreeOnly Only iterates through the sub tree of the given start node.
+	 */
+	@SuppressWarnings("unchecked")
+	public BreadthFirstTreeIterator(N toIterate, boolean subtreeOnly) {
+		queue = new Object[INITIAL_QUEUE_SIZE];
+		
+		if (subtreeOnly || toIterate.isRootNode()) {
+			enqueue(toIterate);
+		} else {
+			//Travel through the tree until the start node is next in line
+			enqueue(toIterate.getRootNode());
+			
+			while (queueSize > 0 && queue[queueHead] != toIterate) {
+				enqueueChildren((N)dequeue());
+			}
+		}
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return queueSize > 0;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public N next() {
+		if (queueSize == 0) {
+			throw new NoSuchElementException("Reached the end of the tree");
+		}
+		
+		N node = (N)dequeue();
+		enqueueChildren(node);
+		return node;
+	}
+	
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Removing is not supported");
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param node
+	 */
+	private void enqueueChildren(N node) {
+		if (node.isLeafNode()) {
+			return;
+		}
+		
+		Collection<N> children = node.getChildNodes();
+		
+		if (children instanceof RandomAccess && children instanceof List) {
+			//No need for an iterator
+			List<N> list = (List<N>)children;
+			int size = list.size();
+			for (int i = 0; i < size; i++) {
+				enqueue(list.get(i));
+			}
+		} else {
+			for (N child : children) {
+				enqueue(child);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param node
+	 */
+	private void enqueue(N node) {
+		if (queueSize == queue.length) {
+			//Grow and unwrap the queue
+			Object[] newQueue = new Object[queue.length * 2];
+			int firstPart = Math.min(queueSize, queue.length - queueHead);
+			System.arraycopy(queue, queueHead, newQueue, 0, firstPart);
+			System.arraycopy(queue, 0, newQueue, firstPart, queueSize - firstPart);
+			queue = newQueue;
+			queueHead = 0;
+		}
+		
+		queue[(queueHead + queueSize) % queue.length] = node;
+		queueSize++;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return
+	 */
+	private Object dequeue() {
+		Object node = queue[queueHead];
+		queue[queueHead] = null;
+		queueHead = (queueHead + 1) % queue.length;
+		queueSize--;
+		return node;
+	}
+	
+}
@@ -0,0 +1,51 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree;
+
+import java.util.Collection;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+
+
+/**
+ * Loads the child nodes of a node on demand. A node with a child loader does 
+ * not load its child nodes until they are accessed for the first time (through 
+ * {@link CollectionTreeNodeInterface#getChildNodes()}, 
+ * {@link CollectionTreeNodeInterface#getChildNodesCount()}, an iterator etc.).<br />
+ * <br />
+ * The loaded nodes which do not have child nodes themselves get the same child 
+ * loader, so the tree is loaded branch by branch when it is walked down. Loading 
+ * child nodes does not notify any {@link TreeNodeListener}s.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <N>
+ */
+public interface ChildLoader<N extends CollectionTreeNodeInterface<?, N>> {
+	
+	/**
+	 * Creates the child nodes of the given node. The returned nodes must not have 
+	 * a parent node yet. This method may be called on another thread when the 
+	 * child nodes are prefetched, it should therefore not modify the tree.
+	 * 
+	 * @param node The node to load the child nodes for
+	 * @return The child nodes, or an empty collection if the node is a leaf
+	 */
+	public Collection<N> loadChildNodes(N node);
+
+}
@@ -16,15 +16,25 @@
  */
 package ch.thn.datatree;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import ch.thn.datatree.core.CollectionTreeNodeInterface;
+import ch.thn.datatree.core.GenericCollectionTreeNode;
 import ch.thn.datatree.core.GenericKeySetTreeNode;
 import ch.thn.datatree.core.ListTreeNodeInterface;
+import ch.thn.datatree.frozen.FrozenTree;
+import ch.thn.datatree.frozen.FrozenTreeNode;
+import ch.thn.datatree.persistent.PersistentTree;
 
 /**
  *
@@ -77,6 +87,29 @@ public class DataTreeUtil {
 	}
 	
 	
+	/**
+	 * Creates an immutable and compact copy of the tree, starting at the given 
+	 * node. See {@link FrozenTree}.
+	 * 
+	 * @param node
+	 * @return The root node of the frozen tree
+	 */
+	public static <V, N extends CollectionTreeNodeInterface<V, N>> FrozenTreeNode<V> freeze(N node) {
+		return FrozenTree.freeze(node);
+	}
+	
+	/**
+	 * Creates an immutable copy of the tree, starting at the given node, from 
+	 * which new versions can be created without copying the whole tree. See 
+	 * {@link PersistentTree}.
+	 * 
+	 * @param node
+	 * @return The first version of the persistent tree
+	 */
+	public static <V, N extends CollectionTreeNodeInterface<V, N>> PersistentTree<V> persist(N node) {
+		return PersistentTree.copyOf(node);
+	}
+	
 	/**
 	 * Makes a copy of the whole tree, starting at the given node
 	 * 
@@ -102,6 +135,19 @@ public class DataTreeUtil {
 		return newNode;
 	}
 	
+	/**
+	 * Makes a copy of the whole tree, starting at the given node, which shares 
+	 * the child nodes with the source tree until one of the trees is modified. 
+	 * Only the nodes which are accessed in the copy or modified in either tree 
+	 * are actually copied. See {@link GenericCollectionTreeNode#copyTreeOnWrite()}.
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public static <N extends GenericCollectionTreeNode<?, N, ?>> N copyTreeOnWrite(N node) {
+		return node.copyTreeOnWrite();
+	}
+	
 	/**
 	 * 
 	 * 
@@ -319,6 +365,86 @@ public class DataTreeUtil {
 	
 	
 	
+	/**
+	 * Processes all nodes of the sub tree of the given node (including the node 
+	 * itself) in parallel. The sub tree is split into up to <code>parallelism</code> 
+	 * parts along its branches (see {@link TreeSplitIterator}) and each part is 
+	 * processed as a separate task with the given executor. This method returns 
+	 * when all nodes have been processed.<br />
+	 * <br />
+	 * The nodes are processed in no particular order and the processor is called 
+	 * concurrently from multiple threads. The tree must not be modified while 
+	 * it is processed.
+	 * 
+	 * @param node
+	 * @param processor
+	 * @param executor
+	 * @param parallelism The maximum number of parts to process in parallel
+	 * @throws InterruptedException If the current thread has been interrupted 
+	 * while waiting for the tasks to finish. The remaining tasks are cancelled.
+	 */
+	public static <N extends CollectionTreeNodeInterface<?, N>> void processParallel(N node, 
+			final TreeNodeProcessor<N> processor, ExecutorService executor, int parallelism) 
+					throws InterruptedException {
+		
+		List<TreeSplitIterator<N>> parts = new ArrayList<TreeSplitIterator<N>>();
+		parts.add(node.splitIterator());
+		
+		//Split all parts in each round, so that they are split evenly
+		boolean split = true;
+		while (split && parts.size() < parallelism) {
+			split = false;
+			
+			int partsCount = parts.size();
+			for (int i = 0; i < partsCount && parts.size() < parallelism; i++) {
+				TreeSplitIterator<N> newPart = parts.get(i).trySplit();
+				
+				if (newPart != null) {
+					parts.add(newPart);
+					split = true;
+				}
+			}
+		}
+		
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(parts.size());
+		
+		try {
+			for (final TreeSplitIterator<N> part : parts) {
+				futures.add(executor.submit(new Callable<Void>() {
+	
+					@Override
+					public Void call() throws Exception {
+						while (part.hasNext()) {
+							processor.process(part.next());
+						}
+						
+						return null;
+					}
+				}));
+			}
+			
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					//The processor can only throw unchecked exceptions
+					if (e.getCause() instanceof Error) {
+						throw (Error)e.getCause();
+					}
+					
+					throw (RuntimeException)e.getCause();
+				}
+			}
+		} finally {
+			//Only has an effect if not all tasks finished
+			for (Future<Void> future : futures) {
+				future.cancel(true);
+			}
+		}
+		
+	}
+	
+	
 	/**********************************************************************************************************
 	 * 
 	 * 
@@ -338,6 +464,26 @@ public class DataTreeUtil {
 
 	}
 	
+	/**********************************************************************************************************
+	 * Processes a single tree node, e.g. with 
+	 * {@link DataTreeUtil#processParallel(CollectionTreeNodeInterface, TreeNodeProcessor, ExecutorService, int)}
+	 * 
+	 * 
+	 * @author Thomas Naeff (github.com/thnaeff)
+	 *
+	 * @param <N>
+	 */
+	public interface TreeNodeProcessor<N> {
+		
+		/**
+		 * Processes the given node
+		 * 
+		 * @param node
+		 */
+		public void process(N node);
+		
+	}
+	
 	/***********************************************************************************************************
 	 * This class controls how the intersect is built. It has a comparator which defines how a node is considered 
 	 * equal in the master and the slave tree, and it has a method which creates node instances for the resulting 
@@ -23,7 +23,6 @@ import java.util.NoSuchElementException;
 
 import ch.thn.datatree.core.GenericTreeIterator;
 import ch.thn.datatree.core.ListTreeNodeInterface;
-import ch.thn.datatree.core.TreeNodeError;
 
 
 /**
@@ -50,9 +49,10 @@ import ch.thn.datatree.core.TreeNodeError;
  * </pre>
  * 
  * The returned index with {@link #nextIndex()} and {@link #previousIndex()} is 
- * the node index which matches the node which would be returned with {@link #next()} 
- * or {@link #previous()}. This index is the index among sibling nodes and not the 
- * index of the whole tree.<br />
+ * the position of the node which would be returned with {@link #next()} or 
+ * {@link #previous()}, as if the tree was a list. It is the position in the whole 
+ * tree (see {@link ListTreeNodeInterface#getGlobalIndex()}), or the position 
+ * within the sub tree of the start node when only iterating the sub tree.<br />
  * <br />
  * Hint: When starting to iterate the tree at node "Child 0" for example, the iteration 
  * will go through the whole tree like in a list ("Child 0.1" -> "Child 1" -> ...). If 
@@ -62,7 +62,12 @@ import ch.thn.datatree.core.TreeNodeError;
  * This iterator has two additional methods: {@link #peekNext()} and {@link #peekPrevious()}. 
  * Calling those methods does not move the cursor forward or backward and they can be 
  * used to retrieve the node which would be returned with a {@link #next()} or {@link #previous()} 
- * call.
+ * call.<br />
+ * <br />
+ * Going forward and backward are both amortized constant time operations. The 
+ * iterator keeps the list iterators of the current branch and only moves 
+ * them by one position per step, it does not have to look up sibling nodes or 
+ * rebuild the branch when changing the direction.
  * 
  * 
  * 
@@ -74,10 +79,19 @@ import ch.thn.datatree.core.TreeNodeError;
 public class ListTreeIterator<N extends ListTreeNodeInterface<?, N>> 
 	extends GenericTreeIterator<N, ListIterator<N>> implements ListIterator<N> {
 
+	//The node which has been returned last (or the start node). The iterators 
+	//on the stack lead from the base node down to this node. Each one is 
+	//positioned right before the node of the branch, so that a next() call on 
+	//the iterator would return the node of the branch.
+	private N positionNode = null;
+	private N baseNode = null;
+
+	private boolean cursorAfterPosition = false;
+	private boolean started = false;
+
+	private N nextNodeCache = null;
 	private N previousNodeCache = null;
 	
-	private boolean cursorBelowLastReturned = false;
-	
 	
 	/**
 	 * Iterates over the sub tree by default
@@ -85,10 +99,7 @@ public class ListTreeIterator<N extends ListTreeNodeInterface<?, N>>
 	 * @param toIterate
 	 */
 	public ListTreeIterator(N toIterate) {
-		super(toIterate, true);
-		
-		//The first previous() call returns the element where the iterator starts
-		this.previousNodeCache = toIterate;
+		this(toIterate, true);
 	}
 	
 	
@@ -101,8 +112,9 @@ public class ListTreeIterator<N extends ListTreeNodeInterface<?, N>>
 	public ListTreeIterator(N toIterate, boolean subtreeOnly) {
 		super(toIterate, subtreeOnly);
 		
-		//The first previous() call returns the element where the iterator starts
-		this.previousNodeCache = toIterate;
+		//The first next() or previous() call returns the element where the iterator starts
+		this.positionNode = toIterate;
+		this.baseNode = toIterate;
 	}
 
 	
@@ -119,66 +131,157 @@ public class ListTreeIterator<N extends ListTreeNodeInterface<?, N>>
 		//is implemented
 		return ((List<N>)collection).listIterator(node.getNodeIndex() + 1);
 	}
-
+	
 	@Override
-	public boolean hasPrevious() {		
-		if (subtreeOnly && lastReturned != null && lastReturned == startNode) {
-			return false;
+	public boolean hasNext() {
+		return peekNext() != null;
+	}
+	
+	@Override
+	public N next() {
+		if (positionNode == null) {
+			throw new NoSuchElementException("Reached the end of the tree");
+		}
+		
+		//Alternating calls to previous() and next() return the same element 
+		//repeatedly. Only move if the cursor is already after the node.
+		if (started && cursorAfterPosition && ! moveNext()) {
+			throw new NoSuchElementException("Reached the end of the tree");
 		}
 		
-		return (internalPrevious(true) != null);
+		started = true;
+		cursorAfterPosition = true;
+		nextNodeCache = null;
+		previousNodeCache = null;
+		
+		lastReturned = positionNode;
+		return positionNode;
+	}
+	
+	@Override
+	public N peekNext() {
+		if (! started || ! cursorAfterPosition) {
+			return positionNode;
+		}
+		
+		if (nextNodeCache == null) {
+			nextNodeCache = findNext();
+		}
+		
+		return nextNodeCache;
+	}
+
+	@Override
+	public boolean hasPrevious() {
+		return peekPrevious() != null;
 	}
 
 
 	@Override
 	public N previous() {
-		//If there is a last returned node and the cursor is below, it means that
-		//the last call was a next() call. The definition for next() says 
-		//that alternating calls to previous() and next() return the same element 
-		//repeatedly
-		if (lastReturned != null && cursorBelowLastReturned) {
-			cursorBelowLastReturned = false;
-			previousNodeCache = null;
-			
-			//The last direction was forward -> start fresh for going backwards
-			iterators.clear();
-			
-			return lastReturned;
+		if (positionNode == null) {
+			throw new NoSuchElementException("Reached the root (head) of the tree");
 		}
 		
-		if (subtreeOnly && lastReturned != null && lastReturned == startNode) {
-			throw new NoSuchElementException("Reached the root (head) of the sub tree");
+		//Alternating calls to previous() and next() return the same element 
+		//repeatedly. Only move if the cursor is already before the node.
+		if (started && ! cursorAfterPosition && ! movePrevious()) {
+			if (subtreeOnly) {
+				throw new NoSuchElementException("Reached the root (head) of the sub tree");
+			} else {
+				throw new NoSuchElementException("Reached the root (head) of the tree");
+			}
 		}
 		
-		cursorBelowLastReturned = false;
-		return internalPrevious(false);
+		started = true;
+		cursorAfterPosition = false;
+		nextNodeCache = null;
+		previousNodeCache = null;
+		
+		lastReturned = positionNode;
+		return positionNode;
 	}
 	
-
-	@Override
-	public N next() {
-		//If there is a last returned node and the cursor is above, it means that
-		//the last call was a previous() call. The definition for next() says 
-		//that alternating calls to previous() and next() return the same element 
-		//repeatedly
-		if (lastReturned != null && !cursorBelowLastReturned) {
-			cursorBelowLastReturned = true;
-			return lastReturned;
+	/**
+	 * Returns the previous node without moving the cursor backwards.
+	 * 
+	 * @return
+	 */
+	public N peekPrevious() {
+		if (! started || cursorAfterPosition) {
+			return positionNode;
+		}
+		
+		if (previousNodeCache == null) {
+			previousNodeCache = findPrevious();
 		}
 		
-		cursorBelowLastReturned = true;
-		previousNodeCache = super.next();
 		return previousNodeCache;
 	}
+	
+	@Override
+	public void remove() {
+		if (lastReturned == null) {
+			throw new IllegalStateException("This call can only be made once per call " +
+					"to next or previous. It can be made only if add(E) has not " +
+					"been called after the last call to next or previous.");
+		}
+		
+		N node = positionNode;
+		
+		//There would be nothing left to iterate
+		if (node.isRootNode()) {
+			throw new UnsupportedOperationException("The root node can not be removed");
+		}
+		
+		if (subtreeOnly && node == startNode) {
+			throw new UnsupportedOperationException("The start node of a sub tree " +
+					"iteration can not be removed");
+		}
+		
+		//The cursor ends up after the node which comes before the removed node
+		N newPosition = null;
+		
+		if (node.isFirstNode()) {
+			newPosition = node.getParentNode();
+		} else {
+			newPosition = getLastLeafNode(node.getPreviousSibling());
+		}
+		
+		node.removeNode();
+		lastReturned = null;
+		
+		//Start a new branch at the new position
+		clearIterators();
+		positionNode = newPosition;
+		baseNode = newPosition;
+		cursorAfterPosition = true;
+		nextNodeCache = null;
+		previousNodeCache = null;
+	}
 
 	@Override
 	public int previousIndex() {
-		throw new UnsupportedOperationException("Index is not supported yet");
+		return nextIndex() - 1;
 	}
 	
 	@Override
 	public int nextIndex() {
-		throw new UnsupportedOperationException("Index is not supported yet");
+		if (positionNode == null) {
+			return 0;
+		}
+		
+		int index = positionNode.getGlobalIndex();
+		
+		if (subtreeOnly) {
+			index -= startNode.getGlobalIndex();
+		}
+		
+		if (started && cursorAfterPosition) {
+			return index + 1;
+		} else {
+			return index;
+		}
 	}
 
 	@Override
@@ -191,98 +294,192 @@ public class ListTreeIterator<N extends ListTreeNodeInterface<?, N>>
 		throw new UnsupportedOperationException("Setting is not supported yet");
 	}
 	
+	
 	/**
-	 * Returns the previous node without moving the cursor backwards.
+	 * Moves the position to the next node in the tree.
 	 * 
-	 * @return
+	 * @return <code>false</code> if there is no next node. The position is 
+	 * not changed in that case.
 	 */
-	public N peekPrevious() {
-		return internalPrevious(true);
+	private boolean moveNext() {
+		if (! positionNode.isLeafNode()) {
+			//There are children -> continue with the first child
+			ListIterator<N> iterator = getIterator(positionNode.getChildNodes());
+			positionNode = iterator.next();
+			iterator.previous();
+			pushIterator(iterator);
+			return true;
+		}
+		
+		while (true) {
+			ListIterator<N> iterator = peekIterator();
+			
+			if (iterator == null) {
+				//Reached the base of the branch
+				if (! extendBranch()) {
+					//Nothing left. Start a new branch at the current position
+					clearIterators();
+					baseNode = positionNode;
+					return false;
+				}
+				
+				continue;
+			}
+			
+			//Skip the node of the branch
+			iterator.next();
+			
+			if (iterator.hasNext()) {
+				//Continue with the next sibling
+				positionNode = iterator.next();
+				iterator.previous();
+				return true;
+			}
+			
+			//Reached the end of the branch -> continue with the parent iterator
+			popIterator();
+		}
+		
 	}
 	
-	
-	
 	/**
+	 * Returns the next node in the tree without changing the position. 
 	 * 
-	 * 
-	 * @param peek
-	 * @return
+	 * @return The next node or <code>null</code> if there is no next node
 	 */
-	private N internalPrevious(boolean peek) {
-		if (previousNodeCache != null) {
-			if (peek) {
-				return previousNodeCache;
-			} else {
-				lastReturned = previousNodeCache;
-				previousNodeCache = null;
-				return lastReturned;
-			}
+	private N findNext() {
+		if (! positionNode.isLeafNode()) {
+			return positionNode.getChildNode(0);
 		}
 		
-		if (lastReturned.isFirstNode()) {
-			//The first sibling -> Continue with children of parent
-			
-			if (lastReturned.isRootNode()) {
-				if (peek) {
+		int index = getIteratorCount() - 1;
+		
+		while (true) {
+			if (index < 0) {
+				//Reached the base of the branch
+				if (! extendBranch()) {
 					return null;
-				} else {
-					throw new NoSuchElementException("Reached the root (head) of the tree");
-				}
-			} else if (lastReturned.getParentNode().isRootNode()) {
-				//Reached the first sibling under the root -> the previous node is the root node
-				if (peek) {
-					previousNodeCache = lastReturned.getParentNode();
-					return previousNodeCache;
-				} else {
-					lastReturned = lastReturned.getParentNode();
-					return lastReturned;
 				}
+				
+				index = 0;
 			}
 			
-			if (iterators.size() == 0) {
-				iterators.addAll(initBranchIterators(lastReturned.getParentNode(), lastReturned.getRootNode()));
-			} else {
-				//Just remove the last iterator. It will continue with the parent iterator
-				iterators.removeLast().next();
+			ListIterator<N> iterator = getIteratorAt(index);
+			
+			//Look at the next sibling and move the iterator back to its position
+			iterator.next();
+			N nextNode = iterator.hasNext() ? iterator.next() : null;
+			
+			if (nextNode != null) {
+				iterator.previous();
 			}
-		} else if (! lastReturned.getPreviousSibling().isLeafNode()) {
-			//The previous sibling has children -> continue with last child of that branch
 			
-			ListTreeNodeInterface<?, ?> endNode = lastReturned.getPreviousSibling();
-			@SuppressWarnings("unchecked")
-			N startNode = (N)DataTreeUtil.getLastLeafNode(endNode);
+			iterator.previous();
 			
-			//Some type juggling...
-			@SuppressWarnings("unchecked")
-			N endNode2 = (N)endNode;
+			if (nextNode != null) {
+				return nextNode;
+			}
 			
-			iterators.addAll(initBranchIterators(startNode, endNode2));
-		} else if (iterators.size() == 0) {
-			N endNode = lastReturned.getRootNode();
-			N startNode = lastReturned;
-			iterators.addAll(initBranchIterators(startNode, endNode));
+			index--;
+		}
+	}
+	
+	/**
+	 * Moves the position to the previous node in the tree.
+	 * 
+	 * @return <code>false</code> if there is no previous node. The position is 
+	 * not changed in that case.
+	 */
+	private boolean movePrevious() {
+		while (getIteratorCount() == 0) {
+			//Reached the base of the branch
+			if (! extendBranch()) {
+				return false;
+			}
+		}
+		
+		ListIterator<N> iterator = peekIterator();
+		
+		if (! iterator.hasPrevious()) {
+			//The first sibling -> the previous node is the parent
+			popIterator();
+			positionNode = positionNode.getParentNode();
+			return true;
 		}
-		//else:
-		//There are no children -> continue with previous sibling
 		
-		if (iterators.size() == 0) {
-			iterators.addAll(initBranchIterators(lastReturned.getParentNode(), lastReturned.getRootNode()));
+		//Continue with the last leaf of the previous sibling
+		N node = iterator.previous();
+		
+		while (! node.isLeafNode()) {
+			List<N> children = node.getChildNodes();
+			iterator = children.listIterator(children.size());
+			node = iterator.previous();
+			pushIterator(iterator);
 		}
-				
-		try {
-			if (peek) {
-				previousNodeCache = iterators.peekLast().previous();
-				return previousNodeCache;
-			} else {
-				lastReturned = iterators.peekLast().previous();
-				return lastReturned;
+		
+		positionNode = node;
+		return true;
+	}
+	
+	/**
+	 * Returns the previous node in the tree without changing the position. 
+	 * 
+	 * @return The previous node or <code>null</code> if there is no previous node
+	 */
+	private N findPrevious() {
+		while (getIteratorCount() == 0) {
+			//Reached the base of the branch
+			if (! extendBranch()) {
+				return null;
 			}
-		} catch (NoSuchElementException e) {
-			//Reached the root
-			//This should not even happen since checking for the root node is done earlier
-			throw new TreeNodeError("Iterator Error");
 		}
 		
+		ListIterator<N> iterator = peekIterator();
+		
+		if (! iterator.hasPrevious()) {
+			//The first sibling -> the previous node is the parent
+			return positionNode.getParentNode();
+		}
+		
+		N node = iterator.previous();
+		iterator.next();
+		
+		return getLastLeafNode(node);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param node
+	 * @return
+	 */
+	private N getLastLeafNode(N node) {
+		while (! node.isLeafNode()) {
+			node = node.getLastChildNode();
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * Adds the iterator of the parent of the base node at the top of the branch. 
+	 * This does not change the position, it only makes the branch longer.
+	 * 
+	 * @return <code>false</code> if the branch can not be extended because 
+	 * the base node is the root node (or the start node when iterating the 
+	 * sub tree only)
+	 */
+	private boolean extendBranch() {
+		if (baseNode.isRootNode() || (subtreeOnly && baseNode == startNode)) {
+			return false;
+		}
+		
+		N parentNode = baseNode.getParentNode();
+		List<N> children = parentNode.getChildNodes();
+		pushParentIterator(children.listIterator(baseNode.getNodeIndex()));
+		baseNode = parentNode;
+		
+		return true;
 	}
 
 }
@@ -40,14 +40,26 @@ public class ListTreeNode<V> extends GenericListTreeNode<V, ListTreeNode<V>> {
 		super(value);
 	}
 
+	/**
+	 * Creates a node which stores its children in an array backed list if 
+	 * <code>arrayBacked</code> is set. Child nodes created through this node 
+	 * (e.g. with {@link #addChildNode(Object)}) use the same kind of storage.
+	 * 
+	 * @param value
+	 * @param arrayBacked
+	 */
+	public ListTreeNode(V value, boolean arrayBacked) {
+		super(value, arrayBacked);
+	}
+
 	@Override
 	public ListTreeNode<V> nodeFactory(V value) {
-		return new ListTreeNode<V>(value);
+		return new ListTreeNode<V>(value, isArrayBacked());
 	}
 
 	@Override
 	public ListTreeNode<V> nodeFactory(ListTreeNode<V> node) {
-		return new ListTreeNode<V>(node.getNodeValue());
+		return new ListTreeNode<V>(node.getNodeValue(), node.isArrayBacked());
 	}
 
 	@Override
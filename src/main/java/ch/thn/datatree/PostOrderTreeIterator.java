@@ -0,0 +1,237 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+import ch.thn.datatree.core.ListTreeNodeInterface;
+
+/**
+ * This is an {@link Iterator} which travels through the tree in post-order: all 
+ * child nodes of a node are returned before the node itself.<br />
+ * The tree
+ * <pre>
+ * Head
+ * ├─ Child 0
+ * │  └─ Child 0.1
+ * ├─ Child 1
+ * │  ├─ Child 1.1
+ * │  ├─ Child 1.2
+ * </pre>
+ * would be iterated through as follows:<br />
+ * <pre>
+ * 1. Child 0.1
+ * 2. Child 0
+ * 3. Child 1.1
+ * 4. Child 1.2
+ * 5. Child 1
+ * 6. Head
+ * </pre>
+ * 
+ * When starting to iterate the tree at node "Child 0" without the <code>subtreeOnly</code> 
+ * flag, the iteration starts with the sub tree of "Child 0" and then continues with the 
+ * rest of the tree like in a collection ("Child 0.1" -> "Child 0" -> "Child 1.1" -> ...). 
+ * With the <code>subtreeOnly</code> flag, the iteration ends with "Child 0".<br />
+ * <br />
+ * The current branch is kept in an array stack and no recursion is used, so also 
+ * very deep trees can be iterated.
+ * 
+ * 
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <N>
+ */
+public class PostOrderTreeIterator<N extends CollectionTreeNodeInterface<?, N>> 
+	implements Iterator<N> {
+	
+	private static final int INITIAL_STACK_SIZE = 16;
+	
+	private N startNode = null;
+	private boolean subtreeOnly = false;
+	
+	//The current branch. Each node is kept with the iterator over its child nodes 
+	//(or null for a leaf node). The head of the branch is at index 0.
+	private Object[] branchNodes = null;
+	private Object[] branchIterators = null;
+	private int branchSize = 0;
+	
+	/**
+	 * Iterates through the sub tree of the given start node (including the 
+	 * start node)
+	 * 
+	 * @param toIterate
+	 */
+	public PostOrderTreeIterator(N toIterate) {
+		this(toIterate, true);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param toIterate
+	 * @param subtreeOnly Only iterates through the sub tree of the given start node.
+	 */
+	public PostOrderTreeIterator(N toIterate, boolean subtreeOnly) {
+		this.startNode = toIterate;
+		this.subtreeOnly = subtreeOnly;
+		
+		branchNodes = new Object[INITIAL_STACK_SIZE];
+		branchIterators = new Object[INITIAL_STACK_SIZE];
+		
+		push(toIterate, getIterator(toIterate));
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return branchSize > 0;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public N next() {
+		while (branchSize > 0) {
+			Iterator<N> iterator = (Iterator<N>)branchIterators[branchSize - 1];
+			
+			if (iterator != null && iterator.hasNext()) {
+				//Go down into the next child branch first
+				N child = iterator.next();
+				push(child, getIterator(child));
+				continue;
+			}
+			
+			//All children are done -> return the node itself
+			N node = (N)branchNodes[--branchSize];
+			branchNodes[branchSize] = null;
+			branchIterators[branchSize] = null;
+			
+			if (node == startNode && ! subtreeOnly) {
+				//Continue with the rest of the tree
+				pushRestOfTree();
+			}
+			
+			return node;
+		}
+		
+		throw new NoSuchElementException("Reached the end of the tree");
+	}
+	
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Removing is not supported");
+	}
+	
+	/**
+	 * Puts all ancestors of the start node on the branch, each positioned after 
+	 * the child node which leads to the start node.
+	 * 
+	 */
+	private void pushRestOfTree() {
+		int count = startNode.getNodeDepth();
+		
+		if (count == 0) {
+			return;
+		}
+		
+		ensureStackSize(count);
+		branchSize = count;
+		
+		//Fill the branch from the bottom up to the head
+		N childNode = startNode;
+		for (int i = count - 1; i >= 0; i--) {
+			N parentNode = childNode.getParentNode();
+			branchNodes[i] = parentNode;
+			branchIterators[i] = positionIterator(parentNode.getChildNodes(), childNode);
+			childNode = parentNode;
+		}
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param node
+	 * @param iterator
+	 */
+	private void push(N node, Iterator<N> iterator) {
+		ensureStackSize(branchSize + 1);
+		branchNodes[branchSize] = node;
+		branchIterators[branchSize] = iterator;
+		branchSize++;
+	}
+	
+	/**
+	 * Returns an iterator over the children of the given node or <code>null</code> 
+	 * if it is a leaf node
+	 * 
+	 * @param node
+	 * @return
+	 */
+	private Iterator<N> getIterator(N node) {
+		if (node.isLeafNode()) {
+			return null;
+		}
+		
+		return node.getChildNodes().iterator();
+	}
+	
+	/**
+	 * Returns an iterator which is positioned right after the given node
+	 * 
+	 * @param collection
+	 * @param node
+	 * @return
+	 */
+	private Iterator<N> positionIterator(Collection<N> collection, N node) {
+		if (collection instanceof List && node instanceof ListTreeNodeInterface) {
+			return ((List<N>)collection).listIterator(((ListTreeNodeInterface<?, ?>)node).getNodeIndex() + 1);
+		}
+		
+		Iterator<N> iterator = collection.iterator();
+		
+		//Move the iterator to the right position. Compare the instances, since 
+		//there might be equal objects among the siblings
+		while (iterator.hasNext()) {
+			if (iterator.next() == node) {
+				break;
+			}
+		}
+		
+		return iterator;
+	}
+	
+	/**
+	 * Grows the branch stack if needed
+	 * 
+	 * @param size
+	 */
+	private void ensureStackSize(int size) {
+		if (size > branchNodes.length) {
+			int newSize = Math.max(size, branchNodes.length * 2);
+			
+			Object[] newBranchNodes = new Object[newSize];
+			Object[] newBranchIterators = new Object[newSize];
+			System.arraycopy(branchNodes, 0, newBranchNodes, 0, branchSize);
+			System.arraycopy(branchIterators, 0, newBranchIterators, 0, branchSize);
+			branchNodes = newBranchNodes;
+			branchIterators = newBranchIterators;
+		}
+	}
+	
+}
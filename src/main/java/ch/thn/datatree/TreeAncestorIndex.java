@@ -0,0 +1,272 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree;
+
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+
+/**
+ * An index for lowest common ancestor and level ancestor queries on a tree. Both 
+ * queries are answered in O(log(depth)) with binary lifting: for each node, the 
+ * ancestors 1, 2, 4, 8, ... levels up are stored.<br />
+ * <br />
+ * The index covers the whole tree of the node it has been created with. It 
+ * registers itself as sub tree listener on the root node of the tree and only 
+ * marks itself as outdated when the structure of the tree changes. The index 
+ * is built again with the next query. Use {@link #dispose()} to remove the 
+ * listener when the index is not needed anymore.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <N>
+ */
+public class TreeAncestorIndex<N extends CollectionTreeNodeInterface<?, N>> 
+	implements TreeNodeListener<N> {
+	
+	private N treeNode = null;
+	//The root node the index is registered on
+	private N indexedRoot = null;
+	
+	private IdentityHashMap<N, Integer> ids = null;
+	private Object[] nodes = null;
+	private int[] depths = null;
+	//ancestors[k][id] is the ancestor 2^k levels above the node (or the root node)
+	private int[][] ancestors = null;
+	
+	private boolean outdated = true;
+	
+	/**
+	 * 
+	 * 
+	 * @param treeNode Any node of the tree to index
+	 */
+	public TreeAncestorIndex(N treeNode) {
+		this.treeNode = treeNode;
+	}
+	
+	/**
+	 * Returns the lowest common ancestor of the two given nodes, which is the 
+	 * deepest node which has both nodes in its sub tree. If one node is in the 
+	 * sub tree of the other node, the other node is returned.
+	 * 
+	 * @param node1
+	 * @param node2
+	 * @return The lowest common ancestor or <code>null</code> if one of the 
+	 * nodes is not part of the indexed tree.
+	 */
+	@SuppressWarnings("unchecked")
+	public N lowestCommonAncestor(N node1, N node2) {
+		updateIndex();
+		
+		Integer id1 = ids.get(node1);
+		Integer id2 = ids.get(node2);
+		
+		if (id1 == null || id2 == null) {
+			return null;
+		}
+		
+		int a = id1;
+		int b = id2;
+		
+		//Bring both nodes to the same depth
+		if (depths[a] < depths[b]) {
+			int tmp = a;
+			a = b;
+			b = tmp;
+		}
+		
+		a = lift(a, depths[a] - depths[b]);
+		
+		if (a == b) {
+			return (N)nodes[a];
+		}
+		
+		//Go up as far as possible while staying below the common ancestor
+		for (int k = ancestors.length - 1; k >= 0; k--) {
+			if (ancestors[k][a] != ancestors[k][b]) {
+				a = ancestors[k][a];
+				b = ancestors[k][b];
+			}
+		}
+		
+		return (N)nodes[ancestors[0][a]];
+	}
+	
+	/**
+	 * Returns the ancestor of the given node at the given depth. The root node is 
+	 * at depth 0 (see {@link CollectionTreeNodeInterface#getNodeDepth()}).
+	 * 
+	 * @param node
+	 * @param depth
+	 * @return The ancestor (or the node itself if it is at the given depth), or 
+	 * <code>null</code> if the node is not part of the indexed tree or if there 
+	 * is no ancestor at the given depth.
+	 */
+	@SuppressWarnings("unchecked")
+	public N ancestorAtDepth(N node, int depth) {
+		updateIndex();
+		
+		Integer id = ids.get(node);
+		
+		if (id == null || depth < 0 || depth > depths[id]) {
+			return null;
+		}
+		
+		return (N)nodes[lift(id, depths[id] - depth)];
+	}
+	
+	/**
+	 * Returns the depth of the given node, or -1 if the node is not part of the 
+	 * indexed tree
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public int getNodeDepth(N node) {
+		updateIndex();
+		
+		Integer id = ids.get(node);
+		
+		if (id == null) {
+			return -1;
+		}
+		
+		return depths[id];
+	}
+	
+	/**
+	 * Removes this index from the tree.
+	 * 
+	 */
+	public void dispose() {
+		if (indexedRoot != null) {
+			indexedRoot.removeSubtreeListener(this);
+			indexedRoot = null;
+		}
+		
+		ids = null;
+		nodes = null;
+		depths = null;
+		ancestors = null;
+		outdated = true;
+	}
+	
+	/**
+	 * Goes up the given number of levels
+	 * 
+	 * @param id
+	 * @param levels
+	 * @return
+	 */
+	private int lift(int id, int levels) {
+		for (int k = 0; levels > 0; k++, levels >>>= 1) {
+			if ((levels & 1) != 0) {
+				id = ancestors[k][id];
+			}
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * Builds the index again if the tree changed
+	 * 
+	 */
+	private void updateIndex() {
+		if (! outdated) {
+			return;
+		}
+		
+		//The root node might have changed
+		dispose();
+		
+		N root = treeNode.getRootNode();
+		//Value changes do not change the structure
+		root.addSubtreeListener(this, EnumSet.complementOf(EnumSet.of(TreeEventType.VALUE_CHANGED)));
+		indexedRoot = root;
+		int size = root.getSubtreeSize();
+		
+		ids = new IdentityHashMap<N, Integer>(size);
+		nodes = new Object[size];
+		depths = new int[size];
+		
+		int levels = 1;
+		while ((1 << levels) < size) {
+			levels++;
+		}
+		
+		ancestors = new int[levels][size];
+		
+		//The parent of a node is always before the node in the pre-order
+		int id = 0;
+		Iterator<N> iterator = root.iterator(true);
+		while (iterator.hasNext()) {
+			N node = iterator.next();
+			
+			ids.put(node, id);
+			nodes[id] = node;
+			
+			if (node == root) {
+				ancestors[0][id] = id;
+				depths[id] = 0;
+			} else {
+				int parentId = ids.get(node.getParentNode());
+				ancestors[0][id] = parentId;
+				depths[id] = depths[parentId] + 1;
+			}
+			
+			for (int k = 1; k < levels; k++) {
+				ancestors[k][id] = ancestors[k - 1][ancestors[k - 1][id]];
+			}
+			
+			id++;
+		}
+		
+		outdated = false;
+	}
+	
+	
+	@Override
+	public void childNodeRemoved(TreeNodeEvent<N> e) {
+		outdated = true;
+	}
+	
+	@Override
+	public void childNodeAdded(TreeNodeEvent<N> e) {
+		outdated = true;
+	}
+	
+	@Override
+	public void nodeValueChanged(TreeNodeEvent<N> e) {
+		//The structure did not change
+	}
+	
+	@Override
+	public void addedToTree(TreeNodeEvent<N> e) {
+		outdated = true;
+	}
+	
+	@Override
+	public void removedFromTree(TreeNodeEvent<N> e) {
+		outdated = true;
+	}
+
+}
@@ -0,0 +1,500 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree;
+
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+
+/**
+ * Publishes the events of a node and all its descendants to any number of 
+ * subscribers. The publisher registers itself as sub tree listener on the node 
+ * and follows the reactive streams contract (the same as 
+ * <code>java.util.concurrent.Flow</code>): a {@link Subscriber} only receives as 
+ * many events as it has requested with {@link Subscription#request(long)}. Events 
+ * which have not been requested yet are buffered per subscriber; when the buffer 
+ * is full, the {@link OverflowStrategy} applies.<br />
+ * <br />
+ * Events are delivered in the thread which fires them or in the thread which 
+ * requests them, never concurrently for the same subscriber. All buffered 
+ * events a request allows are delivered within that request.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <N>
+ */
+public class TreeEventPublisher<N extends CollectionTreeNodeInterface<?, N>> 
+	implements TreeNodeListener<N> {
+	
+	/**
+	 * Receives the events of a {@link TreeEventPublisher}
+	 *
+	 * @param <T>
+	 */
+	public interface Subscriber<T> {
+		
+		/**
+		 * Called once when the subscriber has been subscribed, before any other 
+		 * method is called. No events are delivered until events are requested 
+		 * with the given subscription.
+		 * 
+		 * @param subscription
+		 */
+		public void onSubscribe(Subscription subscription);
+		
+		/**
+		 * Called for each requested event
+		 * 
+		 * @param item
+		 */
+		public void onNext(T item);
+		
+		/**
+		 * Called when the subscription ended because of an error. No other 
+		 * method is called afterwards.
+		 * 
+		 * @param throwable
+		 */
+		public void onError(Throwable throwable);
+		
+		/**
+		 * Called when the publisher has been closed and all buffered events 
+		 * have been delivered. No other method is called afterwards.
+		 * 
+		 */
+		public void onComplete();
+		
+	}
+	
+	/**
+	 * The link between a {@link TreeEventPublisher} and a {@link Subscriber}
+	 *
+	 */
+	public interface Subscription {
+		
+		/**
+		 * Requests the given number of additional events. A number which is 
+		 * not positive ends the subscription with an {@link IllegalArgumentException}.
+		 * 
+		 * @param n
+		 */
+		public void request(long n);
+		
+		/**
+		 * Ends the subscription. Buffered events are discarded.
+		 * 
+		 */
+		public void cancel();
+		
+	}
+	
+	/**
+	 * What to do with an event when the buffer of a subscriber is full
+	 *
+	 */
+	public enum OverflowStrategy {
+		/**
+		 * The new event is dropped
+		 */
+		DROP, 
+		
+		/**
+		 * A buffered event of the same type for the same node is replaced with 
+		 * the new event (which is moved to the end of the buffer). If there is 
+		 * no such event, the oldest event is dropped.
+		 */
+		COALESCE, 
+		
+		/**
+		 * The thread which fires the event waits until the subscriber requests 
+		 * more events. Events fired while delivering to the subscriber are 
+		 * always buffered to avoid a dead lock.
+		 */
+		BLOCK;
+	}
+	
+	private final N node;
+	private final int bufferSize;
+	private final OverflowStrategy overflowStrategy;
+	
+	private final CopyOnWriteArrayList<EventSubscription> subscriptions = 
+			new CopyOnWriteArrayList<EventSubscription>();
+	private volatile boolean closed = false;
+	
+	/**
+	 * 
+	 * 
+	 * @param node The node of which the events and the events of its descendants 
+	 * are published
+	 * @param bufferSize The maximum number of buffered events per subscriber
+	 * @param overflowStrategy What to do when the buffer is full
+	 */
+	public TreeEventPublisher(N node, int bufferSize, OverflowStrategy overflowStrategy) {
+		this(node, EnumSet.allOf(TreeEventType.class), bufferSize, overflowStrategy);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param node The node of which the events and the events of its descendants 
+	 * are published
+	 * @param eventTypes The types of the events to publish
+	 * @param bufferSize The maximum number of buffered events per subscriber
+	 * @param overflowStrategy What to do when the buffer is full
+	 */
+	public TreeEventPublisher(N node, EnumSet<TreeEventType> eventTypes, 
+			int bufferSize, OverflowStrategy overflowStrategy) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("The buffer size has to be at least 1");
+		}
+		
+		this.node = node;
+		this.bufferSize = bufferSize;
+		this.overflowStrategy = overflowStrategy;
+		
+		node.addSubtreeListener(this, eventTypes);
+	}
+	
+	/**
+	 * Returns the node of which the events are published
+	 * 
+	 * @return
+	 */
+	public N getNode() {
+		return node;
+	}
+	
+	/**
+	 * Adds a subscriber. If the publisher is already closed, the subscriber 
+	 * completes right away.
+	 * 
+	 * @param subscriber
+	 */
+	public void subscribe(Subscriber<? super TreeNodeEvent<N>> subscriber) {
+		EventSubscription subscription = new EventSubscription(subscriber);
+		subscriptions.add(subscription);
+		
+		//Checked after adding: if close() is running, it either completes the 
+		//subscription or has set the flag before
+		if (closed) {
+			synchronized (subscription) {
+				subscription.completed = true;
+			}
+		}
+		
+		subscriber.onSubscribe(subscription);
+		
+		//Nothing has been delivered until now, not even a completion
+		synchronized (subscription) {
+			subscription.subscribed = true;
+		}
+		
+		subscription.drain();
+	}
+	
+	/**
+	 * Returns the number of subscribers
+	 * 
+	 * @return
+	 */
+	public int getSubscriberCount() {
+		return subscriptions.size();
+	}
+	
+	/**
+	 * Returns <code>true</code> if the publisher has been closed
+	 * 
+	 * @return
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * Stops publishing events. The subscribers complete after they have 
+	 * received their buffered events.
+	 * 
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		
+		closed = true;
+		node.removeSubtreeListener(this);
+		
+		for (EventSubscription subscription : subscriptions) {
+			subscription.complete();
+		}
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param e
+	 */
+	private void publish(TreeNodeEvent<N> e) {
+		for (EventSubscription subscription : subscriptions) {
+			subscription.offer(e);
+		}
+	}
+
+	@Override
+	public void childNodeRemoved(TreeNodeEvent<N> e) {
+		publish(e);
+	}
+
+	@Override
+	public void childNodeAdded(TreeNodeEvent<N> e) {
+		publish(e);
+	}
+
+	@Override
+	public void nodeValueChanged(TreeNodeEvent<N> e) {
+		publish(e);
+	}
+
+	@Override
+	public void addedToTree(TreeNodeEvent<N> e) {
+		publish(e);
+	}
+
+	@Override
+	public void removedFromTree(TreeNodeEvent<N> e) {
+		publish(e);
+	}
+	
+	
+	/**
+	 * The buffer and the demand of one subscriber. All fields are guarded by 
+	 * the subscription itself.
+	 *
+	 */
+	private class EventSubscription implements Subscription {
+		
+		private final Subscriber<? super TreeNodeEvent<N>> subscriber;
+		private final ArrayDeque<TreeNodeEvent<N>> buffer = new ArrayDeque<TreeNodeEvent<N>>();
+		
+		private long demand = 0;
+		private boolean cancelled = false;
+		private boolean completed = false;
+		private Throwable error = null;
+		//Set once onSubscribe has returned, nothing is delivered before
+		private boolean subscribed = false;
+		
+		//The thread which delivers the events, null if no delivery is running
+		private Thread drainThread = null;
+		
+		/**
+		 * 
+		 * 
+		 * @param subscriber
+		 */
+		public EventSubscription(Subscriber<? super TreeNodeEvent<N>> subscriber) {
+			this.subscriber = subscriber;
+		}
+		
+		@Override
+		public void request(long n) {
+			synchronized (this) {
+				if (cancelled) {
+					return;
+				}
+				
+				if (n <= 0) {
+					error = new IllegalArgumentException("The number of requested events has to be positive: " + n);
+				} else {
+					demand += n;
+					
+					if (demand < 0) {
+						//Overflow -> unbounded
+						demand = Long.MAX_VALUE;
+					}
+				}
+			}
+			
+			drain();
+		}
+		
+		@Override
+		public void cancel() {
+			synchronized (this) {
+				cancelled = true;
+				buffer.clear();
+				//Wakes up blocked threads
+				notifyAll();
+			}
+			
+			subscriptions.remove(this);
+		}
+		
+		/**
+		 * Completes the subscription after the buffered events
+		 * 
+		 */
+		public void complete() {
+			synchronized (this) {
+				completed = true;
+				notifyAll();
+			}
+			
+			drain();
+		}
+		
+		/**
+		 * Buffers the event and delivers the buffered events as far as requested
+		 * 
+		 * @param e
+		 */
+		public void offer(TreeNodeEvent<N> e) {
+			synchronized (this) {
+				while (! cancelled && buffer.size() >= bufferSize) {
+					if (overflowStrategy == OverflowStrategy.DROP) {
+						return;
+					} else if (overflowStrategy == OverflowStrategy.COALESCE) {
+						if (! removeCoalescable(e)) {
+							buffer.poll();
+						}
+					} else if (drainThread == Thread.currentThread() || completed) {
+						//Waiting for itself would never end
+						break;
+					} else {
+						try {
+							wait();
+						} catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+				}
+				
+				if (cancelled) {
+					return;
+				}
+				
+				buffer.add(e);
+			}
+			
+			drain();
+		}
+		
+		/**
+		 * Removes a buffered event of the same type for the same node
+		 * 
+		 * @param e
+		 * @return <code>true</code> if an event has been removed
+		 */
+		private boolean removeCoalescable(TreeNodeEvent<N> e) {
+			Iterator<TreeNodeEvent<N>> iterator = buffer.iterator();
+			
+			while (iterator.hasNext()) {
+				TreeNodeEvent<N> buffered = iterator.next();
+				
+				if (buffered.getNode() == e.getNode() && buffered.getEventType() == e.getEventType()) {
+					iterator.remove();
+					return true;
+				}
+			}
+			
+			return false;
+		}
+		
+		/**
+		 * Delivers the buffered events as far as requested. Only one thread 
+		 * delivers at a time, a thread which finds another one delivering 
+		 * leaves the work to that thread. Until onSubscribe has returned, the 
+		 * subscribing thread is the one which delivers afterwards.
+		 * 
+		 */
+		public void drain() {
+			synchronized (this) {
+				if (drainThread != null || ! subscribed) {
+					return;
+				}
+				
+				drainThread = Thread.currentThread();
+			}
+			
+			boolean done = false;
+			
+			try {
+				while (true) {
+					TreeNodeEvent<N> e = null;
+					Throwable failure = null;
+					boolean complete = false;
+					
+					synchronized (this) {
+						if (cancelled) {
+							drainThread = null;
+							done = true;
+							return;
+						} else if (error != null) {
+							failure = error;
+							cancelled = true;
+							buffer.clear();
+						} else if (demand > 0 && ! buffer.isEmpty()) {
+							e = buffer.poll();
+							demand--;
+						} else if (completed && buffer.isEmpty()) {
+							cancelled = true;
+							complete = true;
+						} else {
+							//Nothing more to deliver
+							drainThread = null;
+							done = true;
+							return;
+						}
+						
+						//Wakes up the threads waiting for space in the buffer
+						notifyAll();
+					}
+					
+					if (failure != null) {
+						subscriptions.remove(this);
+						subscriber.onError(failure);
+						return;
+					} else if (complete) {
+						subscriptions.remove(this);
+						subscriber.onComplete();
+						return;
+					}
+					
+					try {
+						subscriber.onNext(e);
+					} catch (RuntimeException ex) {
+						cancel();
+						subscriber.onError(ex);
+						return;
+					}
+				}
+			} finally {
+				if (! done) {
+					synchronized (this) {
+						drainThread = null;
+						notifyAll();
+					}
+				}
+			}
+		}
+		
+	}
+
+}
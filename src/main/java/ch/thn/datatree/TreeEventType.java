@@ -0,0 +1,57 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree;
+
+import java.util.EnumSet;
+
+/**
+ * The types of events a tree node fires. A {@link TreeNodeListener} can be 
+ * registered for a subset of the types (see 
+ * {@link ch.thn.datatree.core.CollectionTreeNodeInterface#addTreeNodeListener(TreeNodeListener, EnumSet)}), 
+ * the node then does not create events for the other types.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public enum TreeEventType {
+	/**
+	 * A child node has been added, see {@link TreeNodeListener#childNodeAdded(TreeNodeEvent)}
+	 */
+	CHILD_ADDED, 
+
+	/**
+	 * A child node has been removed, see {@link TreeNodeListener#childNodeRemoved(TreeNodeEvent)}
+	 */
+	CHILD_REMOVED, 
+
+	/**
+	 * The value of the node has changed, see {@link TreeNodeListener#nodeValueChanged(TreeNodeEvent)}
+	 */
+	VALUE_CHANGED, 
+
+	/**
+	 * The node has been added to a tree, see {@link TreeNodeListener#addedToTree(TreeNodeEvent)}
+	 */
+	ADDED, 
+
+	/**
+	 * The node has been removed from a tree, see {@link TreeNodeListener#removedFromTree(TreeNodeEvent)}
+	 */
+	REMOVED;
+
+}
@@ -34,20 +34,31 @@ public class TreeIterator<N extends CollectionTreeNodeInterface<?, N>>
 	extends GenericTreeIterator<N, Iterator<N>> {
 
 	/**
-	 * Iterates through the sub tree (including the given start node).<br />
-	 * <br />
-	 * <i>Note: </i> This iterator only supports iterating through the sub tree 
-	 * of the given start node. The reason is that positioning the iterator after 
-	 * the sub tree is finished is impossible in a collection/set if there are 
-	 * duplicates of an object among the siblings.
+	 * Iterates through the sub tree (including the given start node).
 	 * 
 	 * @param toIterate
 	 */
 	public TreeIterator(N toIterate) {
-		//Only iterating over the sub tree possible
 		super(toIterate, true);
 	}
 	
+	/**
+	 * Iterates through the sub tree of the given start node or through the 
+	 * rest of the tree, starting at the given start node.<br />
+	 * <br />
+	 * <i>Note: </i> When iterating through the rest of the tree (<code>subtreeOnly=false</code>), 
+	 * the iterators of the parent nodes are positioned by looking up the node 
+	 * instances among their siblings. Equal node objects among the siblings are 
+	 * therefore not a problem, as long as the collection returns the original 
+	 * instances.
+	 * 
+	 * @param toIterate
+	 * @param subtreeOnly Only iterates through the sub tree of the given start node.
+	 */
+	public TreeIterator(N toIterate, boolean subtreeOnly) {
+		super(toIterate, subtreeOnly);
+	}
+	
 	
 	@Override
 	protected Iterator<N> getIterator(Collection<N> collection) {
@@ -56,18 +67,17 @@ public class TreeIterator<N extends CollectionTreeNodeInterface<?, N>>
 
 	@Override
 	protected Iterator<N> positionIterator(Collection<N> collection, N node) {
-		throw new UnsupportedOperationException("Positioning the iterator for a collection/set is not possible (there might be duplicate objects among the siblings)");
+		Iterator<N> iterator = collection.iterator();
+		
+		//Move the iterator to the right position. Compare the instances, since 
+		//there might be equal objects among the siblings
+		while (iterator.hasNext()) {
+			if (iterator.next() == node) {
+				break;
+			}
+		}
 		
-//		Iterator<N> iterator = collection.iterator();
-//		
-//		//Move the iterator to the right position
-//		while (iterator.hasNext()) {
-//			if (iterator.next() == node) {
-//				break;
-//			}
-//		}
-//		
-//		return iterator;
+		return iterator;
 	}
 	
 }
@@ -0,0 +1,173 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree;
+
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.List;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+
+/**
+ * The changes of the child nodes of a node during one batch. The changes are 
+ * given as index ranges in the order they have been made, consecutive additions 
+ * or removals are coalesced into one range. Applying the ranges in the given 
+ * order to the child nodes before the batch leads to the child nodes after the 
+ * batch.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <N>
+ */
+public class TreeNodeBatchEvent<N extends CollectionTreeNodeInterface<?, N>> extends EventObject {
+	private static final long serialVersionUID = 4617224655318230947L;
+	
+	private List<IndexRange> ranges = null;
+	private List<N> addedNodes = null;
+	private List<N> removedNodes = null;
+	
+	/**
+	 * 
+	 * 
+	 * @param source The node of which the child nodes changed
+	 * @param ranges The changes, in the order they have been made
+	 * @param addedNodes All added nodes, in the order they have been added
+	 * @param removedNodes All removed nodes, in the order they have been removed
+	 */
+	public TreeNodeBatchEvent(N source, List<IndexRange> ranges, List<N> addedNodes, List<N> removedNodes) {
+		super(source);
+		this.ranges = Collections.unmodifiableList(ranges);
+		this.addedNodes = Collections.unmodifiableList(addedNodes);
+		this.removedNodes = Collections.unmodifiableList(removedNodes);
+	}
+	
+	/**
+	 * The node of which the child nodes have been added or removed
+	 * 
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public N getSourceNode() {
+		return (N) getSource();
+	}
+	
+	/**
+	 * Returns the coalesced index ranges of the added and removed child nodes, 
+	 * in the order the changes have been made
+	 * 
+	 * @return
+	 */
+	public List<IndexRange> getIndexRanges() {
+		return ranges;
+	}
+	
+	/**
+	 * Returns all nodes which have been added during the batch. Nodes which have 
+	 * been removed again are included as well.
+	 * 
+	 * @return
+	 */
+	public List<N> getAddedNodes() {
+		return addedNodes;
+	}
+	
+	/**
+	 * Returns all nodes which have been removed during the batch
+	 * 
+	 * @return
+	 */
+	public List<N> getRemovedNodes() {
+		return removedNodes;
+	}
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[source=" + getSource() + ", ranges=" + ranges + "]";
+	}
+	
+	
+	/**
+	 * A range of consecutive child node indexes which have been added or removed
+	 *
+	 */
+	public static final class IndexRange {
+		
+		private final boolean added;
+		private final int startIndex;
+		private final int count;
+		
+		/**
+		 * 
+		 * 
+		 * @param added <code>true</code> for added nodes, <code>false</code> for 
+		 * removed nodes
+		 * @param startIndex The index of the first node
+		 * @param count The number of nodes
+		 */
+		public IndexRange(boolean added, int startIndex, int count) {
+			this.added = added;
+			this.startIndex = startIndex;
+			this.count = count;
+		}
+		
+		/**
+		 * 
+		 * 
+		 * @return <code>true</code> if the nodes in this range have been added
+		 */
+		public boolean isAdded() {
+			return added;
+		}
+		
+		/**
+		 * 
+		 * 
+		 * @return <code>true</code> if the nodes in this range have been removed
+		 */
+		public boolean isRemoved() {
+			return ! added;
+		}
+		
+		/**
+		 * The index of the first node of the range. For added nodes, the index 
+		 * after they have been added, for removed nodes the index before they have 
+		 * been removed.
+		 * 
+		 * @return
+		 */
+		public int getStartIndex() {
+			return startIndex;
+		}
+		
+		/**
+		 * The number of nodes in the range
+		 * 
+		 * @return
+		 */
+		public int getCount() {
+			return count;
+		}
+		
+		@Override
+		public String toString() {
+			return (added ? "+" : "-") + "[" + startIndex + ".." + (startIndex + count - 1) + "]";
+		}
+		
+	}
+
+}
@@ -32,6 +32,7 @@ import ch.thn.datatree.core.CollectionTreeNodeInterface;
 public class TreeNodeEvent<N extends CollectionTreeNodeInterface<?, N>> extends EventObject {
 	private static final long serialVersionUID = -7895991400838880597L;
 
+	private TreeEventType eventType = null;
 	private N node = null;
 	private N parent = null;
 
@@ -57,6 +58,33 @@ public class TreeNodeEvent<N extends CollectionTreeNodeInterface<?, N>> extends
 		this.oldValue = oldValue;
 	}
 	
+	/**
+	 * 
+	 * 
+	 * @param eventType The type of the event
+	 * @param source
+	 * @param node
+	 * @param parent The parent node of the <code>node</code> parameter. If the node has been 
+	 * removed from a tree, this parent is the former parent.
+	 * @param nodeIndex The index among its siblings of <code>node</code> parameter. If the node 
+	 * has been removed from a tree, this index is the former index.
+	 * @param oldValue
+	 */
+	public TreeNodeEvent(TreeEventType eventType, N source, N node, N parent, int nodeIndex, Object oldValue) {
+		this(source, node, parent, nodeIndex, oldValue);
+		this.eventType = eventType;
+	}
+	
+	/**
+	 * Returns the type of the event, or <code>null</code> if the event has been 
+	 * created without a type
+	 * 
+	 * @return
+	 */
+	public TreeEventType getEventType() {
+		return eventType;
+	}
+	
 	/**
 	 * The node which caused the event. E.g. the node to which a child node has been added to 
 	 * or the node of which a child node has been removed from.
@@ -0,0 +1,181 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+
+/**
+ * An {@link Iterator} over a sub tree which can be split into several iterators 
+ * which cover disjoint parts of the sub tree. The iterators can then be processed 
+ * independently, for example on multiple threads (see 
+ * {@link DataTreeUtil#processParallel(CollectionTreeNodeInterface, ch.thn.datatree.DataTreeUtil.TreeNodeProcessor, java.util.concurrent.ExecutorService, int)}).<br />
+ * <br />
+ * The work is split along the child branches: whole branches which have not 
+ * been started yet are handed over to the new iterator. If there is only one 
+ * branch left, the branch head is kept and its child branches are split instead. 
+ * If the sizes of the branches are known (see 
+ * {@link CollectionTreeNodeInterface#isSubtreeSizeKnown()}), the branches are 
+ * split so that both iterators get about the same number of nodes, otherwise 
+ * they get about the same number of branches.<br />
+ * <br />
+ * As long as an iterator has not been split, the nodes are returned in the 
+ * same order as with a {@link TreeIterator}. The tree must not be modified 
+ * while iterating.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <N>
+ */
+public class TreeSplitIterator<N extends CollectionTreeNodeInterface<?, N>> 
+	implements Iterator<N> {
+
+	//Nodes which are returned without their child nodes (their branches are pending)
+	private ArrayDeque<N> pendingNodes = null;
+	//Branches which have not been started yet
+	private ArrayDeque<N> pendingBranches = null;
+	
+	private TreeIterator<N> branchIterator = null;
+	
+	/**
+	 * Iterates through the sub tree of the given node (including the node itself)
+	 * 
+	 * @param toIterate
+	 */
+	public TreeSplitIterator(N toIterate) {
+		this(new ArrayDeque<N>());
+		
+		pendingBranches.add(toIterate);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param pendingBranches
+	 */
+	private TreeSplitIterator(ArrayDeque<N> pendingBranches) {
+		this.pendingBranches = pendingBranches;
+		
+		pendingNodes = new ArrayDeque<N>();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (branchIterator != null && branchIterator.hasNext()) {
+			return true;
+		}
+		
+		return ! pendingNodes.isEmpty() || ! pendingBranches.isEmpty();
+	}
+
+	@Override
+	public N next() {
+		if (branchIterator != null && branchIterator.hasNext()) {
+			return branchIterator.next();
+		}
+		
+		branchIterator = null;
+		
+		if (! pendingNodes.isEmpty()) {
+			return pendingNodes.pollFirst();
+		}
+		
+		if (pendingBranches.isEmpty()) {
+			throw new NoSuchElementException("Reached the end of the tree");
+		}
+		
+		branchIterator = pendingBranches.pollFirst().iterator();
+		return branchIterator.next();
+	}
+	
+	/**
+	 * Splits off a part of the remaining nodes. The returned iterator covers 
+	 * the nodes which are split off, and this iterator does not return them any 
+	 * more.
+	 * 
+	 * @return An iterator over the split off nodes, or <code>null</code> if 
+	 * there is nothing left which can be split (e.g. only the branch which is 
+	 * currently iterated is left)
+	 */
+	public TreeSplitIterator<N> trySplit() {
+		//Open up single branches until there is more than one branch to split
+		while (pendingBranches.size() == 1 && ! pendingBranches.peekFirst().isLeafNode()) {
+			N branchHead = pendingBranches.pollFirst();
+			pendingNodes.addLast(branchHead);
+			pendingBranches.addAll(branchHead.getChildNodes());
+		}
+		
+		if (pendingBranches.size() < 2) {
+			return null;
+		}
+		
+		//Hand over the second half of the branches
+		int keep = getSplitIndex();
+		ArrayDeque<N> splitBranches = new ArrayDeque<N>();
+		while (pendingBranches.size() > keep) {
+			splitBranches.addFirst(pendingBranches.pollLast());
+		}
+		
+		return new TreeSplitIterator<N>(splitBranches);
+	}
+	
+	/**
+	 * Returns the number of pending branches to keep when splitting. If all 
+	 * branch sizes are known, it is the branch boundary which halves the number 
+	 * of nodes, otherwise the number of branches is halved.
+	 * 
+	 * @return
+	 */
+	private int getSplitIndex() {
+		int count = pendingBranches.size();
+		int[] sizes = new int[count];
+		int total = 0;
+		
+		int index = 0;
+		for (N branch : pendingBranches) {
+			if (! branch.isSubtreeSizeKnown()) {
+				return count / 2;
+			}
+			
+			sizes[index] = branch.getSubtreeSize();
+			total += sizes[index];
+			index++;
+		}
+		
+		//Keep at least one branch and hand over at least one. Keep adding 
+		//branches as long as it gets closer to half of the nodes.
+		int keep = 1;
+		int kept = sizes[0];
+		while (keep < count - 1 
+				&& Math.abs(total - 2 * (kept + sizes[keep])) < Math.abs(total - 2 * kept)) {
+			kept += sizes[keep];
+			keep++;
+		}
+		
+		return keep;
+	}
+	
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Removing is not supported");
+	}
+	
+}
@@ -0,0 +1,87 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+
+
+/**
+ * A visitor which can be used to walk through a tree with 
+ * {@link CollectionTreeNodeInterface#accept(TreeVisitor)}. The tree is walked 
+ * through depth first. Each node is entered before its child nodes are visited and 
+ * left after all its child nodes have been visited. The returned {@link VisitResult} 
+ * controls how the walk continues, so that searches only have to visit the part 
+ * of the tree which is of interest.
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <N>
+ */
+public interface TreeVisitor<N extends CollectionTreeNodeInterface<?, N>> {
+	
+	/**
+	 * 
+	 * 
+	 *
+	 * @author Thomas Naeff (github.com/thnaeff)
+	 *
+	 */
+	public enum VisitResult {
+		/**
+		 * Continue with the walk
+		 */
+		CONTINUE, 
+		
+		/**
+		 * Do not visit the child nodes of the entered node. {@link TreeVisitor#leaveNode(CollectionTreeNodeInterface)} 
+		 * is not called for that node. Only has an effect when returned by 
+		 * {@link TreeVisitor#enterNode(CollectionTreeNodeInterface)}.
+		 */
+		SKIP_SUBTREE, 
+		
+		/**
+		 * Do not visit the remaining sibling nodes of the node. When returned by 
+		 * {@link TreeVisitor#enterNode(CollectionTreeNodeInterface)}, the child nodes 
+		 * are not visited and {@link TreeVisitor#leaveNode(CollectionTreeNodeInterface)} 
+		 * is not called for that node either.
+		 */
+		SKIP_SIBLINGS, 
+		
+		/**
+		 * Stop the walk immediately
+		 */
+		TERMINATE;
+	}
+	
+	
+	/**
+	 * Called when a node is entered, before its child nodes are visited.
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public VisitResult enterNode(N node);
+	
+	/**
+	 * Called when a node is left, after all its child nodes have been visited.
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public VisitResult leaveNode(N node);
+
+}
@@ -0,0 +1,635 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import ch.thn.datatree.ChildLoader;
+import ch.thn.datatree.KeyListTreeNode;
+import ch.thn.datatree.TreeEventType;
+import ch.thn.datatree.TreeNodeListener;
+import ch.thn.datatree.core.GenericKeyListTreeNode;
+
+import com.google.common.collect.Multimap;
+
+/**
+ * A thread-safe {@link KeyListTreeNode}. All nodes of a tree share one {@link StripedTreeLock}: 
+ * reading or modifying a node locks the branch the node belongs to (see 
+ * {@link StripedTreeLock}), so different branches can be used in parallel. 
+ * Modifying the child nodes of the root node and the queries which concern the 
+ * whole tree (like {@link #getGlobalIndex()}) lock the whole tree.<br />
+ * <br />
+ * Each method locks on its own. Operations which consist of several method calls, 
+ * like iterating over the tree or walking from node to node, have to lock the 
+ * branch or the tree with {@link #getTreeLock()}. Queries only need a read lock, 
+ * so all of them can be used while the tree is locked for reading. 
+ * {@link #getChildNodes()} returns a snapshot of the child nodes. Listeners are 
+ * notified while the lock is held. 
+ * New nodes have to be created with the node factory methods of a node of the tree 
+ * (e.g. {@link #addChildNode(Object)}), so that they use the same lock. Lazy loading 
+ * of child nodes and copy-on-write copies are not supported.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class ConcurrentKeyListTreeNode<K, V> extends GenericKeyListTreeNode<K, V, ConcurrentKeyListTreeNode<K, V>> {
+
+	private final StripedTreeLock lock;
+
+	/**
+	 * Creates a new tree with its own lock
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	public ConcurrentKeyListTreeNode(K key, V value) {
+		this(key, value, new StripedTreeLock());
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param key
+	 * @param value
+	 * @param lock The lock of the tree
+	 */
+	public ConcurrentKeyListTreeNode(K key, V value, StripedTreeLock lock) {
+		super(key, value);
+		this.lock = lock;
+	}
+
+	/**
+	 * Returns the lock which guards this node and all other nodes of its tree. 
+	 * Can be used to lock a branch or the whole tree for operations which 
+	 * consist of several steps, like iterating.
+	 * 
+	 * @return
+	 */
+	public StripedTreeLock getTreeLock() {
+		return lock;
+	}
+
+	/**
+	 * Makes sure that the given node is guarded by the same lock as this node
+	 * 
+	 * @param node
+	 */
+	private void checkLock(ConcurrentKeyListTreeNode<K, V> node) {
+		lock.checkLock(node.lock);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param nodes
+	 */
+	private void checkLock(Collection<ConcurrentKeyListTreeNode<K, V>> nodes) {
+		for (ConcurrentKeyListTreeNode<K, V> node : nodes) {
+			checkLock(node);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> nodeFactory(K key, V value) {
+		return new ConcurrentKeyListTreeNode<K, V>(key, value, lock);
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> nodeFactory(V value) {
+		return new ConcurrentKeyListTreeNode<K, V>(null, value, lock);
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> nodeFactory(ConcurrentKeyListTreeNode<K, V> node) {
+		return new ConcurrentKeyListTreeNode<K, V>(node.getNodeKey(), node.getNodeValue(), lock);
+	}
+
+	@Override
+	public V getNodeValue() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return super.getNodeValue();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void setNodeValue(V value) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.setNodeValue(value);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public List<ConcurrentKeyListTreeNode<K, V>> getChildNodes() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return Collections.unmodifiableList(new ArrayList<ConcurrentKeyListTreeNode<K, V>>(super.getChildNodes()));
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public int getChildNodesCount() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return super.getChildNodesCount();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean isLeafNode() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return super.isLeafNode();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> addChildNode(ConcurrentKeyListTreeNode<K, V> node) {
+		checkLock(node);
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.addChildNode(node);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> addChildNode(V value) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.addChildNode(value);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean addChildNodes(Collection<ConcurrentKeyListTreeNode<K, V>> nodes) {
+		checkLock(nodes);
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.addChildNodes(nodes);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean removeChildNode(ConcurrentKeyListTreeNode<K, V> node) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.removeChildNode(node);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void removeChildNodes() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.removeChildNodes();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean removeNode() {
+		int token = lock.lockNode(this, StripedTreeLock.SIBLING_WRITE);
+		try {
+			return super.removeNode();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> replaceNode(ConcurrentKeyListTreeNode<K, V> newNode) {
+		checkLock(newNode);
+		int token = lock.lockNode(this, StripedTreeLock.SIBLING_WRITE);
+		try {
+			return super.replaceNode(newNode);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public int getSubtreeSize() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_QUERY);
+		try {
+			return super.getSubtreeSize();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean isSubtreeSizeKnown() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_QUERY);
+		try {
+			return super.isSubtreeSizeKnown();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public int getNodeDepth() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_QUERY);
+		try {
+			return super.getNodeDepth();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> getRootNode() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_QUERY);
+		try {
+			return super.getRootNode();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean isAncestorOf(ConcurrentKeyListTreeNode<K, V> node) {
+		int token = lock.lockNode(this, StripedTreeLock.TREE_QUERY);
+		try {
+			return super.isAncestorOf(node);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean isDescendantOf(ConcurrentKeyListTreeNode<K, V> node) {
+		int token = lock.lockNode(this, StripedTreeLock.TREE_QUERY);
+		try {
+			return super.isDescendantOf(node);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public int getGlobalIndex() {
+		int token = lock.lockNode(this, StripedTreeLock.TREE_QUERY);
+		try {
+			return super.getGlobalIndex();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> getNodeAtGlobalIndex(int index) {
+		int token = lock.lockNode(this, StripedTreeLock.TREE_QUERY);
+		try {
+			return super.getNodeAtGlobalIndex(index);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void beginBatch() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.beginBatch();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void commit() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.commit();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void addTreeNodeListener(TreeNodeListener<ConcurrentKeyListTreeNode<K, V>> l, EnumSet<TreeEventType> eventTypes) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.addTreeNodeListener(l, eventTypes);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void removeTreeNodeListener(TreeNodeListener<ConcurrentKeyListTreeNode<K, V>> l) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.removeTreeNodeListener(l);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void addSubtreeListener(TreeNodeListener<ConcurrentKeyListTreeNode<K, V>> l, EnumSet<TreeEventType> eventTypes) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.addSubtreeListener(l, eventTypes);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void removeSubtreeListener(TreeNodeListener<ConcurrentKeyListTreeNode<K, V>> l) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.removeSubtreeListener(l);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> getChildNode(int index) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return super.getChildNode(index);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> getFirstChildNode() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return super.getFirstChildNode();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> getLastChildNode() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return super.getLastChildNode();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> addChildNodeAt(int index, ConcurrentKeyListTreeNode<K, V> node) {
+		checkLock(node);
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.addChildNodeAt(index, node);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> addChildNodeAt(int index, V value) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.addChildNodeAt(index, value);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> removeChildNode(int index) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.removeChildNode(index);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public int getNodeIndex() {
+		int token = lock.lockNode(this, StripedTreeLock.SIBLING_QUERY);
+		try {
+			return super.getNodeIndex();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public int getChildNodeIndex(ConcurrentKeyListTreeNode<K, V> node) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_QUERY);
+		try {
+			return super.getChildNodeIndex(node);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> getNextSibling() {
+		int token = lock.lockNode(this, StripedTreeLock.SIBLING_QUERY);
+		try {
+			return super.getNextSibling();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> getPreviousSibling() {
+		int token = lock.lockNode(this, StripedTreeLock.SIBLING_QUERY);
+		try {
+			return super.getPreviousSibling();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> getChildNode(K key, int index) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return super.getChildNode(key, index);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public Collection<ConcurrentKeyListTreeNode<K, V>> getChildNodes(K key) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return Collections.unmodifiableCollection(new ArrayList<ConcurrentKeyListTreeNode<K, V>>(super.getChildNodes(key)));
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public int getChildNodesCount(K key) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return super.getChildNodesCount(key);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean hasChildNodes(K key) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return super.hasChildNodes(key);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public Set<K> getChildNodeKeys() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return Collections.unmodifiableSet(new LinkedHashSet<K>(super.getChildNodeKeys()));
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> addChildNodeCopy(ConcurrentKeyListTreeNode<K, V> node) {
+		return addChildNode(node.nodeFactory(node));
+	}
+
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> addChildNode(K key, V value) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.addChildNode(key, value);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean addChildNodes(Multimap<K, ConcurrentKeyListTreeNode<K, V>> nodes) {
+		checkLock(nodes.values());
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.addChildNodes(nodes);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public Collection<ConcurrentKeyListTreeNode<K, V>> removeChildNodes(K key) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.removeChildNodes(key);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean removeChildNode(K key, ConcurrentKeyListTreeNode<K, V> node) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.removeChildNode(key, node);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	public ConcurrentKeyListTreeNode<K, V> replaceNode(K key, V value) {
+		int token = lock.lockNode(this, StripedTreeLock.SIBLING_WRITE);
+		try {
+			return super.replaceNode(key, value);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	/**
+	 * Concurrent tree nodes do not load their child nodes lazily
+	 * 
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void setChildLoader(ChildLoader<ConcurrentKeyListTreeNode<K, V>> loader) {
+		throw new UnsupportedOperationException("Concurrent tree nodes do not load their child nodes lazily");
+	}
+
+	@Override
+	public void prefetchChildNodes(Executor executor) {
+		throw new UnsupportedOperationException("Concurrent tree nodes do not load their child nodes lazily");
+	}
+
+	@Override
+	public boolean unloadChildNodes() {
+		throw new UnsupportedOperationException("Concurrent tree nodes do not load their child nodes lazily");
+	}
+
+	/**
+	 * Concurrent tree nodes do not share child nodes between trees
+	 * 
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public ConcurrentKeyListTreeNode<K, V> copyTreeOnWrite() {
+		throw new UnsupportedOperationException("Concurrent tree nodes do not support copy-on-write copies");
+	}
+
+	@Override
+	protected ConcurrentKeyListTreeNode<K, V> internalGetThis() {
+		return this;
+	}
+
+}
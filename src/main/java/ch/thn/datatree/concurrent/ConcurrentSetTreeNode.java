@@ -0,0 +1,436 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.concurrent;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.concurrent.Executor;
+
+import ch.thn.datatree.ChildLoader;
+import ch.thn.datatree.SetTreeNode;
+import ch.thn.datatree.TreeEventType;
+import ch.thn.datatree.TreeNodeListener;
+import ch.thn.datatree.core.GenericSetTreeNode;
+
+import com.google.common.collect.Multisets;
+import com.google.common.collect.SortedMultiset;
+import com.google.common.collect.TreeMultiset;
+
+/**
+ * A thread-safe {@link SetTreeNode}. All nodes of a tree share one {@link StripedTreeLock}: 
+ * reading or modifying a node locks the branch the node belongs to (see 
+ * {@link StripedTreeLock}), so different branches can be used in parallel. 
+ * Modifying the child nodes of the root node and the queries which concern the 
+ * whole tree (like {@link #getGlobalIndex()}) lock the whole tree.<br />
+ * <br />
+ * Each method locks on its own. Operations which consist of several method calls, 
+ * like iterating over the tree or walking from node to node, have to lock the 
+ * branch or the tree with {@link #getTreeLock()}. Queries only need a read lock, 
+ * so all of them can be used while the tree is locked for reading. 
+ * {@link #getChildNodes()} returns a snapshot of the child nodes. Listeners are 
+ * notified while the lock is held. 
+ * New nodes have to be created with the node factory methods of a node of the tree 
+ * (e.g. {@link #addChildNode(Object)}), so that they use the same lock. Lazy loading 
+ * of child nodes and copy-on-write copies are not supported.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <V>
+ */
+public class ConcurrentSetTreeNode<V> extends GenericSetTreeNode<V, ConcurrentSetTreeNode<V>> {
+
+	private final StripedTreeLock lock;
+
+	/**
+	 * Creates a new tree with its own lock
+	 * 
+	 * @param value
+	 */
+	public ConcurrentSetTreeNode(V value) {
+		this(value, new StripedTreeLock());
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param value
+	 * @param lock The lock of the tree
+	 */
+	public ConcurrentSetTreeNode(V value, StripedTreeLock lock) {
+		super(value);
+		this.lock = lock;
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param comparator
+	 * @param value
+	 * @param lock The lock of the tree
+	 */
+	public ConcurrentSetTreeNode(Comparator<? super ConcurrentSetTreeNode<V>> comparator, 
+			V value, StripedTreeLock lock) {
+		super(comparator, value);
+		this.lock = lock;
+	}
+
+	/**
+	 * Returns the lock which guards this node and all other nodes of its tree. 
+	 * Can be used to lock a branch or the whole tree for operations which 
+	 * consist of several steps, like iterating.
+	 * 
+	 * @return
+	 */
+	public StripedTreeLock getTreeLock() {
+		return lock;
+	}
+
+	/**
+	 * Makes sure that the given node is guarded by the same lock as this node
+	 * 
+	 * @param node
+	 */
+	private void checkLock(ConcurrentSetTreeNode<V> node) {
+		lock.checkLock(node.lock);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param nodes
+	 */
+	private void checkLock(Collection<ConcurrentSetTreeNode<V>> nodes) {
+		for (ConcurrentSetTreeNode<V> node : nodes) {
+			checkLock(node);
+		}
+	}
+
+	@Override
+	public ConcurrentSetTreeNode<V> nodeFactory(V value) {
+		return new ConcurrentSetTreeNode<V>(value, lock);
+	}
+
+	@Override
+	public ConcurrentSetTreeNode<V> nodeFactory(ConcurrentSetTreeNode<V> node) {
+		return new ConcurrentSetTreeNode<V>(node.getNodeValue(), lock);
+	}
+
+	@Override
+	public V getNodeValue() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return super.getNodeValue();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void setNodeValue(V value) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.setNodeValue(value);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public SortedMultiset<ConcurrentSetTreeNode<V>> getChildNodes() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			SortedMultiset<ConcurrentSetTreeNode<V>> childNodes = super.getChildNodes();
+			SortedMultiset<ConcurrentSetTreeNode<V>> snapshot = 
+					TreeMultiset.create(childNodes.comparator());
+			snapshot.addAll(childNodes);
+			return Multisets.unmodifiableSortedMultiset(snapshot);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public int getChildNodesCount() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return super.getChildNodesCount();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean isLeafNode() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_READ);
+		try {
+			return super.isLeafNode();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentSetTreeNode<V> addChildNode(ConcurrentSetTreeNode<V> node) {
+		checkLock(node);
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.addChildNode(node);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentSetTreeNode<V> addChildNode(V value) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.addChildNode(value);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean addChildNodes(Collection<ConcurrentSetTreeNode<V>> nodes) {
+		checkLock(nodes);
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.addChildNodes(nodes);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean removeChildNode(ConcurrentSetTreeNode<V> node) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			return super.removeChildNode(node);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void removeChildNodes() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.removeChildNodes();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean removeNode() {
+		int token = lock.lockNode(this, StripedTreeLock.SIBLING_WRITE);
+		try {
+			return super.removeNode();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentSetTreeNode<V> replaceNode(ConcurrentSetTreeNode<V> newNode) {
+		checkLock(newNode);
+		int token = lock.lockNode(this, StripedTreeLock.SIBLING_WRITE);
+		try {
+			return super.replaceNode(newNode);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public int getSubtreeSize() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_QUERY);
+		try {
+			return super.getSubtreeSize();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean isSubtreeSizeKnown() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_QUERY);
+		try {
+			return super.isSubtreeSizeKnown();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public int getNodeDepth() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_QUERY);
+		try {
+			return super.getNodeDepth();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentSetTreeNode<V> getRootNode() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_QUERY);
+		try {
+			return super.getRootNode();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean isAncestorOf(ConcurrentSetTreeNode<V> node) {
+		int token = lock.lockNode(this, StripedTreeLock.TREE_QUERY);
+		try {
+			return super.isAncestorOf(node);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public boolean isDescendantOf(ConcurrentSetTreeNode<V> node) {
+		int token = lock.lockNode(this, StripedTreeLock.TREE_QUERY);
+		try {
+			return super.isDescendantOf(node);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public int getGlobalIndex() {
+		int token = lock.lockNode(this, StripedTreeLock.TREE_QUERY);
+		try {
+			return super.getGlobalIndex();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public ConcurrentSetTreeNode<V> getNodeAtGlobalIndex(int index) {
+		int token = lock.lockNode(this, StripedTreeLock.TREE_QUERY);
+		try {
+			return super.getNodeAtGlobalIndex(index);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void beginBatch() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.beginBatch();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void commit() {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.commit();
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void addTreeNodeListener(TreeNodeListener<ConcurrentSetTreeNode<V>> l, EnumSet<TreeEventType> eventTypes) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.addTreeNodeListener(l, eventTypes);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void removeTreeNodeListener(TreeNodeListener<ConcurrentSetTreeNode<V>> l) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.removeTreeNodeListener(l);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void addSubtreeListener(TreeNodeListener<ConcurrentSetTreeNode<V>> l, EnumSet<TreeEventType> eventTypes) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.addSubtreeListener(l, eventTypes);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	@Override
+	public void removeSubtreeListener(TreeNodeListener<ConcurrentSetTreeNode<V>> l) {
+		int token = lock.lockNode(this, StripedTreeLock.NODE_WRITE);
+		try {
+			super.removeSubtreeListener(l);
+		} finally {
+			lock.unlockNode(token);
+		}
+	}
+
+	/**
+	 * Concurrent tree nodes do not load their child nodes lazily
+	 * 
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void setChildLoader(ChildLoader<ConcurrentSetTreeNode<V>> loader) {
+		throw new UnsupportedOperationException("Concurrent tree nodes do not load their child nodes lazily");
+	}
+
+	@Override
+	public void prefetchChildNodes(Executor executor) {
+		throw new UnsupportedOperationException("Concurrent tree nodes do not load their child nodes lazily");
+	}
+
+	@Override
+	public boolean unloadChildNodes() {
+		throw new UnsupportedOperationException("Concurrent tree nodes do not load their child nodes lazily");
+	}
+
+	/**
+	 * Concurrent tree nodes do not share child nodes between trees
+	 * 
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public ConcurrentSetTreeNode<V> copyTreeOnWrite() {
+		throw new UnsupportedOperationException("Concurrent tree nodes do not support copy-on-write copies");
+	}
+
+	@Override
+	protected ConcurrentSetTreeNode<V> internalGetThis() {
+		return this;
+	}
+
+}
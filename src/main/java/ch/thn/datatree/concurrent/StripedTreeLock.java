@@ -0,0 +1,369 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.concurrent;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+import ch.thn.datatree.core.TreeNodeError;
+
+/**
+ * Read/write locks for the nodes of a tree, striped by branch. A branch is the 
+ * sub tree of a child node of the root node. All nodes of a branch are guarded by 
+ * the same lock stripe, so independent branches can be read and modified in 
+ * parallel. Operations on the root node itself (like adding or removing a 
+ * branch) and operations which concern the whole tree lock all stripes.<br />
+ * <br />
+ * The locks are reentrant. A thread which holds the lock of one branch should 
+ * not lock another branch or the whole tree (e.g. within a listener), since two 
+ * threads doing that in opposite order dead lock. A read lock can not be 
+ * upgraded to a write lock.<br />
+ * <br />
+ * Queries like the node index or the sub tree size fill cached values of the 
+ * nodes. They only need a read lock: each stripe has an additional small lock 
+ * which is held while the cached values are filled, so several readers of 
+ * the same branch do not fill them at the same time. A thread which holds a 
+ * read lock (e.g. to iterate over the tree) can therefore use all queries.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class StripedTreeLock {
+	
+	/**
+	 * The stripe number returned when all stripes have been locked
+	 */
+	public static final int ALL_STRIPES = -1;
+	
+	//The kinds of access of the operations of the concurrent tree nodes. All 
+	//node variants lock through lockNode, so the same kind of operation is 
+	//locked the same way by all of them.
+	
+	//Reads the value or the child nodes of the node
+	static final int NODE_READ = 0;
+	//Modifies the value, the child nodes or the listeners of the node
+	static final int NODE_WRITE = 1;
+	//Queries the node or its sub tree, which might fill cached values
+	static final int NODE_QUERY = 2;
+	//Queries the position of the node among its siblings
+	static final int SIBLING_QUERY = 3;
+	//Removes or replaces the node
+	static final int SIBLING_WRITE = 4;
+	//Queries which concern the whole tree
+	static final int TREE_QUERY = 5;
+	
+	//The access is stored in the lowest bits of a node lock token, the locked 
+	//stripe in the bits above
+	private static final int ACCESS_BITS = 3;
+	private static final int ACCESS_MASK = (1 << ACCESS_BITS) - 1;
+	
+	private final ReentrantReadWriteLock[] stripes;
+	//Held while the cached values of the nodes of a stripe are filled
+	private final ReentrantLock[] cacheLocks;
+	
+	/**
+	 * Creates a lock with 16 stripes
+	 * 
+	 */
+	public StripedTreeLock() {
+		this(16);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param stripeCount The number of stripes. Rounded up to a power of two.
+	 */
+	public StripedTreeLock(int stripeCount) {
+		if (stripeCount < 1) {
+			throw new IllegalArgumentException("At least one stripe is needed");
+		}
+		
+		int count = Integer.highestOneBit(stripeCount);
+		if (count < stripeCount) {
+			count <<= 1;
+		}
+		
+		stripes = new ReentrantReadWriteLock[count];
+		cacheLocks = new ReentrantLock[count];
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new ReentrantReadWriteLock();
+			cacheLocks[i] = new ReentrantLock();
+		}
+	}
+	
+	/**
+	 * Returns the number of stripes
+	 * 
+	 * @return
+	 */
+	public int getStripeCount() {
+		return stripes.length;
+	}
+	
+	/**
+	 * Locks the branch the given node belongs to. If the node is the root node, 
+	 * the whole tree is locked. A node has to be locked to read or modify its 
+	 * value and its child nodes.
+	 * 
+	 * @param node
+	 * @param write <code>true</code> to lock for writing, <code>false</code> for reading
+	 * @return The locked stripe, which has to be passed to {@link #unlockBranch(int, boolean)}
+	 */
+	public <N extends CollectionTreeNodeInterface<?, N>> int lockBranch(N node, boolean write) {
+		while (true) {
+			N branch = getBranch(node);
+			int stripe = branch == null ? ALL_STRIPES : getStripe(branch);
+			
+			lockStripe(stripe, write);
+			
+			//The node might have been moved while waiting for the lock
+			if (getBranch(node) == branch) {
+				return stripe;
+			}
+			
+			unlockBranch(stripe, write);
+		}
+	}
+	
+	/**
+	 * Locks the branch the parent node of the given node belongs to. Needed to 
+	 * remove or replace the given node or to determine its position among its 
+	 * siblings. If the node has no parent node, the branch of the node itself 
+	 * is locked.
+	 * 
+	 * @param node
+	 * @param write <code>true</code> to lock for writing, <code>false</code> for reading
+	 * @return The locked stripe, which has to be passed to {@link #unlockBranch(int, boolean)}
+	 */
+	public <N extends CollectionTreeNodeInterface<?, N>> int lockParentBranch(N node, boolean write) {
+		while (true) {
+			N parent = node.getParentNode();
+			int stripe = lockBranch(parent == null ? node : parent, write);
+			
+			if (node.getParentNode() == parent) {
+				return stripe;
+			}
+			
+			unlockBranch(stripe, write);
+		}
+	}
+	
+	/**
+	 * Unlocks the stripe returned when locking
+	 * 
+	 * @param stripe
+	 * @param write
+	 */
+	public void unlockBranch(int stripe, boolean write) {
+		if (stripe == ALL_STRIPES) {
+			unlockTree(write);
+		} else if (write) {
+			stripes[stripe].writeLock().unlock();
+		} else {
+			stripes[stripe].readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Locks the given node for the given kind of access
+	 * 
+	 * @param node
+	 * @param access One of the access constants, like {@link #NODE_READ}
+	 * @return The token which has to be passed to {@link #unlockNode(int)}
+	 */
+	<N extends CollectionTreeNodeInterface<?, N>> int lockNode(N node, int access) {
+		int stripe = 0;
+		
+		switch (access) {
+		case NODE_READ:
+			stripe = lockBranch(node, false);
+			break;
+		case NODE_WRITE:
+			stripe = lockBranch(node, true);
+			break;
+		case NODE_QUERY:
+			stripe = lockBranch(node, false);
+			lockCaches(stripe);
+			break;
+		case SIBLING_QUERY:
+			stripe = lockParentBranch(node, false);
+			lockCaches(stripe);
+			break;
+		case SIBLING_WRITE:
+			stripe = lockParentBranch(node, true);
+			break;
+		case TREE_QUERY:
+			lockTree(false);
+			stripe = ALL_STRIPES;
+			lockCaches(stripe);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown access " + access);
+		}
+		
+		return ((stripe + 1) << ACCESS_BITS) | access;
+	}
+	
+	/**
+	 * Unlocks what has been locked with {@link #lockNode(CollectionTreeNodeInterface, int)}
+	 * 
+	 * @param token
+	 */
+	void unlockNode(int token) {
+		int stripe = (token >>> ACCESS_BITS) - 1;
+		int access = token & ACCESS_MASK;
+		
+		if (access == NODE_QUERY || access == SIBLING_QUERY || access == TREE_QUERY) {
+			unlockCaches(stripe);
+		}
+		
+		unlockBranch(stripe, access == NODE_WRITE || access == SIBLING_WRITE);
+	}
+	
+	/**
+	 * Locks the cached values of the given stripe (or of all stripes, always in 
+	 * the same order). The stripe itself has to be locked already.
+	 * 
+	 * @param stripe
+	 */
+	private void lockCaches(int stripe) {
+		if (stripe == ALL_STRIPES) {
+			for (ReentrantLock cacheLock : cacheLocks) {
+				cacheLock.lock();
+			}
+		} else {
+			cacheLocks[stripe].lock();
+		}
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param stripe
+	 */
+	private void unlockCaches(int stripe) {
+		if (stripe == ALL_STRIPES) {
+			for (int i = cacheLocks.length - 1; i >= 0; i--) {
+				cacheLocks[i].unlock();
+			}
+		} else {
+			cacheLocks[stripe].unlock();
+		}
+	}
+	
+	/**
+	 * Makes sure that a node which is added to a tree guarded by this lock is 
+	 * guarded by this lock as well
+	 * 
+	 * @param nodeLock The lock of the node
+	 */
+	void checkLock(StripedTreeLock nodeLock) {
+		if (nodeLock != this) {
+			throw new TreeNodeError("The node uses another lock than this tree. " 
+					+ "Use nodeFactory of a node of this tree to create new nodes.");
+		}
+	}
+	
+	/**
+	 * Locks all stripes. Needed for operations which concern the whole tree, 
+	 * like iterating over the tree.
+	 * 
+	 * @param write <code>true</code> to lock for writing, <code>false</code> for reading
+	 */
+	public void lockTree(boolean write) {
+		//Always in the same order
+		for (ReentrantReadWriteLock stripe : stripes) {
+			if (write) {
+				stripe.writeLock().lock();
+			} else {
+				stripe.readLock().lock();
+			}
+		}
+	}
+	
+	/**
+	 * Unlocks all stripes
+	 * 
+	 * @param write
+	 */
+	public void unlockTree(boolean write) {
+		for (int i = stripes.length - 1; i >= 0; i--) {
+			if (write) {
+				stripes[i].writeLock().unlock();
+			} else {
+				stripes[i].readLock().unlock();
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param stripe
+	 * @param write
+	 */
+	private void lockStripe(int stripe, boolean write) {
+		if (stripe == ALL_STRIPES) {
+			lockTree(write);
+		} else if (write) {
+			stripes[stripe].writeLock().lock();
+		} else {
+			stripes[stripe].readLock().lock();
+		}
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param branch
+	 * @return
+	 */
+	private int getStripe(Object branch) {
+		int h = System.identityHashCode(branch);
+		//Spread the higher bits
+		h ^= (h >>> 16);
+		return h & (stripes.length - 1);
+	}
+	
+	/**
+	 * Returns the ancestor of the given node (or the node itself) which is a 
+	 * child node of the root node, or <code>null</code> if the given node is 
+	 * the root node
+	 * 
+	 * @param node
+	 * @return
+	 */
+	private static <N extends CollectionTreeNodeInterface<?, N>> N getBranch(N node) {
+		N parent = node.getParentNode();
+		if (parent == null) {
+			return null;
+		}
+		
+		N grandParent = parent.getParentNode();
+		while (grandParent != null) {
+			node = parent;
+			parent = grandParent;
+			grandParent = parent.getParentNode();
+		}
+		
+		return node;
+	}
+
+}
@@ -17,9 +17,15 @@
 package ch.thn.datatree.core;
 
 import java.util.Collection;
+import java.util.EnumSet;
 
+import ch.thn.datatree.BreadthFirstTreeIterator;
+import ch.thn.datatree.PostOrderTreeIterator;
+import ch.thn.datatree.TreeEventType;
 import ch.thn.datatree.TreeIterator;
 import ch.thn.datatree.TreeNodeListener;
+import ch.thn.datatree.TreeSplitIterator;
+import ch.thn.datatree.TreeVisitor;
 
 /**
  * This is the base interface for any tree node
@@ -56,6 +62,16 @@ extends Iterable<N> {
 	 */
 	public void addTreeNodeListener(TreeNodeListener<N> l);
 
+	/**
+	 * Adds the given listener to the list of tree node listeners. The listener 
+	 * is only notified about events of the given types. If the listener is 
+	 * already registered, it is registered for the given types instead.
+	 * 
+	 * @param l
+	 * @param eventTypes
+	 */
+	public void addTreeNodeListener(TreeNodeListener<N> l, EnumSet<TreeEventType> eventTypes);
+
 	/**
 	 * Removes the given listener from the list of tree node listeners
 	 * 
@@ -63,6 +79,34 @@ extends Iterable<N> {
 	 */
 	public void removeTreeNodeListener(TreeNodeListener<N> l);
 
+	/**
+	 * Adds the given listener to the list of sub tree listeners. A sub tree 
+	 * listener is notified about the events of this node and of all its 
+	 * descendants, the node which fired the event is the source of the 
+	 * {@link TreeNodeEvent}. Descendants do not need any registration, added 
+	 * nodes are covered automatically.
+	 * 
+	 * @param l
+	 */
+	public void addSubtreeListener(TreeNodeListener<N> l);
+
+	/**
+	 * Adds the given listener to the list of sub tree listeners. The listener 
+	 * is only notified about events of the given types. If the listener is 
+	 * already registered, it is registered for the given types instead.
+	 * 
+	 * @param l
+	 * @param eventTypes
+	 */
+	public void addSubtreeListener(TreeNodeListener<N> l, EnumSet<TreeEventType> eventTypes);
+
+	/**
+	 * Removes the given listener from the list of sub tree listeners
+	 * 
+	 * @param l
+	 */
+	public void removeSubtreeListener(TreeNodeListener<N> l);
+
 	/**
 	 * Returns an unmodifiable view of the child nodes
 	 * 
@@ -212,6 +256,66 @@ extends Iterable<N> {
 	 */
 	public int getNodeDepth();
 
+	/**
+	 * Checks if this node is an ancestor of the given node (the parent node, the 
+	 * parent of the parent node, ... up to the root node). A node is not its own 
+	 * ancestor.<br />
+	 * <br />
+	 * The check compares interval labels of the two nodes which are assigned when 
+	 * needed. As long as the tree does not change, the check is a constant time 
+	 * operation. Adding leaf nodes keeps the labels valid in most cases, any other 
+	 * change of the tree structure makes the next check label the whole tree again.
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public boolean isAncestorOf(N node);
+
+	/**
+	 * Checks if this node is a descendant of the given node (see 
+	 * {@link #isAncestorOf(CollectionTreeNodeInterface)}).
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public boolean isDescendantOf(N node);
+
+	/**
+	 * Returns the number of nodes in the sub tree of this node (including this 
+	 * node).
+	 * 
+	 * @return
+	 */
+	public int getSubtreeSize();
+
+	/**
+	 * Returns <code>true</code> if {@link #getSubtreeSize()} returns the size 
+	 * without having to go through the sub tree (e.g. because it is cached)
+	 * 
+	 * @return
+	 */
+	public boolean isSubtreeSizeKnown();
+
+	/**
+	 * Returns the position of this node in the whole tree when iterating the tree 
+	 * from the root node in pre-order (the order of the {@link TreeIterator}). The 
+	 * root node has the index 0.
+	 * 
+	 * @return
+	 */
+	public int getGlobalIndex();
+
+	/**
+	 * Returns the node at the given position of the whole tree when iterating the 
+	 * tree from the root node in pre-order (the order of the {@link TreeIterator}). 
+	 * This is the reverse of {@link #getGlobalIndex()}.
+	 * 
+	 * @param index
+	 * @return
+	 * @throws IndexOutOfBoundsException If the index is not within the tree
+	 */
+	public N getNodeAtGlobalIndex(int index);
+
 	/**
 	 * Returns an iterator over the nodes of this tree.
 	 * 
@@ -230,4 +334,46 @@ extends Iterable<N> {
 	 */
 	public TreeIterator<N> iterator(boolean subtreeOnly);
 
+	/**
+	 * Walks through the sub tree of this node (including this node) depth first and 
+	 * calls the given visitor for each visited node. The {@link TreeVisitor.VisitResult}s 
+	 * returned by the visitor can be used to skip branches or to stop the walk, only 
+	 * the visited nodes are traveled through.
+	 * 
+	 * @param visitor
+	 * @return <code>false</code> if the walk has been terminated by the visitor, 
+	 * <code>true</code> if it has been completed.
+	 */
+	public boolean accept(TreeVisitor<? super N> visitor);
+
+	/**
+	 * Returns an iterator which returns the child nodes before their parent node 
+	 * (post-order).
+	 * 
+	 * @param subtreeOnly If <code>true</code>, it only iterates through the sub
+	 * tree/branch of the current node (including the current node as root node of the
+	 * sub tree).
+	 * @return
+	 */
+	public PostOrderTreeIterator<N> postOrderIterator(boolean subtreeOnly);
+
+	/**
+	 * Returns an iterator which returns the nodes level by level (breadth first).
+	 * 
+	 * @param subtreeOnly If <code>true</code>, it only iterates through the sub
+	 * tree/branch of the current node (including the current node as root node of the
+	 * sub tree).
+	 * @return
+	 */
+	public BreadthFirstTreeIterator<N> breadthFirstIterator(boolean subtreeOnly);
+
+	/**
+	 * Returns an iterator over the sub tree of this node (including this node) 
+	 * which can be split into multiple iterators, e.g. to process the sub tree 
+	 * in parallel.
+	 * 
+	 * @return
+	 */
+	public TreeSplitIterator<N> splitIterator();
+
 }
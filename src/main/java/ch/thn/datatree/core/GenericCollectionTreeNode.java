@@ -16,14 +16,33 @@
  */
 package ch.thn.datatree.core;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
-
+import java.util.Collections;
+import java.lang.ref.WeakReference;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import ch.thn.datatree.BatchTreeNodeListener;
+import ch.thn.datatree.BreadthFirstTreeIterator;
+import ch.thn.datatree.ChildLoader;
+import ch.thn.datatree.PostOrderTreeIterator;
+import ch.thn.datatree.TreeEventType;
 import ch.thn.datatree.TreeIterator;
+import ch.thn.datatree.TreeNodeBatchEvent;
+import ch.thn.datatree.TreeNodeBatchEvent.IndexRange;
 import ch.thn.datatree.TreeNodeEvent;
 import ch.thn.datatree.TreeNodeListener;
+import ch.thn.datatree.TreeSplitIterator;
+import ch.thn.datatree.TreeVisitor;
+import ch.thn.datatree.TreeVisitor.VisitResult;
 
 /**
  * 
@@ -38,38 +57,78 @@ import ch.thn.datatree.TreeNodeListener;
 public abstract class GenericCollectionTreeNode<V, N extends GenericCollectionTreeNode<V, N, C>, C extends Collection<N>>
 implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 
+	/**
+	 * The event mask of a listener which is registered for all event types
+	 */
+	private static final int ALL_EVENTS = (1 << TreeEventType.values().length) - 1;
+
+	/**
+	 * The free space at the end of each interval when labeling a tree
+	 */
+	private static final long LABEL_GAP = 1L << 24;
+
+	/**
+	 * A new leaf node gets this fraction of the free space of its parent interval
+	 */
+	private static final long LABEL_SPLIT = 16;
+
 	private C children = null;
 	private N parent = null;
 	private V value = null;
 
-	private Set<TreeNodeListener<N>> listeners = null;
-	
-	protected enum TreeEventType {
-		/**
-		 * 
-		 */
-		CHILD_ADDED, 
-		
-		/**
-		 * 
-		 */
-		CHILD_REMOVED, 
-		
-		/**
-		 * 
-		 */
-		VALUE_CHANGED, 
-		
-		/**
-		 * 
-		 */
-		ADDED, 
-		
-		/**
-		 * 
-		 */
-		REMOVED;
-	}
+	//Copy-on-write array of the listeners, null as long as there are none. Firing 
+	//events works on the array which was set when firing started, listeners can 
+	//therefore be added or removed while an event is delivered.
+	private TreeNodeListener<N>[] listeners = null;
+	//Listeners for the events of this node and all its descendants
+	private TreeNodeListener<N>[] subtreeListeners = null;
+	//The event types any of the listeners is registered for, one bit per 
+	//TreeEventType ordinal
+	private int listenerMask = 0;
+	private int subtreeListenerMask = 0;
+	//The added and removed child nodes while a batch is open
+	private NodeBatch<N> batch = null;
+
+	//Changes whenever the position of an existing child node changes
+	private int childrenModCount = 0;
+	//The index of this node among its siblings. Only valid as long as the 
+	//mod count matches the children mod count of the parent node
+	private int childIndex = -1;
+	private int childIndexModCount = -1;
+
+	//Depth and root node, only valid as long as the mod count matches the 
+	//tree mod count of the cached root node
+	private int depth = 0;
+	private N root = null;
+	private int depthModCount = -1;
+	//Only used on a root node. Changes whenever a node which has child nodes is 
+	//attached to or detached from the tree, which means that the depth and root 
+	//node of all its descendants changed.
+	private int treeModCount = 0;
+
+	//The sub tree size, child offsets and interval labels. Only created once 
+	//they are queried.
+	private SubtreeIndex subtreeIndex = null;
+
+	//Loads the child nodes on first access. The child nodes are not loaded yet 
+	//as long as childNodesLoaded is false.
+	private ChildLoader<N> childLoader = null;
+	private boolean childNodesLoaded = true;
+	private boolean childNodesLoading = false;
+	//The child nodes which are being loaded in the background, if prefetched
+	private FutureTask<Collection<N>> childNodesPrefetch = null;
+
+	//Copy-on-write copies of this node which have not loaded their child nodes 
+	//yet. They have to load them before the child nodes of this node change.
+	private List<WeakReference<GenericCollectionTreeNode<?, ?, ?>>> copyDependents = null;
+	//Only valid on a root node. Set as soon as a copy-on-write copy of a node 
+	//of the tree has been made. Until then, changing child nodes does not have 
+	//to look for copies which share them.
+	private boolean copyOnWriteUsed = false;
+	//Only valid on a root node. Set as soon as a sub tree listener has been 
+	//added to a node of the tree. Until then, events do not have to walk up 
+	//the tree to look for them.
+	private boolean subtreeListenersUsed = false;
 
 	/**
 	 * 
@@ -80,8 +139,6 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 	public GenericCollectionTreeNode(C childrenCollection, V value) {
 		this.value = value;
 		this.children = childrenCollection;
-
-		listeners = new HashSet<TreeNodeListener<N>>();
 	}
 
 	/**
@@ -93,50 +150,1073 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 
 	/**
 	 * 
-	 * 
+	 * 
+	 * @return
+	 */
+	protected C internalGetChildren() {
+		internalLoadChildNodes();
+		return children;
+	}
+
+	/**
+	 * Loads the child nodes with the child loader if they have not been loaded 
+	 * yet. Has to be called before accessing the children collection.
+	 * 
+	 */
+	protected void internalLoadChildNodes() {
+		if (childNodesLoaded) {
+			return;
+		}
+
+		//Mark as loaded first, the loader and the added child nodes might access 
+		//the children collection
+		childNodesLoaded = true;
+
+		Collection<N> loadedNodes = null;
+
+		try {
+			if (childNodesPrefetch != null) {
+				loadedNodes = childNodesPrefetch.get();
+			} else {
+				loadedNodes = childLoader.loadChildNodes(internalGetThis());
+			}
+		} catch (InterruptedException e) {
+			childNodesLoaded = false;
+			Thread.currentThread().interrupt();
+			throw new TreeNodeError("Interrupted while waiting for the child nodes to be loaded");
+		} catch (ExecutionException e) {
+			childNodesLoaded = false;
+			childNodesPrefetch = null;
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			} else if (e.getCause() instanceof Error) {
+				throw (Error)e.getCause();
+			}
+			throw new TreeNodeError("Failed to load the child nodes: " + e.getCause());
+		} catch (RuntimeException e) {
+			childNodesLoaded = false;
+			throw e;
+		}
+
+		childNodesPrefetch = null;
+
+		if (loadedNodes == null) {
+			return;
+		}
+
+		//Copies of this node would load the same child nodes, attaching them 
+		//does not have to materialize the copies
+		childNodesLoading = true;
+
+		try {
+			for (N node : loadedNodes) {
+				GenericCollectionTreeNode<?, ?, ?> loadedNode = node;
+
+				//Leaf nodes are loaded lazily as well
+				if (loadedNode.childLoader == null && loadedNode.children.isEmpty()) {
+					node.setChildLoader(childLoader);
+				}
+
+				internalAddChildNode(node, false);
+			}
+		} finally {
+			childNodesLoading = false;
+		}
+
+		//A copy-on-write copy is independent once its child nodes are copied
+		if (childLoader instanceof CopyOnWriteLoader) {
+			childLoader = null;
+		}
+	}
+
+	/**
+	 * Has to be called before the child nodes of this node are changed (added, 
+	 * removed or their values changed). Copy-on-write copies which still share 
+	 * the child nodes with this node copy them first. Since a copy of an ancestor 
+	 * would copy the changed child nodes later, the copies are materialized along 
+	 * the path from the root node down to this node.
+	 * 
+	 */
+	protected void internalChildNodesChanging() {
+		if (childNodesLoading || ! internalGetRootNode().copyOnWriteUsed) {
+			return;
+		}
+
+		//The topmost node with copies which share its child nodes
+		GenericCollectionTreeNode<?, ?, ?> top = null;
+		for (GenericCollectionTreeNode<?, ?, ?> node = this; node != null; node = node.parent) {
+			if (node.copyDependents != null) {
+				top = node;
+			}
+		}
+
+		if (top == null) {
+			return;
+		}
+
+		ArrayList<GenericCollectionTreeNode<?, ?, ?>> path = new ArrayList<GenericCollectionTreeNode<?, ?, ?>>();
+		for (GenericCollectionTreeNode<?, ?, ?> node = this; node != top; node = node.parent) {
+			path.add(node);
+		}
+		path.add(top);
+
+		//Top down, materializing a copy creates the copies of the next level
+		for (int i = path.size() - 1; i >= 0; i--) {
+			GenericCollectionTreeNode<?, ?, ?> node = path.get(i);
+			List<WeakReference<GenericCollectionTreeNode<?, ?, ?>>> dependents = node.copyDependents;
+
+			if (dependents == null) {
+				continue;
+			}
+
+			node.copyDependents = null;
+
+			for (WeakReference<GenericCollectionTreeNode<?, ?, ?>> reference : dependents) {
+				GenericCollectionTreeNode<?, ?, ?> copy = reference.get();
+				if (copy != null) {
+					copy.internalLoadChildNodes();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Has to be called before the value of this node is changed. The value is 
+	 * part of the child nodes of the parent node for its copy-on-write copies.
+	 * 
+	 */
+	protected void internalValueChanging() {
+		if (parent != null) {
+			parent.internalChildNodesChanging();
+		}
+	}
+
+	/**
+	 * Makes a copy of the sub tree of this node which shares the child nodes with 
+	 * this node until either of the trees is modified. The child nodes of a copied 
+	 * node are only copied when they are accessed in the copy or before they are 
+	 * changed in the source tree, so only the parts of the tree which are used or 
+	 * modified are actually copied. Like copying with 
+	 * {@link #addChildNodeCopy(GenericCollectionTreeNode)}, the node values are not 
+	 * copied.<br />
+	 * <br />
+	 * The source tree should not be modified by another thread while the copy is 
+	 * used.
+	 * 
+	 * @return The copy of this node
+	 */
+	public N copyTreeOnWrite() {
+		N copy = nodeFactory(internalGetThis());
+		GenericCollectionTreeNode<V, N, C> copyNode = copy;
+		copyNode.internalCopyOnWrite(internalGetThis());
+		return copy;
+	}
+
+	/**
+	 * Makes this node a copy-on-write copy of the given node
+	 * 
+	 * @param source
+	 */
+	private void internalCopyOnWrite(N source) {
+		GenericCollectionTreeNode<V, N, C> sourceNode = source;
+		sourceNode.internalGetRootNode().copyOnWriteUsed = true;
+
+		childLoader = new CopyOnWriteLoader<V, N, C>(source);
+		childNodesLoaded = false;
+		childNodesPrefetch = null;
+		internalSubtreeChanged();
+
+		if (sourceNode.copyDependents == null) {
+			sourceNode.copyDependents = new ArrayList<WeakReference<GenericCollectionTreeNode<?, ?, ?>>>(1);
+		} else {
+			//Forget about copies which are not used anymore
+			Iterator<WeakReference<GenericCollectionTreeNode<?, ?, ?>>> it = sourceNode.copyDependents.iterator();
+			while (it.hasNext()) {
+				if (it.next().get() == null) {
+					it.remove();
+				}
+			}
+		}
+
+		sourceNode.copyDependents.add(new WeakReference<GenericCollectionTreeNode<?, ?, ?>>(this));
+	}
+
+	/**
+	 * Sets the loader for the child nodes of this node. If this node does not 
+	 * have any child nodes yet, they will be loaded with the given loader when 
+	 * they are accessed for the first time. If this node already has child nodes, 
+	 * the loader is only used after {@link #unloadChildNodes()}.
+	 * 
+	 * @param loader The child loader, or <code>null</code> to not load child nodes
+	 */
+	public void setChildLoader(ChildLoader<N> loader) {
+		this.childLoader = loader;
+		childNodesPrefetch = null;
+
+		if (loader == null) {
+			childNodesLoaded = true;
+		} else if (childNodesLoaded && children.isEmpty()) {
+			childNodesLoaded = false;
+			//The sub tree size is unknown until the child nodes are loaded
+			internalSubtreeChanged();
+		}
+	}
+
+	/**
+	 * 
+	 * 
+	 * @return The child loader of this node, or <code>null</code> if it does not 
+	 * have one
+	 */
+	public ChildLoader<N> getChildLoader() {
+		return childLoader;
+	}
+
+	/**
+	 * Returns <code>true</code> if the child nodes of this node are available 
+	 * without calling the child loader
+	 * 
+	 * @return
+	 */
+	public boolean isChildNodesLoaded() {
+		return childNodesLoaded;
+	}
+
+	/**
+	 * Starts loading the child nodes in the background with the given executor. 
+	 * The child nodes are only added to this node when they are accessed, so the 
+	 * tree is not modified by the executor thread. Accessing the child nodes 
+	 * before they have been loaded waits for the loader to finish. Does nothing 
+	 * if the child nodes are already loaded or being loaded.
+	 * 
+	 * @param executor
+	 */
+	public void prefetchChildNodes(Executor executor) {
+		if (childNodesLoaded || childNodesPrefetch != null) {
+			return;
+		}
+
+		final ChildLoader<N> loader = childLoader;
+		final N node = internalGetThis();
+
+		childNodesPrefetch = new FutureTask<Collection<N>>(new Callable<Collection<N>>() {
+
+			@Override
+			public Collection<N> call() throws Exception {
+				return loader.loadChildNodes(node);
+			}
+		});
+
+		executor.execute(childNodesPrefetch);
+	}
+
+	/**
+	 * Removes all child nodes (and with them their sub trees) from this node and 
+	 * marks the child nodes as not loaded, so that they are loaded again with the 
+	 * child loader when they are accessed the next time. Like loading, unloading 
+	 * does not notify any listeners. Can be used to free the memory of collapsed 
+	 * branches.
+	 * 
+	 * @return <code>true</code> if the child nodes have been unloaded, 
+	 * <code>false</code> if this node does not have a child loader or the child 
+	 * nodes are not loaded
+	 */
+	public boolean unloadChildNodes() {
+		if (childLoader == null || ! childNodesLoaded) {
+			if (childNodesPrefetch != null) {
+				childNodesPrefetch.cancel(false);
+				childNodesPrefetch = null;
+			}
+			return false;
+		}
+
+		internalRemoveChildNodes(false);
+		childNodesLoaded = false;
+		internalSubtreeChanged();
+
+		return true;
+	}
+	
+	/**
+	 * A dummy method for {@link TreeNodeListener}s
+	 * 
+	 * @return
+	 */
+	protected int getNodeIndex() {
+		return -1;
+	}
+
+	/**
+	 * <i><b>For internal use only!</b></i><br />
+	 * <br />
+	 * Returns the position of the given child node in the children collection of 
+	 * this node. The positions of all child nodes are cached and only determined 
+	 * again (all at once, with one pass through the children collection) after 
+	 * the positions of existing child nodes changed. Appending child nodes keeps 
+	 * the cache valid.
+	 * 
+	 * @param node
+	 * @return
+	 */
+	protected int internalGetChildIndex(N node) {
+		GenericCollectionTreeNode<?, ?, ?> childNode = node;
+
+		if (childNode.childIndexModCount != childrenModCount) {
+			int index = 0;
+			for (N child : children) {
+				GenericCollectionTreeNode<?, ?, ?> c = child;
+				c.childIndex = index++;
+				c.childIndexModCount = childrenModCount;
+			}
+		}
+
+		return childNode.childIndex;
+	}
+
+	/**
+	 * <i><b>For internal use only!</b></i><br />
+	 * <br />
+	 * Has to be called whenever the positions of existing child nodes changed (e.g. 
+	 * a child node has been inserted or removed anywhere but at the end). All 
+	 * cached child indexes are determined again when requested the next time.
+	 * 
+	 */
+	protected void internalChildIndexesChanged() {
+		childrenModCount++;
+		internalSubtreeChanged();
+	}
+
+	/**
+	 * <i><b>For internal use only!</b></i><br />
+	 * <br />
+	 * Has to be called after the given node has been added to the children 
+	 * collection. If the children collection is a list, the node has been 
+	 * appended and only its own index is set. For any other collection the 
+	 * position of the new node is unknown and all cached indexes are invalidated.
+	 * 
+	 * @param node
+	 */
+	protected void internalChildNodeAdded(N node) {
+		if (children instanceof List) {
+			GenericCollectionTreeNode<?, ?, ?> childNode = node;
+			childNode.childIndex = children.size() - 1;
+			childNode.childIndexModCount = childrenModCount;
+		} else {
+			internalChildIndexesChanged();
+		}
+	}
+
+	/**
+	 * <i><b>For internal use only!</b></i><br />
+	 * <br />
+	 * Has to be called after a child node has been removed from the children 
+	 * collection. Removing the last child of a list does not change the position 
+	 * of any other child node.
+	 * 
+	 * @param oldIndex The index the removed node had before it has been removed
+	 */
+	protected void internalChildNodeRemoved(int oldIndex) {
+		if (! (children instanceof List) || oldIndex != children.size()) {
+			internalChildIndexesChanged();
+		}
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param childrenCollection
+	 */
+	protected void internalSetChildrenCollection(C childrenCollection) {
+		this.children = childrenCollection;
+	}
+
+	/**
+	 * <i><b>For internal use only!</b></i>
+	 * 
+	 * @param parent
+	 * @param notify
+	 */
+	protected void internalSetParentNode(N parent, boolean notify) {
+		GenericCollectionTreeNode<V, N, C> oldParentNode = this.parent;
+		GenericCollectionTreeNode<V, N, C> parentNode = parent;
+		boolean hasChildNodes = children != null && ! children.isEmpty();
+
+		if (oldParentNode != null) {
+			GenericCollectionTreeNode<V, N, C> oldRootNode = oldParentNode.internalGetRootNode();
+
+			if (hasChildNodes) {
+				//The depth and root of all descendants changed. Instead of 
+				//updating the whole sub tree, all cached values of the old 
+				//tree are invalidated.
+				oldRootNode.treeModCount++;
+			}
+
+			oldParentNode.internalSubtreeChanged();
+			internalLabelDetached();
+
+			//The sub tree might contain nodes with copies
+			if (oldRootNode.copyOnWriteUsed) {
+				copyOnWriteUsed = true;
+			}
+
+			//The sub tree might contain nodes with sub tree listeners
+			if (oldRootNode.subtreeListenersUsed) {
+				subtreeListenersUsed = true;
+			}
+		}
+
+		this.parent = parent;
+
+		if (parentNode != null) {
+			parentNode.internalSubtreeChanged();
+			internalLabelAttached(parent);
+
+			if (copyOnWriteUsed) {
+				parentNode.internalGetRootNode().copyOnWriteUsed = true;
+			}
+
+			if (subtreeListenersUsed) {
+				parentNode.internalGetRootNode().subtreeListenersUsed = true;
+			}
+		}
+
+		//The depth and root of this node changed
+		depthModCount = -1;
+
+		if (parentNode != null && hasChildNodes) {
+			//This node has been a root node. Its descendants have cached it as 
+			//their root node with its tree mod count.
+			treeModCount++;
+		}
+	}
+
+	/**
+	 * Checks if the cached depth and root node of this node are still valid
+	 * 
+	 * @return
+	 */
+	private boolean internalIsDepthCacheValid() {
+		GenericCollectionTreeNode<V, N, C> rootNode = root;
+		return rootNode != null && depthModCount == rootNode.treeModCount;
+	}
+
+	/**
+	 * Makes sure that the cached depth and root node of this node are valid. Walks 
+	 * up the tree only until a node with a valid cache is found and updates all 
+	 * nodes on the way.
+	 * 
+	 */
+	private void internalUpdateDepthCache() {
+		if (internalIsDepthCacheValid()) {
+			return;
+		}
+
+		//Find the closest ancestor with a valid cache (or the root node)
+		GenericCollectionTreeNode<V, N, C> validNode = this;
+		int distance = 0;
+		while (validNode.parent != null && ! validNode.internalIsDepthCacheValid()) {
+			validNode = validNode.parent;
+			distance++;
+		}
+
+		N validRoot = null;
+		int validDepth = 0;
+		int modCount = 0;
+		if (validNode.parent == null) {
+			validRoot = validNode.internalGetThis();
+			modCount = validNode.treeModCount;
+		} else {
+			validRoot = validNode.root;
+			validDepth = validNode.depth;
+			modCount = validNode.depthModCount;
+		}
+
+		//Update all nodes between this node and the node with the valid cache
+		int d = validDepth + distance;
+		for (GenericCollectionTreeNode<V, N, C> n = this; n != validNode; n = n.parent) {
+			n.depth = d--;
+			n.root = validRoot;
+			n.depthModCount = modCount;
+		}
+	}
+
+
+	/**
+	 * <i><b>For internal use only!</b></i><br />
+	 * <br />
+	 * Invalidates the sub tree size of this node and all its ancestors. The walk 
+	 * up the tree stops at the first node which does not know its sub tree size 
+	 * (its ancestors do not know it either). As long as no sub tree sizes are 
+	 * queried, this only checks this node.
+	 * 
+	 */
+	protected void internalSubtreeChanged() {
+		GenericCollectionTreeNode<?, ?, ?> node = this;
+		while (node != null && node.internalGetKnownSubtreeSize() >= 0) {
+			node.subtreeIndex.subtreeSize = -1;
+			node.subtreeIndex.childOffsets = null;
+			node.subtreeIndex.childOffsetNodes = null;
+			node = node.parent;
+		}
+	}
+
+	/**
+	 * Returns the sub tree index of this node, creates it if this node does not 
+	 * have one yet
+	 * 
+	 * @return
+	 */
+	private SubtreeIndex internalGetSubtreeIndex() {
+		if (subtreeIndex == null) {
+			subtreeIndex = new SubtreeIndex();
+		}
+
+		return subtreeIndex;
+	}
+
+	/**
+	 * 
+	 * 
+	 * @return The sub tree size of this node, or -1 if it is unknown
+	 */
+	private int internalGetKnownSubtreeSize() {
+		return subtreeIndex == null ? -1 : subtreeIndex.subtreeSize;
+	}
+
+	/**
+	 * Determines the sub tree sizes of this node and all its descendants which 
+	 * do not know their sub tree size. Works without recursion, descendants which 
+	 * know their size are not visited.
+	 * 
+	 */
+	private void internalUpdateSubtreeSizes() {
+		ArrayDeque<GenericCollectionTreeNode<?, ?, ?>> stack = new ArrayDeque<GenericCollectionTreeNode<?, ?, ?>>();
+		stack.addLast(this);
+
+		while (! stack.isEmpty()) {
+			GenericCollectionTreeNode<?, ?, ?> node = stack.peekLast();
+			int size = 1;
+			boolean complete = true;
+
+			node.internalLoadChildNodes();
+
+			if (node.children != null) {
+				for (GenericCollectionTreeNode<?, ?, ?> child : node.children) {
+					int childSize = child.internalGetKnownSubtreeSize();
+
+					if (childSize < 0) {
+						//The size of the child node is needed first
+						stack.addLast(child);
+						complete = false;
+					} else {
+						size += childSize;
+					}
+				}
+			}
+
+			if (complete) {
+				node.internalGetSubtreeIndex().subtreeSize = size;
+				stack.pollLast();
+			}
+		}
+	}
+
+	/**
+	 * Makes sure that the positions of the child nodes within the sub tree of 
+	 * this node are known
+	 * 
+	 */
+	private void internalUpdateChildOffsets() {
+		SubtreeIndex nodeIndex = internalGetSubtreeIndex();
+
+		if (nodeIndex.childOffsets != null) {
+			return;
+		}
+
+		if (nodeIndex.subtreeSize < 0) {
+			internalUpdateSubtreeSizes();
+		}
+
+		int size = children.size();
+		int[] offsets = new int[size];
+		Object[] nodes = new Object[size];
+
+		//The node itself is at position 0
+		int offset = 1;
+		int index = 0;
+		for (GenericCollectionTreeNode<?, ?, ?> child : children) {
+			offsets[index] = offset;
+			nodes[index] = child;
+			offset += child.subtreeIndex.subtreeSize;
+			index++;
+		}
+
+		nodeIndex.childOffsets = offsets;
+		nodeIndex.childOffsetNodes = nodes;
+	}
+
+	/**
+	 * 
+	 * 
+	 * @return <code>true</code> if this node has valid interval labels
+	 */
+	private boolean internalHasLabels() {
+		return subtreeIndex != null && subtreeIndex.labeling != null 
+				&& subtreeIndex.labelEpoch == subtreeIndex.labeling.epoch;
+	}
+
+	/**
+	 * Updates the interval labels after this node has been removed from its 
+	 * parent node. A removed leaf node just drops its labels. Removing a node 
+	 * with children invalidates the labels of the whole tree.
+	 * 
+	 */
+	private void internalLabelDetached() {
+		if (subtreeIndex == null) {
+			return;
+		}
+
+		if (children == null || children.isEmpty()) {
+			subtreeIndex.labeling = null;
+		} else if (subtreeIndex.labeling != null) {
+			subtreeIndex.labeling.epoch++;
+		}
+	}
+
+	/**
+	 * Updates the interval labels after this node has been added to the given 
+	 * parent node. A new leaf node gets an interval out of the free space within 
+	 * the interval of the parent node, so that the labels of the tree stay valid. 
+	 * If there is no free space left, the labels of the whole tree are invalidated. 
+	 * A node with children keeps the labels of its sub tree, they are only valid 
+	 * among its sub tree.
+	 * 
+	 * @param parent
+	 */
+	private void internalLabelAttached(GenericCollectionTreeNode<?, ?, ?> parent) {
+		if (children != null && ! children.isEmpty()) {
+			return;
+		}
+
+		if (subtreeIndex != null) {
+			subtreeIndex.labeling = null;
+		}
+
+		if (! parent.internalHasLabels()) {
+			return;
+		}
+
+		//Use a part of the free space at the end of the parent interval
+		SubtreeIndex parentIndex = parent.subtreeIndex;
+		long width = (parentIndex.labelPost - parentIndex.labelCursor - 1) / LABEL_SPLIT;
+		if (width < 1) {
+			parentIndex.labeling.epoch++;
+			return;
+		}
+
+		SubtreeIndex nodeIndex = internalGetSubtreeIndex();
+		nodeIndex.labeling = parentIndex.labeling;
+		nodeIndex.labelEpoch = parentIndex.labelEpoch;
+		nodeIndex.labelPre = parentIndex.labelCursor + 1;
+		nodeIndex.labelPost = nodeIndex.labelPre + width;
+		nodeIndex.labelCursor = nodeIndex.labelPre;
+		parentIndex.labelCursor = nodeIndex.labelPost;
+	}
+
+	/**
+	 * Assigns new interval labels to all nodes of the tree of the given root 
+	 * node. Each interval gets free space at its end for adding leaf nodes later.
+	 * 
+	 * @param root
+	 */
+	private static void internalLabelTree(GenericCollectionTreeNode<?, ?, ?> root) {
+		IntervalLabeling labeling = root.subtreeIndex == null ? null : root.subtreeIndex.labeling;
+		if (labeling == null || labeling.root != root) {
+			labeling = new IntervalLabeling(root);
+		}
+
+		labeling.epoch++;
+
+		ArrayDeque<GenericCollectionTreeNode<?, ?, ?>> nodes = new ArrayDeque<GenericCollectionTreeNode<?, ?, ?>>();
+		ArrayDeque<Iterator<? extends GenericCollectionTreeNode<?, ?, ?>>> iterators = 
+				new ArrayDeque<Iterator<? extends GenericCollectionTreeNode<?, ?, ?>>>();
+
+		long label = 0;
+		GenericCollectionTreeNode<?, ?, ?> node = root;
+
+		while (true) {
+			if (node != null) {
+				//Enter the node
+				SubtreeIndex nodeIndex = node.internalGetSubtreeIndex();
+				nodeIndex.labeling = labeling;
+				nodeIndex.labelEpoch = labeling.epoch;
+				nodeIndex.labelPre = label++;
+				nodes.addLast(node);
+				iterators.addLast(node.children.iterator());
+			}
+
+			Iterator<? extends GenericCollectionTreeNode<?, ?, ?>> iterator = iterators.peekLast();
+
+			if (iterator.hasNext()) {
+				node = iterator.next();
+			} else {
+				//Leave the node
+				iterators.pollLast();
+				SubtreeIndex leftIndex = nodes.pollLast().subtreeIndex;
+				leftIndex.labelCursor = label - 1;
+				label += LABEL_GAP;
+				leftIndex.labelPost = label++;
+
+				if (nodes.isEmpty()) {
+					break;
+				}
+
+				node = null;
+			}
+		}
+	}
+
+	@Override
+	public boolean isAncestorOf(N node) {
+		GenericCollectionTreeNode<?, ?, ?> other = node;
+
+		if (other == this) {
+			return false;
+		}
+
+		if (! internalHasLabels() || ! other.internalHasLabels() 
+				|| subtreeIndex.labeling != other.subtreeIndex.labeling) {
+			N root = getRootNode();
+
+			if (node.getRootNode() != root) {
+				return false;
+			}
+
+			internalLabelTree(root);
+		}
+
+		return subtreeIndex.labelPre < other.subtreeIndex.labelPre 
+				&& other.subtreeIndex.labelPost < subtreeIndex.labelPost;
+	}
+
+	@Override
+	public boolean isDescendantOf(N node) {
+		return node.isAncestorOf(internalGetThis());
+	}
+
+	@Override
+	public int getSubtreeSize() {
+		if (internalGetKnownSubtreeSize() < 0) {
+			internalUpdateSubtreeSizes();
+		}
+
+		return subtreeIndex.subtreeSize;
+	}
+
+	@Override
+	public boolean isSubtreeSizeKnown() {
+		return internalGetKnownSubtreeSize() >= 0;
+	}
+
+	@Override
+	public int getGlobalIndex() {
+		int index = 0;
+
+		GenericCollectionTreeNode<V, N, C> node = this;
+		while (node.parent != null) {
+			GenericCollectionTreeNode<V, N, C> parentNode = node.parent;
+			parentNode.internalUpdateChildOffsets();
+			index += parentNode.subtreeIndex.childOffsets[parentNode.internalGetChildIndex(node.internalGetThis())];
+			node = parentNode;
+		}
+
+		return index;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public N getNodeAtGlobalIndex(int index) {
+		GenericCollectionTreeNode<V, N, C> node = getRootNode();
+
+		if (index < 0 || index >= node.getSubtreeSize()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + node.getSubtreeSize());
+		}
+
+		while (index > 0) {
+			node.internalUpdateChildOffsets();
+
+			//The last child node which starts at or before the index
+			SubtreeIndex nodeIndex = node.subtreeIndex;
+			int childIndex = Arrays.binarySearch(nodeIndex.childOffsets, index);
+			if (childIndex < 0) {
+				childIndex = -childIndex - 2;
+			}
+
+			index -= nodeIndex.childOffsets[childIndex];
+			node = (N)nodeIndex.childOffsetNodes[childIndex];
+		}
+
+		return node.internalGetThis();
+	}
+
+	@Override
+	public void addTreeNodeListener(TreeNodeListener<N> l) {
+		addTreeNodeListener(l, EnumSet.allOf(TreeEventType.class));
+	}
+
+	@Override
+	public void addTreeNodeListener(TreeNodeListener<N> l, EnumSet<TreeEventType> eventTypes) {
+		listeners = internalAddListener(listeners, internalMaskListener(l, eventTypes));
+		listenerMask = internalGetListenerMask(listeners);
+	}
+
+	@Override
+	public void removeTreeNodeListener(TreeNodeListener<N> l) {
+		listeners = internalRemoveListener(listeners, l);
+		listenerMask = internalGetListenerMask(listeners);
+	}
+
+	@Override
+	public void addSubtreeListener(TreeNodeListener<N> l) {
+		addSubtreeListener(l, EnumSet.allOf(TreeEventType.class));
+	}
+
+	@Override
+	public void addSubtreeListener(TreeNodeListener<N> l, EnumSet<TreeEventType> eventTypes) {
+		subtreeListeners = internalAddListener(subtreeListeners, internalMaskListener(l, eventTypes));
+		subtreeListenerMask = internalGetListenerMask(subtreeListeners);
+		internalGetRootNode().subtreeListenersUsed = true;
+	}
+
+	@Override
+	public void removeSubtreeListener(TreeNodeListener<N> l) {
+		subtreeListeners = internalRemoveListener(subtreeListeners, l);
+		subtreeListenerMask = internalGetListenerMask(subtreeListeners);
+	}
+
+	/**
+	 * Returns the node where the search for sub tree listeners starts, which 
+	 * is this node, or <code>null</code> if no node of this tree has ever had 
+	 * sub tree listeners. The search walks up the parent chain from there.
+	 * 
+	 * @return
+	 */
+	private GenericCollectionTreeNode<V, N, C> internalSubtreeListenerWalk() {
+		return internalGetRootNode().subtreeListenersUsed ? this : null;
+	}
+
+	/**
+	 * Returns the given listener, wrapped in a listener which only passes on 
+	 * the given event types if it is not registered for all types
+	 * 
+	 * @param l
+	 * @param eventTypes
+	 * @return
+	 */
+	private static <N extends CollectionTreeNodeInterface<?, N>> TreeNodeListener<N> internalMaskListener(
+			TreeNodeListener<N> l, EnumSet<TreeEventType> eventTypes) {
+		if (l instanceof MaskedTreeNodeListener) {
+			l = ((MaskedTreeNodeListener<N>)l).listener;
+		}
+
+		int mask = 0;
+		for (TreeEventType eventType : eventTypes) {
+			mask |= 1 << eventType.ordinal();
+		}
+
+		if (mask == ALL_EVENTS) {
+			return l;
+		}
+
+		return new MaskedTreeNodeListener<N>(l, mask);
+	}
+
+	/**
+	 * Checks if the two listeners are the same listener, regardless of the 
+	 * event types they are registered for
+	 * 
+	 * @param l1
+	 * @param l2
+	 * @return
+	 */
+	private static boolean internalIsSameListener(TreeNodeListener<?> l1, TreeNodeListener<?> l2) {
+		if (l1 instanceof MaskedTreeNodeListener) {
+			l1 = ((MaskedTreeNodeListener<?>)l1).listener;
+		}
+
+		if (l2 instanceof MaskedTreeNodeListener) {
+			l2 = ((MaskedTreeNodeListener<?>)l2).listener;
+		}
+
+		return l1.equals(l2);
+	}
+
+	/**
+	 * Returns the event types the given listener is registered for
+	 * 
+	 * @param l
+	 * @return
+	 */
+	private static int internalGetListenerMask(TreeNodeListener<?> l) {
+		if (l instanceof MaskedTreeNodeListener) {
+			return ((MaskedTreeNodeListener<?>)l).mask;
+		}
+
+		return ALL_EVENTS;
+	}
+
+	/**
+	 * Returns the event types any of the given listeners is registered for
+	 * 
+	 * @param listenerArray
+	 * @return
+	 */
+	private static int internalGetListenerMask(TreeNodeListener<?>[] listenerArray) {
+		if (listenerArray == null) {
+			return 0;
+		}
+
+		int mask = 0;
+		for (TreeNodeListener<?> l : listenerArray) {
+			mask |= internalGetListenerMask(l);
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Returns a new listener array with the given listener added. If the array 
+	 * already contains the listener, it is replaced with the given one (which 
+	 * might be registered for other event types) or the given array is returned 
+	 * if it is the same listener.
+	 * 
+	 * @param listenerArray
+	 * @param l
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private static <N extends CollectionTreeNodeInterface<?, N>> TreeNodeListener<N>[] internalAddListener(
+			TreeNodeListener<N>[] listenerArray, TreeNodeListener<N> l) {
+		if (listenerArray == null) {
+			return (TreeNodeListener<N>[])new TreeNodeListener<?>[] {l};
+		}
+
+		for (int i = 0; i < listenerArray.length; i++) {
+			if (internalIsSameListener(listenerArray[i], l)) {
+				if (internalGetListenerMask(listenerArray[i]) == internalGetListenerMask(l)) {
+					//Already registered
+					return listenerArray;
+				}
+
+				TreeNodeListener<N>[] newListeners = Arrays.copyOf(listenerArray, listenerArray.length);
+				newListeners[i] = l;
+				return newListeners;
+			}
+		}
+
+		TreeNodeListener<N>[] newListeners = Arrays.copyOf(listenerArray, listenerArray.length + 1);
+		newListeners[listenerArray.length] = l;
+		return newListeners;
+	}
+
+	/**
+	 * Returns a new listener array without the given listener (<code>null</code> 
+	 * if it is empty), or the given array if it does not contain the listener
+	 * 
+	 * @param listenerArray
+	 * @param l
 	 * @return
 	 */
-	protected C internalGetChildren() {
-		return children;
+	@SuppressWarnings("unchecked")
+	private static <N extends CollectionTreeNodeInterface<?, N>> TreeNodeListener<N>[] internalRemoveListener(
+			TreeNodeListener<N>[] listenerArray, TreeNodeListener<N> l) {
+		if (listenerArray == null) {
+			return null;
+		}
+
+		for (int i = 0; i < listenerArray.length; i++) {
+			if (internalIsSameListener(listenerArray[i], l)) {
+				if (listenerArray.length == 1) {
+					return null;
+				}
+
+				TreeNodeListener<N>[] newListeners = (TreeNodeListener<N>[])new TreeNodeListener<?>[listenerArray.length - 1];
+				System.arraycopy(listenerArray, 0, newListeners, 0, i);
+				System.arraycopy(listenerArray, i + 1, newListeners, i, newListeners.length - i);
+				return newListeners;
+			}
+		}
+
+		return listenerArray;
 	}
 	
 	/**
-	 * A dummy method for {@link TreeNodeListener}s
+	 * Checks if there are any {@link TreeNodeListener}s registered on this node. Can 
+	 * be used to avoid creating event data which nobody receives.
 	 * 
 	 * @return
 	 */
-	protected int getNodeIndex() {
-		return -1;
-	}
+	protected boolean hasTreeNodeListeners() {
+		if (listeners != null) {
+			return true;
+		}
 
+		//Only walks up as far as there are ancestors with sub tree listeners
+		for (GenericCollectionTreeNode<?, ?, ?> node = internalSubtreeListenerWalk(); node != null; node = node.parent) {
+			if (node.subtreeListeners != null) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+	
 	/**
+	 * Checks if there are any {@link TreeNodeListener}s registered on this node 
+	 * which receive events of the given type. Can be used to avoid creating event 
+	 * data (like the node index) which nobody receives.
 	 * 
-	 * 
-	 * @param childrenCollection
+	 * @param eventType
+	 * @return
 	 */
-	protected void internalSetChildrenCollection(C childrenCollection) {
-		this.children = childrenCollection;
-	}
+	protected boolean hasTreeNodeListeners(TreeEventType eventType) {
+		int eventBit = 1 << eventType.ordinal();
+
+		if ((listenerMask & eventBit) != 0) {
+			return true;
+		}
+
+		for (GenericCollectionTreeNode<?, ?, ?> node = internalSubtreeListenerWalk(); node != null; node = node.parent) {
+			if ((node.subtreeListenerMask & eventBit) != 0) {
+				return true;
+			}
+		}
 
+		return false;
+	}
+	
 	/**
-	 * <i><b>For internal use only!</b></i>
+	 * Checks if anybody receives the event when a child node is added or 
+	 * removed: the listeners of this node, or the listeners of the child node 
+	 * itself (which are notified with {@link TreeEventType#ADDED} or 
+	 * {@link TreeEventType#REMOVED}).
 	 * 
-	 * @param parent
-	 * @param notify
+	 * @param eventType {@link TreeEventType#CHILD_ADDED} or {@link TreeEventType#CHILD_REMOVED}
+	 * @param node The added or removed child node
+	 * @return
 	 */
-	protected void internalSetParentNode(N parent, boolean notify) {
-		this.parent = parent;
-	}
-
+	protected boolean hasTreeNodeListeners(TreeEventType eventType, N node) {
+		if (hasTreeNodeListeners(eventType)) {
+			return true;
+		}
 
-	@Override
-	public void addTreeNodeListener(TreeNodeListener<N> l) {
-		listeners.add(l);
-	}
+		if (eventType == TreeEventType.CHILD_ADDED) {
+			return node.hasTreeNodeListeners(TreeEventType.ADDED);
+		} else if (eventType == TreeEventType.CHILD_REMOVED) {
+			return node.hasTreeNodeListeners(TreeEventType.REMOVED);
+		}
 
-	@Override
-	public void removeTreeNodeListener(TreeNodeListener<N> l) {
-		listeners.remove(l);
+		return false;
 	}
 	
 	/**
@@ -151,19 +1231,64 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 	protected void fireNodeEvent(TreeEventType eventType, 
 			N node, N parent, int nodeIndex, Object oldValue) {
 		
-		TreeNodeEvent<N> e = new TreeNodeEvent<N>(internalGetThis(), node, parent, nodeIndex, oldValue);
+		if (batch != null 
+				&& (eventType == TreeEventType.CHILD_ADDED || eventType == TreeEventType.CHILD_REMOVED)) {
+			//Delivered when the batch is committed
+			batch.record(node, nodeIndex, eventType == TreeEventType.CHILD_ADDED);
+			return;
+		}
+		
+		//The listeners at the time the event is fired
+		TreeNodeListener<N>[] currentListeners = listeners;
+		TreeNodeEvent<N> e = null;
+		int eventBit = 1 << eventType.ordinal();
+		
+		if (currentListeners != null && (listenerMask & eventBit) != 0) {
+			e = new TreeNodeEvent<N>(eventType, internalGetThis(), node, parent, nodeIndex, oldValue);
+			internalDeliverNodeEvent(currentListeners, eventType, e);
+		}
+		
+		//Bubble up to the sub tree listeners of this node and all ancestors
+		for (GenericCollectionTreeNode<V, N, C> ancestor = internalSubtreeListenerWalk(); 
+				ancestor != null; ancestor = ancestor.parent) {
+			currentListeners = ancestor.subtreeListeners;
+			
+			if (currentListeners != null && (ancestor.subtreeListenerMask & eventBit) != 0) {
+				if (e == null) {
+					e = new TreeNodeEvent<N>(eventType, internalGetThis(), node, parent, nodeIndex, oldValue);
+				}
+				
+				internalDeliverNodeEvent(currentListeners, eventType, e);
+			}
+		}
+		
+		//Also send a notification from the view of the added or removed node 
+		//(once, and whether or not this node has listeners)
+		if (eventType == TreeEventType.CHILD_ADDED) {
+			node.fireNodeEvent(TreeEventType.ADDED, node, internalGetThis(), nodeIndex, null);
+		} else if (eventType == TreeEventType.CHILD_REMOVED) {
+			node.fireNodeEvent(TreeEventType.REMOVED, node, internalGetThis(), nodeIndex, null);
+		}
+		
+	}
+	
+	/**
+	 * Delivers the event to the given listeners
+	 * 
+	 * @param currentListeners
+	 * @param eventType
+	 * @param e
+	 */
+	private void internalDeliverNodeEvent(TreeNodeListener<N>[] currentListeners, 
+			TreeEventType eventType, TreeNodeEvent<N> e) {
 		
-		for (TreeNodeListener<N> l : listeners) {
+		for (TreeNodeListener<N> l : currentListeners) {
 			switch (eventType) {
 			case CHILD_ADDED:
 				l.childNodeAdded(e);
-				//Also send a notification from the view of the added node
-				node.fireNodeEvent(TreeEventType.ADDED, node, internalGetThis(), nodeIndex, null);
 				break;
 			case CHILD_REMOVED:
 				l.childNodeRemoved(e);
-				//Also send a notification from the view of the removed node
-				node.fireNodeEvent(TreeEventType.REMOVED, node, internalGetThis(), nodeIndex, null);
 				break;
 			case VALUE_CHANGED:
 				l.nodeValueChanged(e);
@@ -181,6 +1306,131 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 		
 	}
 
+	
+	/**
+	 * Starts a batch. Until the batch is committed with {@link #commit()}, 
+	 * adding and removing child nodes of this node does not notify any listeners. 
+	 * With the commit, {@link BatchTreeNodeListener}s receive all changes as one 
+	 * {@link TreeNodeBatchEvent}, the other listeners receive the single events 
+	 * (with the tree as it is at the time of the commit). Batches can be nested, 
+	 * the events are delivered when the outermost batch is committed.<br />
+	 * <br />
+	 * Only the changes of the child nodes of this node are part of the batch, 
+	 * changes further down in the tree notify the listeners immediately.
+	 * 
+	 */
+	public void beginBatch() {
+		if (batch == null) {
+			batch = new NodeBatch<N>();
+		} else {
+			batch.depth++;
+		}
+	}
+	
+	/**
+	 * Returns <code>true</code> if a batch has been started and not committed yet
+	 * 
+	 * @return
+	 */
+	public boolean isInBatch() {
+		return batch != null;
+	}
+	
+	/**
+	 * Commits the batch started with {@link #beginBatch()} and notifies the 
+	 * listeners about all changes made during the batch
+	 * 
+	 */
+	@SuppressWarnings("unchecked")
+	public void commit() {
+		if (batch == null) {
+			throw new TreeNodeError("No batch has been started");
+		}
+		
+		if (--batch.depth > 0) {
+			return;
+		}
+		
+		NodeBatch<N> committed = batch;
+		batch = null;
+		
+		int size = committed.nodes.size();
+		if (size == 0) {
+			return;
+		}
+		
+		//The listeners of this node and the sub tree listeners of all ancestors
+		ArrayList<TreeNodeListener<N>[]> listenerArrays = new ArrayList<TreeNodeListener<N>[]>();
+		if (listeners != null) {
+			listenerArrays.add(listeners);
+		}
+		
+		for (GenericCollectionTreeNode<V, N, C> ancestor = internalSubtreeListenerWalk(); 
+				ancestor != null; ancestor = ancestor.parent) {
+			if (ancestor.subtreeListeners != null) {
+				listenerArrays.add(ancestor.subtreeListeners);
+			}
+		}
+		
+		//The batch events with the changes of the event types in the mask, 
+		//indexed by the mask
+		int addedBit = 1 << TreeEventType.CHILD_ADDED.ordinal();
+		int removedBit = 1 << TreeEventType.CHILD_REMOVED.ordinal();
+		TreeNodeBatchEvent<N>[] batchEvents = (TreeNodeBatchEvent<N>[])new TreeNodeBatchEvent<?>[(addedBit | removedBit) + 1];
+		TreeNodeEvent<N>[] events = null;
+		
+		for (TreeNodeListener<N>[] listenerArray : listenerArrays) {
+			for (TreeNodeListener<N> l : listenerArray) {
+				TreeNodeListener<N> target = l;
+				if (l instanceof MaskedTreeNodeListener) {
+					target = ((MaskedTreeNodeListener<N>)l).listener;
+				}
+				
+				int mask = internalGetListenerMask(l) & (addedBit | removedBit);
+				
+				if (mask == 0) {
+					continue;
+				} else if (target instanceof BatchTreeNodeListener) {
+					if (batchEvents[mask] == null) {
+						batchEvents[mask] = committed.createBatchEvent(internalGetThis(), 
+								(mask & addedBit) != 0, (mask & removedBit) != 0);
+					}
+					
+					TreeNodeBatchEvent<N> batchEvent = batchEvents[mask];
+					
+					//Nothing the listener is registered for might have changed
+					if (! batchEvent.getIndexRanges().isEmpty()) {
+						((BatchTreeNodeListener<N>)target).batchCommitted(batchEvent);
+					}
+				} else {
+					if (events == null) {
+						events = (TreeNodeEvent<N>[])new TreeNodeEvent<?>[size];
+						for (int i = 0; i < size; i++) {
+							events[i] = new TreeNodeEvent<N>(committed.added[i] ? TreeEventType.CHILD_ADDED : TreeEventType.CHILD_REMOVED, 
+									internalGetThis(), committed.nodes.get(i), 
+									internalGetThis(), committed.indexes[i], null);
+						}
+					}
+					
+					for (int i = 0; i < size; i++) {
+						if (committed.added[i]) {
+							l.childNodeAdded(events[i]);
+						} else {
+							l.childNodeRemoved(events[i]);
+						}
+					}
+				}
+			}
+		}
+		
+		//Also send the notifications from the view of the added and removed nodes
+		for (int i = 0; i < size; i++) {
+			N node = committed.nodes.get(i);
+			node.fireNodeEvent(committed.added[i] ? TreeEventType.ADDED : TreeEventType.REMOVED, 
+					node, internalGetThis(), committed.indexes[i], null);
+		}
+	}
+
 
 	@Override
 	public N addChildNode(N node) {
@@ -200,10 +1450,13 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 					"means it is from another tree)");
 		}
 
-		if (children.add(node)) {
+		internalChildNodesChanging();
+
+		if (internalGetChildren().add(node)) {
+			internalChildNodeAdded(node);
 			node.internalSetParentNode(internalGetThis(), true);
 
-			if (notify) {
+			if (notify && hasTreeNodeListeners(TreeEventType.CHILD_ADDED, node)) {
 				fireNodeEvent(TreeEventType.CHILD_ADDED, node, internalGetThis(), node.getNodeIndex(), null);
 			}
 
@@ -222,9 +1475,23 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 	public boolean addChildNodes(Collection<N> nodes) {
 		boolean ret = false;
 
-		for (N node : nodes) {
-			addChildNode(node);
-			ret = true;
+		//Only collect the added nodes if anybody receives them. The added 
+		//nodes themselves are notified either way.
+		boolean batched = hasTreeNodeListeners(TreeEventType.CHILD_ADDED);
+
+		if (batched) {
+			beginBatch();
+		}
+
+		try {
+			for (N node : nodes) {
+				addChildNode(node);
+				ret = true;
+			}
+		} finally {
+			if (batched) {
+				commit();
+			}
 		}
 
 		return ret;
@@ -241,6 +1508,16 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 	 * @param notify
 	 */
 	protected void internalRemoveChildNodes(boolean notify) {
+		//Copies of this node still need the child nodes
+		internalChildNodesChanging();
+
+		if (! childNodesLoaded) {
+			//Nothing to remove, the child nodes do not have to be loaded anymore
+			childNodesLoaded = true;
+			childNodesPrefetch = null;
+			return;
+		}
+
 		//The children might or might not be in an ordered list. Create an
 		//ordered list here in whatever order the children are.
 		ArrayList<N> tempChildren = new ArrayList<N>(children);
@@ -255,7 +1532,7 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 
 	@Override
 	public int getChildNodesCount() {
-		return children.size();
+		return internalGetChildren().size();
 	}
 
 	@Override
@@ -265,11 +1542,7 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 
 	@Override
 	public N getHeadNode() {
-		if (parent == null) {
-			return internalGetThis();
-		}
-
-		return parent.getHeadNode();
+		return getRootNode();
 	}
 
 	@Override
@@ -279,9 +1552,13 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 
 	@Override
 	public void setNodeValue(V value) {
+		internalValueChanging();
 		Object oldValue = this.value;
 		this.value = value;
-		fireNodeEvent(TreeEventType.VALUE_CHANGED, internalGetThis(), this.getParentNode(), this.getNodeIndex(), oldValue);
+
+		if (hasTreeNodeListeners(TreeEventType.VALUE_CHANGED)) {
+			fireNodeEvent(TreeEventType.VALUE_CHANGED, internalGetThis(), this.getParentNode(), this.getNodeIndex(), oldValue);
+		}
 	}
 
 	@Override
@@ -310,10 +1587,26 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 	 * @return
 	 */
 	protected boolean internalRemoveChildNode(N node, boolean notify) {
+		internalChildNodesChanging();
+
 		int oldIndex = node.getNodeIndex();
 		node.internalSetParentNode(null, true);
 
-		boolean ret = children.remove(node);
+		boolean ret = false;
+
+		if (oldIndex >= 0 && children instanceof List 
+				&& oldIndex < children.size() && ((List<N>)children).get(oldIndex) == node) {
+			//The position is known -> no need to search the list (which would 
+			//also compare each child node with equals)
+			((List<N>)children).remove(oldIndex);
+			ret = true;
+		} else {
+			ret = children.remove(node);
+		}
+
+		if (ret) {
+			internalChildNodeRemoved(oldIndex);
+		}
 
 		if (notify) {
 			fireNodeEvent(TreeEventType.CHILD_REMOVED, node, internalGetThis(), oldIndex, null);
@@ -339,7 +1632,7 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 					"means it is from another tree)");
 		}
 
-		Collection<N> tempChildren = new ArrayList<N>(children);
+		Collection<N> tempChildren = new ArrayList<N>(internalGetChildren());
 		
 		//Step 1: Transfer child nodes from current node to replacement node
 
@@ -387,7 +1680,9 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 			internalAddChildNode(node, false);
 		}
 		
-		fireNodeEvent(TreeEventType.CHILD_ADDED, newNode, internalGetThis(), newNode.getNodeIndex(), null);
+		if (hasTreeNodeListeners(TreeEventType.CHILD_ADDED, newNode)) {
+			fireNodeEvent(TreeEventType.CHILD_ADDED, newNode, internalGetThis(), newNode.getNodeIndex(), null);
+		}
 
 	}
 
@@ -397,7 +1692,23 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 			return internalGetThis();
 		}
 
-		return parent.getRootNode();
+		internalUpdateDepthCache();
+		return root;
+	}
+
+	/**
+	 * Like {@link #getRootNode()}, but without going through an overridden 
+	 * method
+	 * 
+	 * @return
+	 */
+	private GenericCollectionTreeNode<V, N, C> internalGetRootNode() {
+		if (parent == null) {
+			return this;
+		}
+
+		internalUpdateDepthCache();
+		return root;
 	}
 
 	@Override
@@ -416,7 +1727,8 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 			return 0;
 		}
 
-		return parent.getNodeDepth() + 1;
+		internalUpdateDepthCache();
+		return depth;
 	}
 
 	@Override
@@ -426,7 +1738,77 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 
 	@Override
 	public TreeIterator<N> iterator(boolean subtreeOnly) {
-		throw new UnsupportedOperationException("This tree implementation does not support the iteration over the subtree only");
+		return new TreeIterator<N>(internalGetThis(), subtreeOnly);
+	}
+
+	@Override
+	public boolean accept(TreeVisitor<? super N> visitor) {
+		N node = internalGetThis();
+		VisitResult result = visitor.enterNode(node);
+
+		if (result == VisitResult.TERMINATE) {
+			return false;
+		} else if (result != VisitResult.CONTINUE) {
+			//There are no siblings within the sub tree
+			return true;
+		} else if (node.isLeafNode()) {
+			return visitor.leaveNode(node) != VisitResult.TERMINATE;
+		}
+
+		//The entered nodes with children, together with the iterators over their children
+		ArrayDeque<N> nodes = new ArrayDeque<N>();
+		ArrayDeque<Iterator<N>> iterators = new ArrayDeque<Iterator<N>>();
+		nodes.addLast(node);
+		iterators.addLast(node.getChildNodes().iterator());
+
+		while (! nodes.isEmpty()) {
+			Iterator<N> iterator = iterators.peekLast();
+
+			if (iterator.hasNext()) {
+				N child = iterator.next();
+				result = visitor.enterNode(child);
+
+				if (result == VisitResult.CONTINUE) {
+					if (child.isLeafNode()) {
+						//No need to go down
+						result = visitor.leaveNode(child);
+					} else {
+						nodes.addLast(child);
+						iterators.addLast(child.getChildNodes().iterator());
+						continue;
+					}
+				}
+			} else {
+				//All children visited
+				iterators.pollLast();
+				result = visitor.leaveNode(nodes.pollLast());
+			}
+
+			if (result == VisitResult.TERMINATE) {
+				return false;
+			} else if (result == VisitResult.SKIP_SIBLINGS && ! nodes.isEmpty()) {
+				//Only leave the parent node
+				iterators.pollLast();
+				iterators.addLast(Collections.<N>emptyList().iterator());
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public PostOrderTreeIterator<N> postOrderIterator(boolean subtreeOnly) {
+		return new PostOrderTreeIterator<N>(internalGetThis(), subtreeOnly);
+	}
+
+	@Override
+	public BreadthFirstTreeIterator<N> breadthFirstIterator(boolean subtreeOnly) {
+		return new BreadthFirstTreeIterator<N>(internalGetThis(), subtreeOnly);
+	}
+
+	@Override
+	public TreeSplitIterator<N> splitIterator() {
+		return new TreeSplitIterator<N>(internalGetThis());
 	}
 
 	@Override
@@ -435,4 +1817,281 @@ implements CollectionTreeNodeInterface<V, N>, Iterable<N>  {
 	}
 
 
+	/**
+	 * The sub tree size, the child offsets and the interval labels of a node. 
+	 * Kept apart from the node so that nodes which are never queried for them 
+	 * do not carry the fields.
+	 *
+	 */
+	private static final class SubtreeIndex {
+
+		//The number of nodes in the sub tree, -1 if it is unknown. Whenever it is 
+		//unknown, it is unknown for all ancestors as well.
+		private int subtreeSize = -1;
+		//The position of each child node in the sub tree of the node (in pre-order), 
+		//only set while the sub tree size is known
+		private int[] childOffsets = null;
+		private Object[] childOffsetNodes = null;
+
+		//Interval labels for ancestor checks. A node is an ancestor of another node if 
+		//its interval encloses the interval of the other node. The labels are only 
+		//valid as long as the epoch matches the epoch of the labeling.
+		private IntervalLabeling labeling = null;
+		private long labelEpoch = -1;
+		private long labelPre = 0;
+		private long labelPost = 0;
+		//The last label used within the interval (by the node or its descendants)
+		private long labelCursor = 0;
+
+	}
+
+
+	/**
+	 * The interval labeling of a tree. Increasing the epoch invalidates the labels 
+	 * of all nodes.
+	 *
+	 */
+	private static final class IntervalLabeling {
+
+		private final Object root;
+		private long epoch = 0;
+
+		/**
+		 * 
+		 * 
+		 * @param root
+		 */
+		public IntervalLabeling(Object root) {
+			this.root = root;
+		}
+
+	}
+
+
+	/**
+	 * A listener which only passes on the events of the types in the mask. It 
+	 * is equal to the listener it wraps, so it can be removed with the original 
+	 * listener.
+	 *
+	 * @param <N>
+	 */
+	private static final class MaskedTreeNodeListener<N extends CollectionTreeNodeInterface<?, N>> 
+	implements TreeNodeListener<N> {
+
+		private final TreeNodeListener<N> listener;
+		private final int mask;
+
+		/**
+		 * 
+		 * 
+		 * @param listener
+		 * @param mask
+		 */
+		public MaskedTreeNodeListener(TreeNodeListener<N> listener, int mask) {
+			this.listener = listener;
+			this.mask = mask;
+		}
+
+		/**
+		 * 
+		 * 
+		 * @param eventType
+		 * @return
+		 */
+		private boolean isRegistered(TreeEventType eventType) {
+			return (mask & 1 << eventType.ordinal()) != 0;
+		}
+
+		@Override
+		public void childNodeRemoved(TreeNodeEvent<N> e) {
+			if (isRegistered(TreeEventType.CHILD_REMOVED)) {
+				listener.childNodeRemoved(e);
+			}
+		}
+
+		@Override
+		public void childNodeAdded(TreeNodeEvent<N> e) {
+			if (isRegistered(TreeEventType.CHILD_ADDED)) {
+				listener.childNodeAdded(e);
+			}
+		}
+
+		@Override
+		public void nodeValueChanged(TreeNodeEvent<N> e) {
+			if (isRegistered(TreeEventType.VALUE_CHANGED)) {
+				listener.nodeValueChanged(e);
+			}
+		}
+
+		@Override
+		public void addedToTree(TreeNodeEvent<N> e) {
+			if (isRegistered(TreeEventType.ADDED)) {
+				listener.addedToTree(e);
+			}
+		}
+
+		@Override
+		public void removedFromTree(TreeNodeEvent<N> e) {
+			if (isRegistered(TreeEventType.REMOVED)) {
+				listener.removedFromTree(e);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof MaskedTreeNodeListener) {
+				obj = ((MaskedTreeNodeListener<?>)obj).listener;
+			}
+
+			return listener.equals(obj);
+		}
+
+		@Override
+		public int hashCode() {
+			return listener.hashCode();
+		}
+
+	}
+
+
+	/**
+	 * The child nodes which have been added or removed during a batch
+	 *
+	 * @param <N>
+	 */
+	private static final class NodeBatch<N extends CollectionTreeNodeInterface<?, N>> {
+
+		//The number of nested batches
+		private int depth = 1;
+
+		private final ArrayList<N> nodes = new ArrayList<N>();
+		private int[] indexes = new int[16];
+		private boolean[] added = new boolean[16];
+
+		/**
+		 * 
+		 * 
+		 * @param node
+		 * @param index
+		 * @param isAdded
+		 */
+		public void record(N node, int index, boolean isAdded) {
+			int size = nodes.size();
+
+			if (size == indexes.length) {
+				indexes = Arrays.copyOf(indexes, size * 2);
+				added = Arrays.copyOf(added, size * 2);
+			}
+
+			nodes.add(node);
+			indexes[size] = index;
+			added[size] = isAdded;
+		}
+
+		/**
+		 * Creates the batch event with the coalesced index ranges of the 
+		 * added and/or removed nodes
+		 * 
+		 * @param source
+		 * @param withAdded
+		 * @param withRemoved
+		 * @return
+		 */
+		public TreeNodeBatchEvent<N> createBatchEvent(N source, boolean withAdded, boolean withRemoved) {
+			List<IndexRange> ranges = new ArrayList<IndexRange>();
+			List<N> addedNodes = new ArrayList<N>();
+			List<N> removedNodes = new ArrayList<N>();
+
+			boolean rangeAdded = false;
+			int start = 0;
+			int count = 0;
+
+			for (int i = 0; i < nodes.size(); i++) {
+				int index = indexes[i];
+
+				if (added[i] ? ! withAdded : ! withRemoved) {
+					continue;
+				}
+
+				if (added[i]) {
+					addedNodes.add(nodes.get(i));
+				} else {
+					removedNodes.add(nodes.get(i));
+				}
+
+				if (count > 0 && added[i] == rangeAdded && index >= 0) {
+					if (rangeAdded && index == start + count) {
+						//Added after the range
+						count++;
+						continue;
+					} else if (! rangeAdded && index == start) {
+						//Removed forward
+						count++;
+						continue;
+					} else if (! rangeAdded && index == start - 1) {
+						//Removed backward
+						start = index;
+						count++;
+						continue;
+					}
+				}
+
+				if (count > 0) {
+					ranges.add(new IndexRange(rangeAdded, start, count));
+				}
+
+				rangeAdded = added[i];
+				start = index;
+				count = 1;
+			}
+
+			if (count > 0) {
+				ranges.add(new IndexRange(rangeAdded, start, count));
+			}
+
+			return new TreeNodeBatchEvent<N>(source, ranges, addedNodes, removedNodes);
+		}
+
+	}
+
+
+	/**
+	 * Loads the child nodes of a copy-on-write copy by copying the child nodes 
+	 * of the source node. The copied child nodes are copy-on-write copies again.
+	 *
+	 * @param <V>
+	 * @param <N>
+	 * @param <C>
+	 */
+	private static final class CopyOnWriteLoader<V, N extends GenericCollectionTreeNode<V, N, C>, C extends Collection<N>> 
+	implements ChildLoader<N> {
+
+		private final N source;
+
+		/**
+		 * 
+		 * 
+		 * @param source
+		 */
+		public CopyOnWriteLoader(N source) {
+			this.source = source;
+		}
+
+		@Override
+		public Collection<N> loadChildNodes(N node) {
+			C sourceChildren = source.internalGetChildren();
+			List<N> copies = new ArrayList<N>(sourceChildren.size());
+
+			for (N sourceChild : sourceChildren) {
+				N copy = sourceChild.nodeFactory(sourceChild);
+				GenericCollectionTreeNode<V, N, C> copyNode = copy;
+				copyNode.internalCopyOnWrite(sourceChild);
+				copies.add(copy);
+			}
+
+			return copies;
+		}
+
+	}
+
 }
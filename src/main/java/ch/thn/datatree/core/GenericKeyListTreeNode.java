@@ -22,6 +22,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import ch.thn.datatree.ListTreeIterator;
+import ch.thn.datatree.TreeEventType;
 
 import com.google.common.collect.LinkedListMultimap;
 
@@ -76,6 +77,8 @@ implements ListTreeNodeInterface<V, N> {
 					" is out of bounds (max. " + (values.size() - 1) + ")");
 		}
 
+		internalChildNodesChanging();
+
 		//Just clear the map, don't disconnect any children from their parent
 		internalGetMap().clear();
 
@@ -97,7 +100,12 @@ implements ListTreeNodeInterface<V, N> {
 			node.internalSetParentNode(internalGetThis(), true);
 		}
 
-		fireNodeEvent(TreeEventType.CHILD_ADDED, node, internalGetThis(), node.getNodeIndex(), null);
+		//The whole map has been rebuilt
+		internalChildIndexesChanged();
+
+		if (hasTreeNodeListeners(TreeEventType.CHILD_ADDED, node)) {
+			fireNodeEvent(TreeEventType.CHILD_ADDED, node, internalGetThis(), node.getNodeIndex(), null);
+		}
 
 		return node;
 	}
@@ -201,7 +209,9 @@ implements ListTreeNodeInterface<V, N> {
 			return null;
 		}
 		
+		internalChildNodesChanging();
 		internalGetChildren().remove(index);
+		internalChildNodeRemoved(index);
 
 		//Disconnect child from its parent node
 		node.internalSetParentNode(null, true);
@@ -237,6 +247,11 @@ implements ListTreeNodeInterface<V, N> {
 
 	@Override
 	public int getChildNodeIndex(N node) {
+		if (node.getParentNode() == internalGetThis()) {
+			//Cached index
+			return internalGetChildIndex(node);
+		}
+
 		return internalGetChildren().indexOf(node);
 	}
 
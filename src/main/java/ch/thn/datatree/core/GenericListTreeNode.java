@@ -16,12 +16,14 @@
  */
 package ch.thn.datatree.core;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
 import ch.thn.datatree.ListTreeIterator;
+import ch.thn.datatree.TreeEventType;
 
 /**
  * 
@@ -36,12 +38,45 @@ public abstract class GenericListTreeNode<V, N extends GenericListTreeNode<V, N>
 extends GenericCollectionTreeNode<V, N, List<N>>
 implements ListTreeNodeInterface<V, N> {
 
+	private boolean arrayBacked = false;
+
 	/**
+	 * Creates a node which stores its children in a {@link LinkedList}
 	 * 
 	 * @param value
 	 */
 	public GenericListTreeNode(V value) {
-		super(new LinkedList<N>(), value);
+		this(value, false);
+	}
+
+	/**
+	 * Creates a node which stores its children either in a {@link LinkedList} or 
+	 * in an {@link ArrayList}.<br />
+	 * <br />
+	 * An array backed node has constant time access to a child by its index 
+	 * (which also makes {@link #getChildNode(int)}, {@link #getNextSibling()} and 
+	 * {@link #getPreviousSibling()} of its children constant time operations). Adding 
+	 * and removing at the end is constant time as well, but inserting and removing 
+	 * at any other index has to shift the following children. A linked list backed 
+	 * node has to walk the list for any indexed access.
+	 * 
+	 * @param value
+	 * @param arrayBacked If <code>true</code>, the children are stored in an array 
+	 * backed list.
+	 */
+	public GenericListTreeNode(V value, boolean arrayBacked) {
+		super(arrayBacked ? new ArrayList<N>() : new LinkedList<N>(), value);
+		this.arrayBacked = arrayBacked;
+	}
+
+	/**
+	 * Returns <code>true</code> if the children of this node are stored in an 
+	 * array backed list
+	 * 
+	 * @return
+	 */
+	public boolean isArrayBacked() {
+		return arrayBacked;
 	}
 
 	@Override
@@ -56,11 +91,22 @@ implements ListTreeNodeInterface<V, N> {
 					"means it is from another tree)");
 		}
 
+		internalChildNodesChanging();
+
 		//Throws an index out of bounds exception if the given index is not valid
 		internalGetChildren().add(index, node);
+
+		if (index == getChildNodesCount() - 1) {
+			internalChildNodeAdded(node);
+		} else {
+			internalChildIndexesChanged();
+		}
+
 		node.internalSetParentNode(internalGetThis(), true);
 		
-		fireNodeEvent(TreeEventType.CHILD_ADDED, node, internalGetThis(), node.getNodeIndex(), null);
+		if (hasTreeNodeListeners(TreeEventType.CHILD_ADDED, node)) {
+			fireNodeEvent(TreeEventType.CHILD_ADDED, node, internalGetThis(), node.getNodeIndex(), null);
+		}
 		
 		return node;
 	}
@@ -71,7 +117,10 @@ implements ListTreeNodeInterface<V, N> {
 	}
 
 	public boolean addChildNodesAt(int index, Collection<N> nodes) {
-		return internalGetChildren().addAll(index, nodes);
+		internalChildNodesChanging();
+		boolean ret = internalGetChildren().addAll(index, nodes);
+		internalChildIndexesChanged();
+		return ret;
 	}
 
 	@Override
@@ -145,7 +194,9 @@ implements ListTreeNodeInterface<V, N> {
 			return null;
 		}
 
+		internalChildNodesChanging();
 		internalGetChildren().remove(index);
+		internalChildNodeRemoved(index);
 
 		//Disconnect child from its parent node
 		node.internalSetParentNode(null, true);
@@ -181,6 +232,11 @@ implements ListTreeNodeInterface<V, N> {
 
 	@Override
 	public int getChildNodeIndex(N node) {
+		if (node.getParentNode() == internalGetThis()) {
+			//Cached index
+			return internalGetChildIndex(node);
+		}
+
 		return internalGetChildren().indexOf(node);
 	}
 
@@ -21,6 +21,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
 
+import ch.thn.datatree.TreeEventType;
+
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
 
@@ -95,6 +97,7 @@ implements MapTreeNodeInterface<K, V, N> {
 	 * @return
 	 */
 	protected Multimap<K, N> internalGetMap() {
+		internalLoadChildNodes();
 		return map;
 	}
 
@@ -106,7 +109,7 @@ implements MapTreeNodeInterface<K, V, N> {
 	 */
 	@SuppressWarnings("unchecked")
 	protected C internalGetChildren(K key) {
-		return (C)map.get(key);
+		return (C)internalGetMap().get(key);
 	}
 
 	@Override
@@ -119,7 +122,7 @@ implements MapTreeNodeInterface<K, V, N> {
 
 	@Override
 	public Collection<N> getChildNodes(K key) {
-		return Collections.unmodifiableCollection(map.get(key));
+		return Collections.unmodifiableCollection(internalGetMap().get(key));
 	}
 
 	@Override
@@ -139,10 +142,12 @@ implements MapTreeNodeInterface<K, V, N> {
 
 	@Override
 	protected N internalAddChildNode(N node, boolean notify) {
-		map.put(node.getNodeKey(), node);
+		internalChildNodesChanging();
+		internalGetMap().put(node.getNodeKey(), node);
+		internalChildNodeAdded(node);
 		node.internalSetParentNode(internalGetThis(), true);
 
-		if (notify) {
+		if (notify && hasTreeNodeListeners(TreeEventType.CHILD_ADDED, node)) {
 			fireNodeEvent(TreeEventType.CHILD_ADDED, node, internalGetThis(), node.getNodeIndex(), null);
 		}
 
@@ -156,11 +161,15 @@ implements MapTreeNodeInterface<K, V, N> {
 
 	@Override
 	public N addChildNode(K key, V value) {
+		internalChildNodesChanging();
 		N node = nodeFactory(key, value);
 		node.internalSetParentNode(internalGetThis(), true);
-		map.put(key, node);
+		internalGetMap().put(key, node);
+		internalChildNodeAdded(node);
 		
-		fireNodeEvent(TreeEventType.CHILD_ADDED, node, internalGetThis(), node.getNodeIndex(), null);
+		if (hasTreeNodeListeners(TreeEventType.CHILD_ADDED, node)) {
+			fireNodeEvent(TreeEventType.CHILD_ADDED, node, internalGetThis(), node.getNodeIndex(), null);
+		}
 		
 		return node;
 	}
@@ -172,8 +181,14 @@ implements MapTreeNodeInterface<K, V, N> {
 
 	@Override
 	public boolean addChildNodes(Collection<N> nodes) {
-		for (N node : nodes) {
-			internalAddChildNode(node, true);
+		beginBatch();
+
+		try {
+			for (N node : nodes) {
+				internalAddChildNode(node, true);
+			}
+		} finally {
+			commit();
 		}
 
 		return true;
@@ -181,11 +196,23 @@ implements MapTreeNodeInterface<K, V, N> {
 
 	@Override
 	public boolean addChildNodes(Multimap<K, N> nodes) {
-		if (map.putAll(nodes)) {
-			for (N node : nodes.values()) {
-				node.internalSetParentNode(internalGetThis(), true);
-				
-				fireNodeEvent(TreeEventType.CHILD_ADDED, node, internalGetThis(), node.getNodeIndex(), null);
+		internalChildNodesChanging();
+
+		if (internalGetMap().putAll(nodes)) {
+			internalChildIndexesChanged();
+
+			beginBatch();
+
+			try {
+				for (N node : nodes.values()) {
+					node.internalSetParentNode(internalGetThis(), true);
+					
+					if (hasTreeNodeListeners(TreeEventType.CHILD_ADDED, node)) {
+						fireNodeEvent(TreeEventType.CHILD_ADDED, node, internalGetThis(), node.getNodeIndex(), null);
+					}
+				}
+			} finally {
+				commit();
 			}
 
 			return true;
@@ -196,30 +223,42 @@ implements MapTreeNodeInterface<K, V, N> {
 
 	@Override
 	public Collection<N> removeChildNodes(K key) {
+		internalChildNodesChanging();
+
 		//The removed children might or might not be in an ordered list. Create an
 		//ordered list here in whatever order the children are.
-		ArrayList<N> tempChildren = new ArrayList<N>(map.get(key));
+		ArrayList<N> tempChildren = new ArrayList<N>(internalGetMap().get(key));
 
 		//Remove children in reverse order with the last one first.
 		//This is important because when removing
 		//the first child, the indexes of all the following children change.
 		for (int i = tempChildren.size() - 1; i >= 0; i--) {
 			N node = tempChildren.get(i);
-			int oldIndex = node.getNodeIndex();
+			boolean notify = hasTreeNodeListeners(TreeEventType.CHILD_REMOVED, node);
+			int oldIndex = notify ? node.getNodeIndex() : -1;
 			node.internalSetParentNode(null, true);
 			
-			fireNodeEvent(TreeEventType.CHILD_REMOVED, node, internalGetThis(), oldIndex, null);
+			if (notify) {
+				fireNodeEvent(TreeEventType.CHILD_REMOVED, node, internalGetThis(), oldIndex, null);
+			}
 		}
 		
-		map.removeAll(key);
+		internalGetMap().removeAll(key);
+		internalChildIndexesChanged();
 
 		return tempChildren;
 	}
 
 	@Override
 	public boolean removeChildNode(K key, N node) {
+		internalChildNodesChanging();
+
 		int oldIndex = node.getNodeIndex();
-		boolean ret = map.remove(key, node);
+		boolean ret = internalGetMap().remove(key, node);
+
+		if (ret) {
+			internalChildNodeRemoved(oldIndex);
+		}
 
 		node.internalSetParentNode(null, true);
 
@@ -246,12 +285,12 @@ implements MapTreeNodeInterface<K, V, N> {
 
 	@Override
 	public Set<K> getChildNodeKeys() {
-		return map.keySet();
+		return internalGetMap().keySet();
 	}
 
 	@Override
 	public boolean hasChildNodes(K key) {
-		return map.containsKey(key);
+		return internalGetMap().containsKey(key);
 	}
 
 	@Override
@@ -18,7 +18,6 @@ package ch.thn.datatree.core;
 
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.NoSuchElementException;
 
 
@@ -62,11 +61,20 @@ import java.util.NoSuchElementException;
 public abstract class GenericTreeIterator<N extends CollectionTreeNodeInterface<?, N>, I extends Iterator<N>>
 implements Iterator<N> {
 
+	/**
+	 * The initial size of the iterator stack (on top of the depth of the start 
+	 * node if the whole tree is iterated)
+	 */
+	private static final int INITIAL_STACK_SIZE = 16;
+
 	protected N startNode = null;
 	private N nextNodeCache = null;
 	protected N lastReturned = null;
 
-	protected LinkedList<I> iterators = null;
+	//The child iterators of the current branch, from the top (index 0) to 
+	//the bottom (index iteratorsSize - 1)
+	private Object[] iterators = null;
+	private int iteratorsSize = 0;
 
 	protected boolean subtreeOnly = false;
 	private boolean restOfTree = false;
@@ -96,7 +104,8 @@ implements Iterator<N> {
 		this.subtreeOnly = subtreeOnly;
 		this.startNode = toIterate;
 
-		iterators = new LinkedList<I>();
+		//When iterating the rest of the tree, the branch up to the root has to fit
+		iterators = new Object[INITIAL_STACK_SIZE + (subtreeOnly ? 0 : toIterate.getNodeDepth())];
 
 	}
 
@@ -124,12 +133,12 @@ implements Iterator<N> {
 
 	@Override
 	public boolean hasNext() {
-		return internalNext(true, false) != null;
+		return internalNext(true) != null;
 	}
 
 	@Override
 	public N next() {
-		return internalNext(false, false);
+		return internalNext(false);
 	}
 
 	/**
@@ -138,7 +147,7 @@ implements Iterator<N> {
 	 * @return
 	 */
 	public N peekNext() {
-		return internalNext(true, false);
+		return internalNext(true);
 	}
 
 	@Override
@@ -158,10 +167,9 @@ implements Iterator<N> {
 	 * 
 	 * 
 	 * @param peek
-	 * @param upwards
 	 * @return
 	 */
-	private N internalNext(boolean peek, boolean upwards) {
+	private N internalNext(boolean peek) {
 		if (nextNodeCache != null) {
 			if (peek) {
 				return nextNodeCache;
@@ -172,82 +180,193 @@ implements Iterator<N> {
 			}
 		}
 
-		if (! upwards && ! lastReturned.isLeafNode()) {
+		if (! lastReturned.isLeafNode()) {
 			//There are children -> iterate them first
-
-			iterators.addLast(getIterator(lastReturned.getChildNodes()));
+			pushIterator(getIterator(lastReturned.getChildNodes()));
 		}
 		//else:
 		//There are no children -> continue with next sibling
 
+		while (true) {
+			while (iteratorsSize > 0) {
+				I iterator = peekIterator();
 
-		//If the iterator list is empty, it means all iterators have been removed
-		//by going upwards the branch after reaching the branch end.
-		if (iterators.size() == 0) {
-			if (subtreeOnly || startNode.isRootNode() || restOfTree) {
-				//Stop after finishing the tree
+				if (iterator.hasNext()) {
+					if (peek) {
+						nextNodeCache = iterator.next();
+						return nextNodeCache;
+					} else {
+						lastReturned = iterator.next();
+						return lastReturned;
+					}
+				}
 
-				//Reset the flag for the next time
-				restOfTree = false;
+				//Reached the end of the branch -> continue with the parent iterator
+				popIterator();
+			}
 
+			//The iterator stack is empty, it means all iterators have been removed
+			//by going upwards the branch after reaching the branch end.
+			if (subtreeOnly || startNode.isRootNode() || restOfTree) {
+				//Stop after finishing the tree
 				if (peek) {
 					return null;
 				} else {
 					throw new NoSuchElementException("Reached the end of the tree");
 				}
-			} else {
-				//Finished the sub-tree, but subTreeOnly was set to false
-				//-> initialize the rest on top of the sub-tree
-				iterators.addAll(initBranchIterators(startNode, lastReturned.getRootNode()));
-				restOfTree = true;
 			}
-		}
 
-		try {
-			if (peek) {
-				nextNodeCache = iterators.peekLast().next();
-				return nextNodeCache;
-			} else {
-				lastReturned = iterators.peekLast().next();
-				return lastReturned;
-			}
-		} catch (NoSuchElementException e) {
-			//Reached the end of the branch
-			iterators.removeLast();
-			lastReturned = internalNext(peek, true);
-			return lastReturned;
+			//Finished the sub-tree, but subTreeOnly was set to false
+			//-> initialize the rest on top of the sub-tree
+			pushBranchIterators(startNode, startNode.getRootNode());
+			restOfTree = true;
 		}
 		
 	}
 
+	/**
+	 * Puts the given iterator on top of the iterator stack (at the bottom of 
+	 * the current branch)
+	 * 
+	 * @param iterator
+	 */
+	protected void pushIterator(I iterator) {
+		ensureStackSize(iteratorsSize + 1);
+		iterators[iteratorsSize++] = iterator;
+	}
+
+	/**
+	 * Returns the iterator at the bottom of the current branch, or <code>null</code> 
+	 * if there are no iterators.
+	 * 
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected I peekIterator() {
+		if (iteratorsSize == 0) {
+			return null;
+		}
+
+		return (I)iterators[iteratorsSize - 1];
+	}
+
+	/**
+	 * Puts the given iterator at the top of the current branch (below all 
+	 * other iterators of the stack)
+	 * 
+	 * @param iterator
+	 */
+	protected void pushParentIterator(I iterator) {
+		ensureStackSize(iteratorsSize + 1);
+		System.arraycopy(iterators, 0, iterators, 1, iteratorsSize);
+		iterators[0] = iterator;
+		iteratorsSize++;
+	}
+
+	/**
+	 * Returns the iterator at the given position of the current branch. The 
+	 * iterator at the top of the branch has the index 0.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected I getIteratorAt(int index) {
+		if (index < 0 || index >= iteratorsSize) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + iteratorsSize);
+		}
+
+		return (I)iterators[index];
+	}
+
+	/**
+	 * Removes and returns the iterator at the bottom of the current branch, or 
+	 * <code>null</code> if there are no iterators.
+	 * 
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected I popIterator() {
+		if (iteratorsSize == 0) {
+			return null;
+		}
+
+		I iterator = (I)iterators[--iteratorsSize];
+		iterators[iteratorsSize] = null;
+		return iterator;
+	}
+
+	/**
+	 * Returns the number of iterators in the current branch
+	 * 
+	 * @return
+	 */
+	protected int getIteratorCount() {
+		return iteratorsSize;
+	}
+
+	/**
+	 * Removes all iterators
+	 * 
+	 */
+	protected void clearIterators() {
+		while (iteratorsSize > 0) {
+			iterators[--iteratorsSize] = null;
+		}
+	}
+
 	/**
 	 * Initializes and positions all iterators for the given branch, from the
-	 * start node up to the end node
+	 * start node up to the end node, and puts them on the iterator stack. The 
+	 * iterator of the end node ends up at the top and the iterator of the parent 
+	 * of the start node at the bottom of the stack.
 	 * 
 	 * @param startNode
 	 * @param endNode
-	 * @return A list of the branch iterators, from top (the first iterator in the
-	 * list) to bottom (the last iterator in the list)
 	 */
-	protected LinkedList<I> initBranchIterators(N startNode, N endNode) {
-		LinkedList<I> newIterators = new LinkedList<I>();
-
-		if (! startNode.isRootNode()) {
-			//Initialize all iterators
-			N childNode = startNode;
-			N parentNode = childNode.getParentNode();
-
-			//Go up from start node to end node
-			do {
-				I childIterator = positionIterator(parentNode.getChildNodes(), childNode);
-				newIterators.addFirst(childIterator);
-				
-				childNode = parentNode;
-				parentNode = childNode.getParentNode();
-			} while (parentNode != null && childNode != endNode);
+	protected void pushBranchIterators(N startNode, N endNode) {
+		if (startNode.isRootNode()) {
+			return;
 		}
 
-		return newIterators;
+		//Count the iterators first so that they can be placed from the bottom 
+		//to the top without an intermediate list
+		int count = 0;
+		N childNode = startNode;
+		N parentNode = childNode.getParentNode();
+		do {
+			count++;
+			childNode = parentNode;
+			parentNode = childNode.getParentNode();
+		} while (parentNode != null && childNode != endNode);
+
+		ensureStackSize(iteratorsSize + count);
+
+		//Go up from start node to end node
+		int index = iteratorsSize + count - 1;
+		childNode = startNode;
+		parentNode = childNode.getParentNode();
+		do {
+			iterators[index--] = positionIterator(parentNode.getChildNodes(), childNode);
+
+			childNode = parentNode;
+			parentNode = childNode.getParentNode();
+		} while (parentNode != null && childNode != endNode);
+
+		iteratorsSize += count;
+	}
+
+	/**
+	 * Grows the iterator stack if needed
+	 * 
+	 * @param size
+	 */
+	private void ensureStackSize(int size) {
+		if (size > iterators.length) {
+			Object[] newIterators = new Object[Math.max(size, iterators.length * 2)];
+			System.arraycopy(iterators, 0, newIterators, 0, iteratorsSize);
+			iterators = newIterators;
+		}
 	}
 
 	
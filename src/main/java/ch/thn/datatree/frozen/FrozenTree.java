@@ -0,0 +1,219 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.frozen;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+
+/**
+ * An immutable snapshot of a tree. Instead of one object per node with a 
+ * children collection, listeners etc., the whole tree is stored in a few parallel 
+ * arrays. The nodes are stored in pre-order, the position of a node in the arrays 
+ * is its id (and its global index in the frozen tree). The sub tree of a node 
+ * consists of the nodes <code>id</code> to <code>id + subtreeSize - 1</code>, 
+ * the first child node of a node is the node right after it and its next sibling 
+ * is the node right after its sub tree. The ids of the child nodes of each node 
+ * are stored one after the other, so a child node can be looked up by its 
+ * index.<br />
+ * <br />
+ * The nodes are accessed through {@link FrozenTreeNode} handles. Handles are 
+ * only created for nodes which are accessed, the tree keeps them in an array 
+ * so that the same handle instance is always returned for a node.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <V>
+ */
+public final class FrozenTree<V> {
+	
+	final int[] parent;
+	final int[] depth;
+	final int[] childCount;
+	final int[] childIndex;
+	final int[] subtreeSize;
+	//The position of the first child node of each node in childIds
+	final int[] childStart;
+	final int[] childIds;
+	final Object[] values;
+	
+	//The handles of the nodes which have been accessed
+	private final AtomicReferenceArray<FrozenTreeNode<V>> nodes;
+	
+	/**
+	 * 
+	 * 
+	 * @param size
+	 */
+	private FrozenTree(int size) {
+		parent = new int[size];
+		depth = new int[size];
+		childCount = new int[size];
+		childIndex = new int[size];
+		subtreeSize = new int[size];
+		childStart = new int[size];
+		//Every node except the root node is a child node
+		childIds = new int[size - 1];
+		values = new Object[size];
+		nodes = new AtomicReferenceArray<FrozenTreeNode<V>>(size);
+	}
+	
+	/**
+	 * Creates a frozen copy of the sub tree of the given node. The given node 
+	 * becomes the root node of the frozen tree. The node values are not copied.
+	 * 
+	 * @param node
+	 * @return The root node of the frozen tree
+	 */
+	public static <V, N extends CollectionTreeNodeInterface<V, N>> FrozenTreeNode<V> freeze(N node) {
+		FrozenTree<V> tree = new FrozenTree<V>(node.getSubtreeSize());
+		
+		int baseDepth = node.getNodeDepth();
+		
+		//The last node seen at each depth. The parent of a node is the last 
+		//node seen one level up (pre-order).
+		int[] lastAtDepth = new int[16];
+		
+		int id = 0;
+		Iterator<N> iterator = node.iterator(true);
+		while (iterator.hasNext()) {
+			N n = iterator.next();
+			int d = n.getNodeDepth() - baseDepth;
+			
+			if (d >= lastAtDepth.length) {
+				int[] newLastAtDepth = new int[lastAtDepth.length * 2];
+				System.arraycopy(lastAtDepth, 0, newLastAtDepth, 0, lastAtDepth.length);
+				lastAtDepth = newLastAtDepth;
+			}
+			
+			tree.values[id] = n.getNodeValue();
+			tree.depth[id] = d;
+			tree.subtreeSize[id] = 1;
+			
+			if (d == 0) {
+				tree.parent[id] = -1;
+			} else {
+				int p = lastAtDepth[d - 1];
+				tree.parent[id] = p;
+				tree.childIndex[id] = tree.childCount[p]++;
+			}
+			
+			lastAtDepth[d] = id;
+			id++;
+		}
+		
+		//Every node comes after its parent -> add up the sizes backwards
+		for (int i = id - 1; i > 0; i--) {
+			tree.subtreeSize[tree.parent[i]] += tree.subtreeSize[i];
+		}
+		
+		int start = 0;
+		for (int i = 0; i < id; i++) {
+			tree.childStart[i] = start;
+			start += tree.childCount[i];
+		}
+		
+		for (int i = 1; i < id; i++) {
+			tree.childIds[tree.childStart[tree.parent[i]] + tree.childIndex[i]] = i;
+		}
+		
+		return tree.getNode(0);
+	}
+	
+	/**
+	 * Returns the id of the child node at the given index of the given node
+	 * 
+	 * @param id
+	 * @param index
+	 * @return
+	 */
+	int getChild(int id, int index) {
+		return childIds[childStart[id] + index];
+	}
+	
+	/**
+	 * Returns the id of the first child node of the given node, or -1 if it 
+	 * has no child nodes
+	 * 
+	 * @param id
+	 * @return
+	 */
+	int getFirstChild(int id) {
+		return childCount[id] == 0 ? -1 : id + 1;
+	}
+	
+	/**
+	 * Returns the id of the next sibling of the given node, or -1 if it is the 
+	 * last child node of its parent node
+	 * 
+	 * @param id
+	 * @return
+	 */
+	int getNextSibling(int id) {
+		int p = parent[id];
+		int next = id + subtreeSize[id];
+		
+		if (p == -1 || next >= p + subtreeSize[p]) {
+			return -1;
+		}
+		
+		return next;
+	}
+	
+	/**
+	 * Returns the number of nodes in this tree
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return values.length;
+	}
+	
+	/**
+	 * Returns the root node of this tree
+	 * 
+	 * @return
+	 */
+	public FrozenTreeNode<V> getRootNode() {
+		return getNode(0);
+	}
+	
+	/**
+	 * Returns the node with the given id (the pre-order position in this tree)
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public FrozenTreeNode<V> getNode(int id) {
+		if (id < 0 || id >= values.length) {
+			throw new IndexOutOfBoundsException("Index: " + id + ", Size: " + values.length);
+		}
+		
+		FrozenTreeNode<V> node = nodes.get(id);
+		
+		if (node == null) {
+			//Another thread might create the handle at the same time
+			nodes.compareAndSet(id, null, new FrozenTreeNode<V>(this, id));
+			node = nodes.get(id);
+		}
+		
+		return node;
+	}
+
+}
@@ -0,0 +1,477 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.frozen;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+import ch.thn.datatree.BreadthFirstTreeIterator;
+import ch.thn.datatree.ListTreeIterator;
+import ch.thn.datatree.PostOrderTreeIterator;
+import ch.thn.datatree.TreeEventType;
+import ch.thn.datatree.TreeIterator;
+import ch.thn.datatree.TreeNodeListener;
+import ch.thn.datatree.TreeSplitIterator;
+import ch.thn.datatree.TreeVisitor;
+import ch.thn.datatree.TreeVisitor.VisitResult;
+import ch.thn.datatree.core.ListTreeNodeInterface;
+
+/**
+ * A node of a {@link FrozenTree}. It only refers to a position in the arrays of 
+ * the frozen tree. All navigation and iteration methods work like the methods of 
+ * the other tree nodes, all methods which would modify the tree throw an 
+ * {@link UnsupportedOperationException}.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <V>
+ */
+public final class FrozenTreeNode<V> implements ListTreeNodeInterface<V, FrozenTreeNode<V>> {
+	
+	private final FrozenTree<V> tree;
+	private final int id;
+	
+	private List<FrozenTreeNode<V>> childNodes = null;
+	
+	/**
+	 * 
+	 * 
+	 * @param tree
+	 * @param id
+	 */
+	FrozenTreeNode(FrozenTree<V> tree, int id) {
+		this.tree = tree;
+		this.id = id;
+	}
+	
+	/**
+	 * Returns the frozen tree of this node
+	 * 
+	 * @return
+	 */
+	public FrozenTree<V> getTree() {
+		return tree;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param id
+	 * @return
+	 */
+	private FrozenTreeNode<V> getNode(int id) {
+		if (id == -1) {
+			return null;
+		}
+		
+		return tree.getNode(id);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return
+	 */
+	private UnsupportedOperationException frozen() {
+		return new UnsupportedOperationException("A frozen tree can not be modified");
+	}
+
+	@Override
+	public FrozenTreeNode<V> nodeFactory(V value) {
+		throw frozen();
+	}
+
+	@Override
+	public FrozenTreeNode<V> nodeFactory(FrozenTreeNode<V> node) {
+		throw frozen();
+	}
+
+	/**
+	 * A frozen tree does not change, the listener is never notified
+	 */
+	@Override
+	public void addTreeNodeListener(TreeNodeListener<FrozenTreeNode<V>> l) {
+		//Nothing to notify
+	}
+
+	@Override
+	public void addTreeNodeListener(TreeNodeListener<FrozenTreeNode<V>> l, EnumSet<TreeEventType> eventTypes) {
+		//Nothing to notify
+	}
+
+	@Override
+	public void removeTreeNodeListener(TreeNodeListener<FrozenTreeNode<V>> l) {
+		//Nothing to notify
+	}
+
+	@Override
+	public void addSubtreeListener(TreeNodeListener<FrozenTreeNode<V>> l) {
+		//Nothing to notify
+	}
+
+	@Override
+	public void addSubtreeListener(TreeNodeListener<FrozenTreeNode<V>> l, EnumSet<TreeEventType> eventTypes) {
+		//Nothing to notify
+	}
+
+	@Override
+	public void removeSubtreeListener(TreeNodeListener<FrozenTreeNode<V>> l) {
+		//Nothing to notify
+	}
+
+	@Override
+	public List<FrozenTreeNode<V>> getChildNodes() {
+		if (childNodes == null) {
+			childNodes = new ChildNodeList();
+		}
+		
+		return childNodes;
+	}
+
+	@Override
+	public FrozenTreeNode<V> addChildNode(FrozenTreeNode<V> node) {
+		throw frozen();
+	}
+
+	@Override
+	public FrozenTreeNode<V> addChildNodeCopy(FrozenTreeNode<V> node) {
+		throw frozen();
+	}
+
+	@Override
+	public boolean addChildNodes(Collection<FrozenTreeNode<V>> nodes) {
+		throw frozen();
+	}
+
+	@Override
+	public void removeChildNodes() {
+		throw frozen();
+	}
+
+	@Override
+	public int getChildNodesCount() {
+		return tree.childCount[id];
+	}
+
+	@Override
+	public FrozenTreeNode<V> getParentNode() {
+		return getNode(tree.parent[id]);
+	}
+
+	@Override
+	public FrozenTreeNode<V> getHeadNode() {
+		return getRootNode();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V getNodeValue() {
+		return (V)tree.values[id];
+	}
+
+	@Override
+	public void setNodeValue(V value) {
+		throw frozen();
+	}
+
+	@Override
+	public FrozenTreeNode<V> addChildNode(V value) {
+		throw frozen();
+	}
+
+	@Override
+	public boolean removeNode() {
+		throw frozen();
+	}
+
+	@Override
+	public boolean removeChildNode(FrozenTreeNode<V> node) {
+		throw frozen();
+	}
+
+	@Override
+	public FrozenTreeNode<V> replaceNode(V value) {
+		throw frozen();
+	}
+
+	@Override
+	public FrozenTreeNode<V> replaceNode(FrozenTreeNode<V> newNode) {
+		throw frozen();
+	}
+
+	@Override
+	public FrozenTreeNode<V> getRootNode() {
+		return tree.getNode(0);
+	}
+
+	@Override
+	public boolean isRootNode() {
+		return id == 0;
+	}
+
+	@Override
+	public boolean isLeafNode() {
+		return tree.childCount[id] == 0;
+	}
+
+	@Override
+	public int getNodeDepth() {
+		return tree.depth[id];
+	}
+
+	@Override
+	public boolean isAncestorOf(FrozenTreeNode<V> node) {
+		return node.tree == tree && id < node.id && node.id < id + tree.subtreeSize[id];
+	}
+
+	@Override
+	public boolean isDescendantOf(FrozenTreeNode<V> node) {
+		return node.isAncestorOf(this);
+	}
+
+	@Override
+	public int getSubtreeSize() {
+		return tree.subtreeSize[id];
+	}
+
+	@Override
+	public boolean isSubtreeSizeKnown() {
+		return true;
+	}
+
+	@Override
+	public int getGlobalIndex() {
+		return id;
+	}
+
+	@Override
+	public FrozenTreeNode<V> getNodeAtGlobalIndex(int index) {
+		return tree.getNode(index);
+	}
+
+	@Override
+	public TreeIterator<FrozenTreeNode<V>> iterator() {
+		return new TreeIterator<FrozenTreeNode<V>>(this);
+	}
+
+	@Override
+	public TreeIterator<FrozenTreeNode<V>> iterator(boolean subtreeOnly) {
+		return new TreeIterator<FrozenTreeNode<V>>(this, subtreeOnly);
+	}
+
+	@Override
+	public boolean accept(TreeVisitor<? super FrozenTreeNode<V>> visitor) {
+		//No stack needed, the tree can be walked with the node links
+		int current = id;
+		boolean enter = true;
+		
+		while (true) {
+			VisitResult result = null;
+			boolean skipSiblings = false;
+			
+			if (enter) {
+				result = visitor.enterNode(tree.getNode(current));
+				
+				if (result == VisitResult.CONTINUE) {
+					if (tree.childCount[current] != 0) {
+						current = tree.getFirstChild(current);
+						continue;
+					}
+					
+					result = visitor.leaveNode(tree.getNode(current));
+				}
+			} else {
+				result = visitor.leaveNode(tree.getNode(current));
+			}
+			
+			if (result == VisitResult.TERMINATE) {
+				return false;
+			}
+			
+			skipSiblings = (result == VisitResult.SKIP_SIBLINGS);
+			
+			if (current == id) {
+				return true;
+			}
+			
+			int next = skipSiblings ? -1 : tree.getNextSibling(current);
+			
+			if (next != -1) {
+				current = next;
+				enter = true;
+			} else {
+				current = tree.parent[current];
+				enter = false;
+			}
+		}
+	}
+
+	@Override
+	public PostOrderTreeIterator<FrozenTreeNode<V>> postOrderIterator(boolean subtreeOnly) {
+		return new PostOrderTreeIterator<FrozenTreeNode<V>>(this, subtreeOnly);
+	}
+
+	@Override
+	public BreadthFirstTreeIterator<FrozenTreeNode<V>> breadthFirstIterator(boolean subtreeOnly) {
+		return new BreadthFirstTreeIterator<FrozenTreeNode<V>>(this, subtreeOnly);
+	}
+
+	@Override
+	public TreeSplitIterator<FrozenTreeNode<V>> splitIterator() {
+		return new TreeSplitIterator<FrozenTreeNode<V>>(this);
+	}
+
+	@Override
+	public FrozenTreeNode<V> addChildNodeAt(int index, FrozenTreeNode<V> node) {
+		throw frozen();
+	}
+
+	@Override
+	public FrozenTreeNode<V> addChildNodeCopyAt(int index, FrozenTreeNode<V> node) {
+		throw frozen();
+	}
+
+	@Override
+	public FrozenTreeNode<V> addChildNodeAt(int index, V value) {
+		throw frozen();
+	}
+
+	@Override
+	public FrozenTreeNode<V> getChildNode(int index) {
+		return getChildNodes().get(index);
+	}
+
+	@Override
+	public FrozenTreeNode<V> getFirstChildNode() {
+		return getNode(tree.getFirstChild(id));
+	}
+
+	@Override
+	public FrozenTreeNode<V> getLastChildNode() {
+		if (isLeafNode()) {
+			return null;
+		}
+		
+		return tree.getNode(tree.getChild(id, tree.childCount[id] - 1));
+	}
+
+	@Override
+	public FrozenTreeNode<V> getFirstSibling() {
+		if (isRootNode()) {
+			return this;
+		}
+		
+		return tree.getNode(tree.parent[id] + 1);
+	}
+
+	@Override
+	public FrozenTreeNode<V> getLastSibling() {
+		if (isRootNode()) {
+			return this;
+		}
+		
+		return getParentNode().getLastChildNode();
+	}
+
+	@Override
+	public FrozenTreeNode<V> getNextSibling() {
+		return getNode(tree.getNextSibling(id));
+	}
+
+	@Override
+	public FrozenTreeNode<V> getPreviousSibling() {
+		if (isFirstNode()) {
+			return null;
+		}
+		
+		return tree.getNode(tree.getChild(tree.parent[id], tree.childIndex[id] - 1));
+	}
+
+	@Override
+	public FrozenTreeNode<V> removeChildNode(int index) {
+		throw frozen();
+	}
+
+	@Override
+	public int getNodeIndex() {
+		return tree.childIndex[id];
+	}
+
+	@Override
+	public int getChildNodeIndex(FrozenTreeNode<V> node) {
+		if (node.tree != tree || tree.parent[node.id] != id) {
+			return -1;
+		}
+		
+		return tree.childIndex[node.id];
+	}
+
+	@Override
+	public boolean isFirstNode() {
+		return tree.childIndex[id] == 0;
+	}
+
+	@Override
+	public boolean isLastNode() {
+		return tree.getNextSibling(id) == -1;
+	}
+
+	@Override
+	public ListTreeIterator<FrozenTreeNode<V>> listIterator() {
+		return new ListTreeIterator<FrozenTreeNode<V>>(this);
+	}
+
+	@Override
+	public ListTreeIterator<FrozenTreeNode<V>> listIterator(boolean subtreeOnly) {
+		return new ListTreeIterator<FrozenTreeNode<V>>(this, subtreeOnly);
+	}
+	
+	@Override
+	public String toString() {
+		Object value = tree.values[id];
+		return value == null ? null : value.toString();
+	}
+	
+	
+	/**
+	 * An unmodifiable list view of the child nodes. Accessing a child node by 
+	 * its index is a constant time operation.
+	 *
+	 */
+	private class ChildNodeList extends AbstractList<FrozenTreeNode<V>> implements RandomAccess {
+		
+		@Override
+		public FrozenTreeNode<V> get(int index) {
+			if (index < 0 || index >= tree.childCount[id]) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + tree.childCount[id]);
+			}
+			
+			return tree.getNode(tree.getChild(id, index));
+		}
+		
+		@Override
+		public int size() {
+			return tree.childCount[id];
+		}
+		
+	}
+
+}
@@ -0,0 +1,320 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.offheap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+import ch.thn.datatree.core.TreeNodeError;
+
+/**
+ * A tree store which keeps all nodes outside of the java heap. Each node is a 
+ * fixed size record (links to the parent node, the first and last child node 
+ * and the sibling nodes, the number of children, a <code>long</code> key and a 
+ * <code>long</code> value) in direct {@link ByteBuffer}s. The buffers are 
+ * allocated in chunks when needed.<br />
+ * <br />
+ * The nodes are accessed through {@link OffHeapTreeNode} handles. Handles are 
+ * only created for nodes which are accessed, so the heap only holds the handles 
+ * of accessed nodes (in arrays per chunk of records). The same handle instance 
+ * is always returned for a node, until its record is released.<br />
+ * <br />
+ * Nodes which are removed from their parent node keep their records (they can be 
+ * added again, to move a branch). Use {@link OffHeapTreeNode#release()} to free 
+ * the records of a removed branch, they are then reused for new nodes.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class OffHeapTree {
+	
+	static final int PARENT = 0;
+	static final int FIRST_CHILD = 4;
+	static final int LAST_CHILD = 8;
+	static final int NEXT_SIBLING = 12;
+	static final int PREVIOUS_SIBLING = 16;
+	static final int CHILD_COUNT = 20;
+	static final int KEY = 24;
+	static final int VALUE = 32;
+	
+	private static final int RECORD_SIZE = 40;
+	
+	private static final int CHUNK_SHIFT = 14;
+	private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+	
+	private final ArrayList<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	
+	//Records which have never been used start here
+	private int nextRecord = 0;
+	//Released records, linked through their next sibling field
+	private int freeRecord = -1;
+	private int size = 0;
+	
+	//The handles of the accessed nodes, one array per chunk. The array of a 
+	//chunk is only created when a node of the chunk is accessed.
+	private final ArrayList<OffHeapTreeNode[]> handles = new ArrayList<OffHeapTreeNode[]>();
+	
+	
+	/**
+	 * Creates a new node which is not part of any branch yet. It can be used as 
+	 * root node or added to another node of this tree.
+	 * 
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	public OffHeapTreeNode createNode(long key, long value) {
+		int id;
+		
+		if (freeRecord != -1) {
+			id = freeRecord;
+			freeRecord = getInt(id, NEXT_SIBLING);
+		} else {
+			id = nextRecord++;
+			
+			if ((id >>> CHUNK_SHIFT) == chunks.size()) {
+				chunks.add(ByteBuffer.allocateDirect(CHUNK_RECORDS * RECORD_SIZE).order(ByteOrder.nativeOrder()));
+			}
+		}
+		
+		putInt(id, PARENT, -1);
+		putInt(id, FIRST_CHILD, -1);
+		putInt(id, LAST_CHILD, -1);
+		putInt(id, NEXT_SIBLING, -1);
+		putInt(id, PREVIOUS_SIBLING, -1);
+		putInt(id, CHILD_COUNT, 0);
+		putLong(id, KEY, key);
+		putLong(id, VALUE, value);
+		
+		size++;
+		
+		return getNode(id);
+	}
+	
+	/**
+	 * Returns the number of nodes in this store (in all branches, including 
+	 * removed but not released branches)
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the handle of the given record
+	 * 
+	 * @param id
+	 * @return The handle or <code>null</code> if id is -1
+	 */
+	OffHeapTreeNode getNode(int id) {
+		if (id == -1) {
+			return null;
+		}
+		
+		int chunk = id >>> CHUNK_SHIFT;
+		while (handles.size() <= chunk) {
+			handles.add(null);
+		}
+		
+		OffHeapTreeNode[] chunkHandles = handles.get(chunk);
+		if (chunkHandles == null) {
+			chunkHandles = new OffHeapTreeNode[CHUNK_RECORDS];
+			handles.set(chunk, chunkHandles);
+		}
+		
+		OffHeapTreeNode node = chunkHandles[id & CHUNK_MASK];
+		
+		if (node == null) {
+			node = new OffHeapTreeNode(this, id);
+			chunkHandles[id & CHUNK_MASK] = node;
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * Links the given node as child node of the given parent node, right before 
+	 * the given sibling node (or at the end if the sibling is -1)
+	 * 
+	 * @param parent
+	 * @param child
+	 * @param nextSibling
+	 */
+	void link(int parent, int child, int nextSibling) {
+		if (getInt(child, PARENT) != -1) {
+			throw new TreeNodeError("The node already has a parent node set (which " +
+					"means it is from another tree)");
+		}
+		
+		int previousSibling = (nextSibling == -1) ? getInt(parent, LAST_CHILD) : getInt(nextSibling, PREVIOUS_SIBLING);
+		
+		putInt(child, PARENT, parent);
+		putInt(child, PREVIOUS_SIBLING, previousSibling);
+		putInt(child, NEXT_SIBLING, nextSibling);
+		
+		if (previousSibling == -1) {
+			putInt(parent, FIRST_CHILD, child);
+		} else {
+			putInt(previousSibling, NEXT_SIBLING, child);
+		}
+		
+		if (nextSibling == -1) {
+			putInt(parent, LAST_CHILD, child);
+		} else {
+			putInt(nextSibling, PREVIOUS_SIBLING, child);
+		}
+		
+		putInt(parent, CHILD_COUNT, getInt(parent, CHILD_COUNT) + 1);
+	}
+	
+	/**
+	 * Removes the given node from its parent node
+	 * 
+	 * @param child
+	 */
+	void unlink(int child) {
+		int parent = getInt(child, PARENT);
+		
+		if (parent == -1) {
+			return;
+		}
+		
+		int previousSibling = getInt(child, PREVIOUS_SIBLING);
+		int nextSibling = getInt(child, NEXT_SIBLING);
+		
+		if (previousSibling == -1) {
+			putInt(parent, FIRST_CHILD, nextSibling);
+		} else {
+			putInt(previousSibling, NEXT_SIBLING, nextSibling);
+		}
+		
+		if (nextSibling == -1) {
+			putInt(parent, LAST_CHILD, previousSibling);
+		} else {
+			putInt(nextSibling, PREVIOUS_SIBLING, previousSibling);
+		}
+		
+		putInt(parent, CHILD_COUNT, getInt(parent, CHILD_COUNT) - 1);
+		
+		putInt(child, PARENT, -1);
+		putInt(child, PREVIOUS_SIBLING, -1);
+		putInt(child, NEXT_SIBLING, -1);
+	}
+	
+	/**
+	 * Frees the records of the given node and its whole sub tree. The node has 
+	 * to be removed from its parent node first.
+	 * 
+	 * @param root
+	 */
+	void release(int root) {
+		if (getInt(root, PARENT) != -1) {
+			throw new TreeNodeError("Only nodes without a parent node can be released");
+		}
+		
+		//Go through the sub tree in post-order, so that the links of a node 
+		//are not needed anymore when it is freed
+		int id = leftmostLeaf(root);
+		
+		while (true) {
+			int nextSibling = getInt(id, NEXT_SIBLING);
+			int parent = getInt(id, PARENT);
+			
+			int chunk = id >>> CHUNK_SHIFT;
+			OffHeapTreeNode[] chunkHandles = chunk < handles.size() ? handles.get(chunk) : null;
+			if (chunkHandles != null && chunkHandles[id & CHUNK_MASK] != null) {
+				chunkHandles[id & CHUNK_MASK].released();
+				chunkHandles[id & CHUNK_MASK] = null;
+			}
+			
+			putInt(id, CHILD_COUNT, -1);
+			putInt(id, NEXT_SIBLING, freeRecord);
+			freeRecord = id;
+			size--;
+			
+			if (id == root) {
+				break;
+			}
+			
+			id = (nextSibling != -1) ? leftmostLeaf(nextSibling) : parent;
+		}
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param id
+	 * @return
+	 */
+	private int leftmostLeaf(int id) {
+		int child;
+		while ((child = getInt(id, FIRST_CHILD)) != -1) {
+			id = child;
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param id
+	 * @param field
+	 * @return
+	 */
+	int getInt(int id, int field) {
+		return chunks.get(id >>> CHUNK_SHIFT).getInt((id & CHUNK_MASK) * RECORD_SIZE + field);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param id
+	 * @param field
+	 * @param value
+	 */
+	void putInt(int id, int field, int value) {
+		chunks.get(id >>> CHUNK_SHIFT).putInt((id & CHUNK_MASK) * RECORD_SIZE + field, value);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param id
+	 * @param field
+	 * @return
+	 */
+	long getLong(int id, int field) {
+		return chunks.get(id >>> CHUNK_SHIFT).getLong((id & CHUNK_MASK) * RECORD_SIZE + field);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param id
+	 * @param field
+	 * @param value
+	 */
+	void putLong(int id, int field, long value) {
+		chunks.get(id >>> CHUNK_SHIFT).putLong((id & CHUNK_MASK) * RECORD_SIZE + field, value);
+	}
+
+}
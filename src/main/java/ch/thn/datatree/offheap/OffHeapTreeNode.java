@@ -0,0 +1,846 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.offheap;
+
+import java.util.AbstractSequentialList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import ch.thn.datatree.BreadthFirstTreeIterator;
+import ch.thn.datatree.ListTreeIterator;
+import ch.thn.datatree.PostOrderTreeIterator;
+import ch.thn.datatree.TreeEventType;
+import ch.thn.datatree.TreeIterator;
+import ch.thn.datatree.TreeNodeListener;
+import ch.thn.datatree.TreeSplitIterator;
+import ch.thn.datatree.TreeVisitor;
+import ch.thn.datatree.TreeVisitor.VisitResult;
+import ch.thn.datatree.core.ListTreeNodeInterface;
+import ch.thn.datatree.core.TreeNodeError;
+
+/**
+ * A handle to a node of an {@link OffHeapTree}. The handle itself only holds 
+ * the position of the node record, the key, the value and all the links to 
+ * other nodes are read from the off-heap store.<br />
+ * <br />
+ * The node value is the <code>long</code> value of the record (boxed as 
+ * {@link Long} for the {@link ListTreeNodeInterface} methods). Use 
+ * {@link #getLongValue()} and {@link #setLongValue(long)} to avoid boxing.<br />
+ * <br />
+ * Off-heap nodes do not support tree node listeners.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public final class OffHeapTreeNode implements ListTreeNodeInterface<Long, OffHeapTreeNode> {
+	
+	private final OffHeapTree tree;
+	private int id;
+	
+	private List<OffHeapTreeNode> childNodes = null;
+	
+	/**
+	 * 
+	 * 
+	 * @param tree
+	 * @param id
+	 */
+	OffHeapTreeNode(OffHeapTree tree, int id) {
+		this.tree = tree;
+		this.id = id;
+	}
+	
+	/**
+	 * Called by the tree when the record of this node has been released
+	 */
+	void released() {
+		id = -1;
+	}
+	
+	/**
+	 * Returns the record of this node
+	 * 
+	 * @return
+	 */
+	private int record() {
+		if (id == -1) {
+			throw new TreeNodeError("The node has been released");
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param field
+	 * @return
+	 */
+	private int get(int field) {
+		return tree.getInt(record(), field);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param node
+	 * @return
+	 */
+	private int checkNode(OffHeapTreeNode node) {
+		if (node.tree != tree) {
+			throw new TreeNodeError("The node is from another off-heap tree");
+		}
+		
+		int nodeId = node.record();
+		
+		if (tree.getInt(nodeId, OffHeapTree.PARENT) != -1) {
+			throw new TreeNodeError("The node already has a parent node set (which " +
+					"means it is from another tree)");
+		}
+		
+		//Adding an ancestor would create a loop
+		for (int p = record(); p != -1; p = tree.getInt(p, OffHeapTree.PARENT)) {
+			if (p == nodeId) {
+				throw new TreeNodeError("A node can not be added to its own sub tree");
+			}
+		}
+		
+		return nodeId;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param index
+	 * @return
+	 */
+	private int childAt(int index) {
+		int count = get(OffHeapTree.CHILD_COUNT);
+		
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+		}
+		
+		//Walk from the closer end
+		int child;
+		if (index < count / 2) {
+			child = get(OffHeapTree.FIRST_CHILD);
+			for (int i = 0; i < index; i++) {
+				child = tree.getInt(child, OffHeapTree.NEXT_SIBLING);
+			}
+		} else {
+			child = get(OffHeapTree.LAST_CHILD);
+			for (int i = count - 1; i > index; i--) {
+				child = tree.getInt(child, OffHeapTree.PREVIOUS_SIBLING);
+			}
+		}
+		
+		return child;
+	}
+	
+	/**
+	 * Counts the nodes in the sub tree of the given node by walking along the 
+	 * node links
+	 * 
+	 * @param start
+	 * @return
+	 */
+	private int countSubtree(int start) {
+		int count = 1;
+		int current = start;
+		
+		while (true) {
+			int child = tree.getInt(current, OffHeapTree.FIRST_CHILD);
+			if (child != -1) {
+				current = child;
+				count++;
+				continue;
+			}
+			
+			//Go up until there is a next sibling
+			while (current != start && tree.getInt(current, OffHeapTree.NEXT_SIBLING) == -1) {
+				current = tree.getInt(current, OffHeapTree.PARENT);
+			}
+			
+			if (current == start) {
+				return count;
+			}
+			
+			current = tree.getInt(current, OffHeapTree.NEXT_SIBLING);
+			count++;
+		}
+	}
+	
+	/**
+	 * Returns the off-heap tree which stores this node
+	 * 
+	 * @return
+	 */
+	public OffHeapTree getTree() {
+		return tree;
+	}
+	
+	/**
+	 * Returns <code>false</code> if this node has been released
+	 * 
+	 * @return
+	 */
+	public boolean isValid() {
+		return id != -1;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return
+	 */
+	public long getKey() {
+		return tree.getLong(record(), OffHeapTree.KEY);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param key
+	 */
+	public void setKey(long key) {
+		tree.putLong(record(), OffHeapTree.KEY, key);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return
+	 */
+	public long getLongValue() {
+		return tree.getLong(record(), OffHeapTree.VALUE);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param value
+	 */
+	public void setLongValue(long value) {
+		tree.putLong(record(), OffHeapTree.VALUE, value);
+	}
+	
+	/**
+	 * Adds a new child node with the given key and value
+	 * 
+	 * @param key
+	 * @param value
+	 * @return The new node
+	 */
+	public OffHeapTreeNode addChildNode(long key, long value) {
+		return addChildNode(tree.createNode(key, value));
+	}
+	
+	/**
+	 * Frees the records of this node and all its child nodes in the off-heap 
+	 * store. The node has to be removed from its parent node first. All handles 
+	 * of the released nodes become invalid.
+	 * 
+	 */
+	public void release() {
+		tree.release(record());
+	}
+
+	@Override
+	public OffHeapTreeNode nodeFactory(Long value) {
+		return tree.createNode(0, value);
+	}
+
+	@Override
+	public OffHeapTreeNode nodeFactory(OffHeapTreeNode node) {
+		return tree.createNode(node.getKey(), node.getLongValue());
+	}
+
+	/**
+	 * Off-heap nodes do not support tree node listeners
+	 * 
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void addTreeNodeListener(TreeNodeListener<OffHeapTreeNode> l) {
+		throw new UnsupportedOperationException("Off-heap tree nodes do not support listeners");
+	}
+
+	@Override
+	public void addTreeNodeListener(TreeNodeListener<OffHeapTreeNode> l, EnumSet<TreeEventType> eventTypes) {
+		throw new UnsupportedOperationException("Off-heap tree nodes do not support listeners");
+	}
+
+	@Override
+	public void removeTreeNodeListener(TreeNodeListener<OffHeapTreeNode> l) {
+		throw new UnsupportedOperationException("Off-heap tree nodes do not support listeners");
+	}
+
+	@Override
+	public void addSubtreeListener(TreeNodeListener<OffHeapTreeNode> l) {
+		throw new UnsupportedOperationException("Off-heap tree nodes do not support listeners");
+	}
+
+	@Override
+	public void addSubtreeListener(TreeNodeListener<OffHeapTreeNode> l, EnumSet<TreeEventType> eventTypes) {
+		throw new UnsupportedOperationException("Off-heap tree nodes do not support listeners");
+	}
+
+	@Override
+	public void removeSubtreeListener(TreeNodeListener<OffHeapTreeNode> l) {
+		throw new UnsupportedOperationException("Off-heap tree nodes do not support listeners");
+	}
+
+	@Override
+	public List<OffHeapTreeNode> getChildNodes() {
+		if (childNodes == null) {
+			childNodes = new ChildNodeList();
+		}
+		
+		return childNodes;
+	}
+
+	@Override
+	public OffHeapTreeNode addChildNode(OffHeapTreeNode node) {
+		tree.link(record(), checkNode(node), -1);
+		return node;
+	}
+
+	@Override
+	public OffHeapTreeNode addChildNodeCopy(OffHeapTreeNode node) {
+		return addChildNode(nodeFactory(node));
+	}
+
+	@Override
+	public boolean addChildNodes(Collection<OffHeapTreeNode> nodes) {
+		boolean ret = false;
+		
+		for (OffHeapTreeNode node : nodes) {
+			addChildNode(node);
+			ret = true;
+		}
+		
+		return ret;
+	}
+
+	@Override
+	public void removeChildNodes() {
+		int child;
+		while ((child = get(OffHeapTree.LAST_CHILD)) != -1) {
+			tree.unlink(child);
+		}
+	}
+
+	@Override
+	public int getChildNodesCount() {
+		return get(OffHeapTree.CHILD_COUNT);
+	}
+
+	@Override
+	public OffHeapTreeNode getParentNode() {
+		return tree.getNode(get(OffHeapTree.PARENT));
+	}
+
+	@Override
+	public OffHeapTreeNode getHeadNode() {
+		return getRootNode();
+	}
+
+	@Override
+	public Long getNodeValue() {
+		return Long.valueOf(getLongValue());
+	}
+
+	@Override
+	public void setNodeValue(Long value) {
+		setLongValue(value);
+	}
+
+	@Override
+	public OffHeapTreeNode addChildNode(Long value) {
+		return addChildNode(nodeFactory(value));
+	}
+
+	@Override
+	public boolean removeNode() {
+		if (isRootNode()) {
+			return false;
+		}
+		
+		tree.unlink(record());
+		return true;
+	}
+
+	@Override
+	public boolean removeChildNode(OffHeapTreeNode node) {
+		if (node.tree != tree || node.get(OffHeapTree.PARENT) != record()) {
+			return false;
+		}
+		
+		tree.unlink(node.id);
+		return true;
+	}
+
+	@Override
+	public OffHeapTreeNode replaceNode(Long value) {
+		return replaceNode(nodeFactory(value));
+	}
+
+	@Override
+	public OffHeapTreeNode replaceNode(OffHeapTreeNode newNode) {
+		if (isRootNode()) {
+			throw new TreeNodeError("Root node can not be replaced");
+		}
+		
+		int newId = checkNode(newNode);
+		
+		//Step 1: Transfer child nodes from current node to replacement node
+		int child;
+		while ((child = get(OffHeapTree.FIRST_CHILD)) != -1) {
+			tree.unlink(child);
+			tree.link(newId, child, -1);
+		}
+		
+		//Step 2: Switch nodes
+		int parent = get(OffHeapTree.PARENT);
+		int next = get(OffHeapTree.NEXT_SIBLING);
+		tree.unlink(id);
+		tree.link(parent, newId, next);
+		
+		return newNode;
+	}
+
+	@Override
+	public OffHeapTreeNode getRootNode() {
+		int current = record();
+		int parent;
+		while ((parent = tree.getInt(current, OffHeapTree.PARENT)) != -1) {
+			current = parent;
+		}
+		
+		return tree.getNode(current);
+	}
+
+	@Override
+	public boolean isRootNode() {
+		return get(OffHeapTree.PARENT) == -1;
+	}
+
+	@Override
+	public boolean isLeafNode() {
+		return get(OffHeapTree.CHILD_COUNT) == 0;
+	}
+
+	@Override
+	public int getNodeDepth() {
+		int depth = 0;
+		for (int p = get(OffHeapTree.PARENT); p != -1; p = tree.getInt(p, OffHeapTree.PARENT)) {
+			depth++;
+		}
+		
+		return depth;
+	}
+
+	@Override
+	public boolean isAncestorOf(OffHeapTreeNode node) {
+		return node.isDescendantOf(this);
+	}
+
+	@Override
+	public boolean isDescendantOf(OffHeapTreeNode node) {
+		if (node.tree != tree) {
+			return false;
+		}
+		
+		int ancestor = node.record();
+		for (int p = get(OffHeapTree.PARENT); p != -1; p = tree.getInt(p, OffHeapTree.PARENT)) {
+			if (p == ancestor) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+
+	@Override
+	public int getSubtreeSize() {
+		return countSubtree(record());
+	}
+
+	/**
+	 * The sub tree size is not stored, it is always counted
+	 */
+	@Override
+	public boolean isSubtreeSizeKnown() {
+		return false;
+	}
+
+	@Override
+	public int getGlobalIndex() {
+		int index = 0;
+		int current = record();
+		int parent;
+		
+		while ((parent = tree.getInt(current, OffHeapTree.PARENT)) != -1) {
+			//The parent node itself and the sub trees of all previous siblings
+			index++;
+			for (int s = tree.getInt(current, OffHeapTree.PREVIOUS_SIBLING); s != -1; 
+					s = tree.getInt(s, OffHeapTree.PREVIOUS_SIBLING)) {
+				index += countSubtree(s);
+			}
+			
+			current = parent;
+		}
+		
+		return index;
+	}
+
+	@Override
+	public OffHeapTreeNode getNodeAtGlobalIndex(int index) {
+		int current = getRootNode().id;
+		
+		if (index < 0) {
+			throw new IndexOutOfBoundsException("Index: " + index);
+		}
+		
+		while (index > 0) {
+			//Skip the node itself
+			index--;
+			
+			int child = tree.getInt(current, OffHeapTree.FIRST_CHILD);
+			while (child != -1) {
+				int size = countSubtree(child);
+				if (index < size) {
+					break;
+				}
+				
+				index -= size;
+				child = tree.getInt(child, OffHeapTree.NEXT_SIBLING);
+			}
+			
+			if (child == -1) {
+				throw new IndexOutOfBoundsException("Index: " + index + " after the last node");
+			}
+			
+			current = child;
+		}
+		
+		return tree.getNode(current);
+	}
+
+	@Override
+	public TreeIterator<OffHeapTreeNode> iterator() {
+		return new TreeIterator<OffHeapTreeNode>(this);
+	}
+
+	@Override
+	public TreeIterator<OffHeapTreeNode> iterator(boolean subtreeOnly) {
+		return new TreeIterator<OffHeapTreeNode>(this, subtreeOnly);
+	}
+
+	@Override
+	public boolean accept(TreeVisitor<? super OffHeapTreeNode> visitor) {
+		//No stack needed, the tree can be walked with the node links
+		int start = record();
+		int current = start;
+		boolean enter = true;
+		
+		while (true) {
+			VisitResult result = null;
+			
+			if (enter) {
+				result = visitor.enterNode(tree.getNode(current));
+				
+				if (result == VisitResult.CONTINUE) {
+					int child = tree.getInt(current, OffHeapTree.FIRST_CHILD);
+					if (child != -1) {
+						current = child;
+						continue;
+					}
+					
+					result = visitor.leaveNode(tree.getNode(current));
+				}
+			} else {
+				result = visitor.leaveNode(tree.getNode(current));
+			}
+			
+			if (result == VisitResult.TERMINATE) {
+				return false;
+			}
+			
+			if (current == start) {
+				return true;
+			}
+			
+			int next = tree.getInt(current, OffHeapTree.NEXT_SIBLING);
+			
+			if (result != VisitResult.SKIP_SIBLINGS && next != -1) {
+				current = next;
+				enter = true;
+			} else {
+				current = tree.getInt(current, OffHeapTree.PARENT);
+				enter = false;
+			}
+		}
+	}
+
+	@Override
+	public PostOrderTreeIterator<OffHeapTreeNode> postOrderIterator(boolean subtreeOnly) {
+		return new PostOrderTreeIterator<OffHeapTreeNode>(this, subtreeOnly);
+	}
+
+	@Override
+	public BreadthFirstTreeIterator<OffHeapTreeNode> breadthFirstIterator(boolean subtreeOnly) {
+		return new BreadthFirstTreeIterator<OffHeapTreeNode>(this, subtreeOnly);
+	}
+
+	@Override
+	public TreeSplitIterator<OffHeapTreeNode> splitIterator() {
+		return new TreeSplitIterator<OffHeapTreeNode>(this);
+	}
+
+	@Override
+	public OffHeapTreeNode addChildNodeAt(int index, OffHeapTreeNode node) {
+		int count = get(OffHeapTree.CHILD_COUNT);
+		
+		if (index < 0 || index > count) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+		}
+		
+		int nodeId = checkNode(node);
+		tree.link(id, nodeId, index == count ? -1 : childAt(index));
+		return node;
+	}
+
+	@Override
+	public OffHeapTreeNode addChildNodeCopyAt(int index, OffHeapTreeNode node) {
+		return addChildNodeAt(index, nodeFactory(node));
+	}
+
+	@Override
+	public OffHeapTreeNode addChildNodeAt(int index, Long value) {
+		return addChildNodeAt(index, nodeFactory(value));
+	}
+
+	@Override
+	public OffHeapTreeNode getChildNode(int index) {
+		return tree.getNode(childAt(index));
+	}
+
+	@Override
+	public OffHeapTreeNode getFirstChildNode() {
+		return tree.getNode(get(OffHeapTree.FIRST_CHILD));
+	}
+
+	@Override
+	public OffHeapTreeNode getLastChildNode() {
+		return tree.getNode(get(OffHeapTree.LAST_CHILD));
+	}
+
+	@Override
+	public OffHeapTreeNode getFirstSibling() {
+		int parent = get(OffHeapTree.PARENT);
+		if (parent == -1) {
+			return this;
+		}
+		
+		return tree.getNode(tree.getInt(parent, OffHeapTree.FIRST_CHILD));
+	}
+
+	@Override
+	public OffHeapTreeNode getLastSibling() {
+		int parent = get(OffHeapTree.PARENT);
+		if (parent == -1) {
+			return this;
+		}
+		
+		return tree.getNode(tree.getInt(parent, OffHeapTree.LAST_CHILD));
+	}
+
+	@Override
+	public OffHeapTreeNode getNextSibling() {
+		return tree.getNode(get(OffHeapTree.NEXT_SIBLING));
+	}
+
+	@Override
+	public OffHeapTreeNode getPreviousSibling() {
+		return tree.getNode(get(OffHeapTree.PREVIOUS_SIBLING));
+	}
+
+	@Override
+	public OffHeapTreeNode removeChildNode(int index) {
+		int child = childAt(index);
+		tree.unlink(child);
+		return tree.getNode(child);
+	}
+
+	@Override
+	public int getNodeIndex() {
+		int index = 0;
+		for (int s = get(OffHeapTree.PREVIOUS_SIBLING); s != -1; s = tree.getInt(s, OffHeapTree.PREVIOUS_SIBLING)) {
+			index++;
+		}
+		
+		return index;
+	}
+
+	@Override
+	public int getChildNodeIndex(OffHeapTreeNode node) {
+		if (node.tree != tree || node.get(OffHeapTree.PARENT) != record()) {
+			return -1;
+		}
+		
+		return node.getNodeIndex();
+	}
+
+	@Override
+	public boolean isFirstNode() {
+		return get(OffHeapTree.PREVIOUS_SIBLING) == -1;
+	}
+
+	@Override
+	public boolean isLastNode() {
+		return get(OffHeapTree.NEXT_SIBLING) == -1;
+	}
+
+	@Override
+	public ListTreeIterator<OffHeapTreeNode> listIterator() {
+		return new ListTreeIterator<OffHeapTreeNode>(this);
+	}
+
+	@Override
+	public ListTreeIterator<OffHeapTreeNode> listIterator(boolean subtreeOnly) {
+		return new ListTreeIterator<OffHeapTreeNode>(this, subtreeOnly);
+	}
+	
+	@Override
+	public String toString() {
+		if (id == -1) {
+			return "[released]";
+		}
+		
+		return "[" + getKey() + "] " + getLongValue();
+	}
+	
+	
+	/**
+	 * A list view of the child nodes which walks along the sibling links. 
+	 * Removing a child node through the list (or its iterator) removes it from 
+	 * this node, adding nodes is not supported.
+	 *
+	 */
+	private class ChildNodeList extends AbstractSequentialList<OffHeapTreeNode> {
+		
+		@Override
+		public ListIterator<OffHeapTreeNode> listIterator(final int index) {
+			final int count = getChildNodesCount();
+			
+			if (index < 0 || index > count) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+			}
+			
+			return new ListIterator<OffHeapTreeNode>() {
+				
+				private int nextIndex = index;
+				private int next = (index == count) ? -1 : childAt(index);
+				private int lastReturned = -1;
+				
+				@Override
+				public boolean hasNext() {
+					return next != -1;
+				}
+				
+				@Override
+				public OffHeapTreeNode next() {
+					if (next == -1) {
+						throw new NoSuchElementException();
+					}
+					
+					lastReturned = next;
+					next = tree.getInt(next, OffHeapTree.NEXT_SIBLING);
+					nextIndex++;
+					return tree.getNode(lastReturned);
+				}
+				
+				@Override
+				public boolean hasPrevious() {
+					return nextIndex > 0;
+				}
+				
+				@Override
+				public OffHeapTreeNode previous() {
+					if (nextIndex == 0) {
+						throw new NoSuchElementException();
+					}
+					
+					next = (next == -1) ? OffHeapTreeNode.this.get(OffHeapTree.LAST_CHILD) : tree.getInt(next, OffHeapTree.PREVIOUS_SIBLING);
+					lastReturned = next;
+					nextIndex--;
+					return tree.getNode(lastReturned);
+				}
+				
+				@Override
+				public int nextIndex() {
+					return nextIndex;
+				}
+				
+				@Override
+				public int previousIndex() {
+					return nextIndex - 1;
+				}
+				
+				@Override
+				public void remove() {
+					if (lastReturned == -1) {
+						throw new IllegalStateException();
+					}
+					
+					if (lastReturned == next) {
+						//Removed after previous()
+						next = tree.getInt(next, OffHeapTree.NEXT_SIBLING);
+					} else {
+						nextIndex--;
+					}
+					
+					tree.unlink(lastReturned);
+					lastReturned = -1;
+				}
+				
+				@Override
+				public void set(OffHeapTreeNode e) {
+					throw new UnsupportedOperationException();
+				}
+				
+				@Override
+				public void add(OffHeapTreeNode e) {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+		
+		@Override
+		public int size() {
+			return getChildNodesCount();
+		}
+		
+	}
+
+}
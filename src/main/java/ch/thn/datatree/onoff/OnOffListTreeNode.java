@@ -44,14 +44,22 @@ public class OnOffListTreeNode<V> extends GenericOnOffListTreeNode<V, OnOffListT
     super(value);
   }
 
+  /**
+   * @param value
+   * @param arrayBacked
+   */
+  public OnOffListTreeNode(V value, boolean arrayBacked) {
+    super(value, arrayBacked);
+  }
+
   @Override
   public OnOffListTreeNode<V> nodeFactory(V value) {
-    return new OnOffListTreeNode<V>(value);
+    return new OnOffListTreeNode<V>(value, isArrayBacked());
   }
 
   @Override
   public OnOffListTreeNode<V> nodeFactory(OnOffListTreeNode<V> node) {
-    return new OnOffListTreeNode<V>(node.getNodeValue());
+    return new OnOffListTreeNode<V>(node.getNodeValue(), node.isArrayBacked());
   }
 
   @Override
@@ -42,6 +42,17 @@ extends GenericListTreeNode<V, N> implements OnOffTreeNodeInterface<N> {
     base = new OnOffTreeNodeBase<N>(internalGetThis());
   }
 
+  /**
+   *
+   *
+   * @param value
+   * @param arrayBacked
+   */
+  public GenericOnOffListTreeNode(V value, boolean arrayBacked) {
+    super(value, arrayBacked);
+    base = new OnOffTreeNodeBase<N>(internalGetThis());
+  }
+
   @Override
   public N forceNodeVisible(boolean force) {
     return base.forceNodeVisible(force);
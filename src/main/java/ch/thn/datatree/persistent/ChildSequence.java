@@ -0,0 +1,381 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.persistent;
+
+import ch.thn.datatree.persistent.PersistentTree.Entry;
+
+/**
+ * The immutable sequence of the child entries of a {@link PersistentTree} 
+ * entry. The entries are kept in chunks, and the chunks in a tree of chunks, 
+ * so that replacing, adding or removing a child entry only copies the chunks 
+ * on the path to it. All other chunks are shared with the previous sequence.<br />
+ * <br />
+ * Each chunk knows the number of entries and the summed sub tree sizes of the 
+ * entries it contains, so the sizes never have to be summed up again when a 
+ * child entry changes.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+final class ChildSequence {
+	
+	//The maximum number of entries or chunks in a chunk
+	private static final int CHUNK_SIZE = 32;
+	
+	static final ChildSequence EMPTY = new ChildSequence(new Entry[0], null, 0, 0);
+	
+	//Either the entries (for a chunk on the lowest level) or the chunks
+	private final Entry[] entries;
+	private final ChildSequence[] chunks;
+	//The number of entries in this chunk and all its chunks
+	private final int count;
+	//The summed sub tree sizes of all entries
+	private final int size;
+	
+	/**
+	 * 
+	 * 
+	 * @param entries
+	 * @param chunks
+	 * @param count
+	 * @param size
+	 */
+	private ChildSequence(Entry[] entries, ChildSequence[] chunks, int count, int size) {
+		this.entries = entries;
+		this.chunks = chunks;
+		this.count = count;
+		this.size = size;
+	}
+	
+	/**
+	 * Creates a sequence with the given entries
+	 * 
+	 * @param entries
+	 * @return
+	 */
+	static ChildSequence of(Entry[] entries) {
+		if (entries.length == 0) {
+			return EMPTY;
+		}
+		
+		//The chunks on the lowest level
+		ChildSequence[] level = new ChildSequence[(entries.length + CHUNK_SIZE - 1) / CHUNK_SIZE];
+		for (int i = 0; i < level.length; i++) {
+			int start = i * CHUNK_SIZE;
+			Entry[] chunkEntries = new Entry[Math.min(CHUNK_SIZE, entries.length - start)];
+			System.arraycopy(entries, start, chunkEntries, 0, chunkEntries.length);
+			
+			int chunkSize = 0;
+			for (Entry entry : chunkEntries) {
+				chunkSize += entry.size;
+			}
+			
+			level[i] = new ChildSequence(chunkEntries, null, chunkEntries.length, chunkSize);
+		}
+		
+		//Group the chunks until there is only one left
+		while (level.length > 1) {
+			ChildSequence[] upperLevel = new ChildSequence[(level.length + CHUNK_SIZE - 1) / CHUNK_SIZE];
+			for (int i = 0; i < upperLevel.length; i++) {
+				int start = i * CHUNK_SIZE;
+				ChildSequence[] chunks = new ChildSequence[Math.min(CHUNK_SIZE, level.length - start)];
+				System.arraycopy(level, start, chunks, 0, chunks.length);
+				upperLevel[i] = branch(chunks);
+			}
+			
+			level = upperLevel;
+		}
+		
+		return level[0];
+	}
+	
+	/**
+	 * Creates a chunk with the given chunks
+	 * 
+	 * @param chunks
+	 * @return
+	 */
+	private static ChildSequence branch(ChildSequence[] chunks) {
+		int count = 0;
+		int size = 0;
+		for (ChildSequence chunk : chunks) {
+			count += chunk.count;
+			size += chunk.size;
+		}
+		
+		return new ChildSequence(null, chunks, count, size);
+	}
+	
+	/**
+	 * Returns the number of entries
+	 * 
+	 * @return
+	 */
+	int count() {
+		return count;
+	}
+	
+	/**
+	 * Returns the summed sub tree sizes of all entries
+	 * 
+	 * @return
+	 */
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param index
+	 * @return
+	 */
+	Entry get(int index) {
+		ChildSequence chunk = this;
+		
+		while (chunk.chunks != null) {
+			int i = 0;
+			while (index >= chunk.chunks[i].count) {
+				index -= chunk.chunks[i].count;
+				i++;
+			}
+			
+			chunk = chunk.chunks[i];
+		}
+		
+		return chunk.entries[index];
+	}
+	
+	/**
+	 * Returns the summed sub tree sizes of the entries before the given index
+	 * 
+	 * @param index
+	 * @return
+	 */
+	int sizeBefore(int index) {
+		ChildSequence chunk = this;
+		int sizeBefore = 0;
+		
+		while (chunk.chunks != null) {
+			int i = 0;
+			while (index >= chunk.chunks[i].count) {
+				index -= chunk.chunks[i].count;
+				sizeBefore += chunk.chunks[i].size;
+				i++;
+			}
+			
+			chunk = chunk.chunks[i];
+		}
+		
+		for (int i = 0; i < index; i++) {
+			sizeBefore += chunk.entries[i].size;
+		}
+		
+		return sizeBefore;
+	}
+	
+	/**
+	 * Returns the index of the entry whose sub tree contains the given offset, 
+	 * when counting the nodes of all sub trees one after the other
+	 * 
+	 * @param offset
+	 * @return
+	 */
+	int indexAtOffset(int offset) {
+		ChildSequence chunk = this;
+		int index = 0;
+		
+		while (chunk.chunks != null) {
+			int i = 0;
+			while (offset >= chunk.chunks[i].size) {
+				offset -= chunk.chunks[i].size;
+				index += chunk.chunks[i].count;
+				i++;
+			}
+			
+			chunk = chunk.chunks[i];
+		}
+		
+		int i = 0;
+		while (offset >= chunk.entries[i].size) {
+			offset -= chunk.entries[i].size;
+			i++;
+		}
+		
+		return index + i;
+	}
+	
+	/**
+	 * Returns a sequence where the entry at the given index is replaced
+	 * 
+	 * @param index
+	 * @param entry
+	 * @return
+	 */
+	ChildSequence set(int index, Entry entry) {
+		if (chunks == null) {
+			Entry[] newEntries = entries.clone();
+			newEntries[index] = entry;
+			return new ChildSequence(newEntries, null, count, size - entries[index].size + entry.size);
+		}
+		
+		int i = 0;
+		while (index >= chunks[i].count) {
+			index -= chunks[i].count;
+			i++;
+		}
+		
+		ChildSequence[] newChunks = chunks.clone();
+		newChunks[i] = chunks[i].set(index, entry);
+		return new ChildSequence(null, newChunks, count, size - chunks[i].size + newChunks[i].size);
+	}
+	
+	/**
+	 * Returns a sequence where the given entry is inserted at the given index
+	 * 
+	 * @param index
+	 * @param entry
+	 * @return
+	 */
+	ChildSequence insert(int index, Entry entry) {
+		ChildSequence[] inserted = internalInsert(index, entry);
+		
+		if (inserted.length == 1) {
+			return inserted[0];
+		}
+		
+		//The chunk has been split, the tree of chunks grows by one level
+		return branch(inserted);
+	}
+	
+	/**
+	 * Inserts the entry and splits this chunk if it gets too big
+	 * 
+	 * @param index
+	 * @param entry
+	 * @return The new chunk, or two chunks if it has been split
+	 */
+	private ChildSequence[] internalInsert(int index, Entry entry) {
+		if (chunks == null) {
+			Entry[] newEntries = new Entry[entries.length + 1];
+			System.arraycopy(entries, 0, newEntries, 0, index);
+			newEntries[index] = entry;
+			System.arraycopy(entries, index, newEntries, index + 1, entries.length - index);
+			
+			if (newEntries.length <= CHUNK_SIZE) {
+				return new ChildSequence[] {new ChildSequence(newEntries, null, count + 1, size + entry.size)};
+			}
+			
+			int half = newEntries.length / 2;
+			Entry[] first = new Entry[half];
+			Entry[] second = new Entry[newEntries.length - half];
+			System.arraycopy(newEntries, 0, first, 0, first.length);
+			System.arraycopy(newEntries, half, second, 0, second.length);
+			return new ChildSequence[] {of(first), of(second)};
+		}
+		
+		//Adding at the end goes into the last chunk
+		int i = 0;
+		while (i < chunks.length - 1 && index > chunks[i].count) {
+			index -= chunks[i].count;
+			i++;
+		}
+		
+		ChildSequence[] inserted = chunks[i].internalInsert(index, entry);
+		
+		ChildSequence[] newChunks = new ChildSequence[chunks.length + inserted.length - 1];
+		System.arraycopy(chunks, 0, newChunks, 0, i);
+		System.arraycopy(inserted, 0, newChunks, i, inserted.length);
+		System.arraycopy(chunks, i + 1, newChunks, i + inserted.length, chunks.length - i - 1);
+		
+		if (newChunks.length <= CHUNK_SIZE) {
+			return new ChildSequence[] {new ChildSequence(null, newChunks, count + 1, size + entry.size)};
+		}
+		
+		int half = newChunks.length / 2;
+		ChildSequence[] first = new ChildSequence[half];
+		ChildSequence[] second = new ChildSequence[newChunks.length - half];
+		System.arraycopy(newChunks, 0, first, 0, first.length);
+		System.arraycopy(newChunks, half, second, 0, second.length);
+		return new ChildSequence[] {branch(first), branch(second)};
+	}
+	
+	/**
+	 * Returns a sequence without the entry at the given index
+	 * 
+	 * @param index
+	 * @return
+	 */
+	ChildSequence remove(int index) {
+		ChildSequence removed = internalRemove(index);
+		
+		if (removed == null) {
+			return EMPTY;
+		}
+		
+		//Drop the levels which only have one chunk left
+		while (removed.chunks != null && removed.chunks.length == 1) {
+			removed = removed.chunks[0];
+		}
+		
+		return removed;
+	}
+	
+	/**
+	 * Removes the entry. Chunks are not merged, empty chunks are dropped.
+	 * 
+	 * @param index
+	 * @return The new chunk or <code>null</code> if it is empty
+	 */
+	private ChildSequence internalRemove(int index) {
+		if (chunks == null) {
+			if (entries.length == 1) {
+				return null;
+			}
+			
+			Entry[] newEntries = new Entry[entries.length - 1];
+			System.arraycopy(entries, 0, newEntries, 0, index);
+			System.arraycopy(entries, index + 1, newEntries, index, newEntries.length - index);
+			return new ChildSequence(newEntries, null, count - 1, size - entries[index].size);
+		}
+		
+		int i = 0;
+		while (index >= chunks[i].count) {
+			index -= chunks[i].count;
+			i++;
+		}
+		
+		ChildSequence removed = chunks[i].internalRemove(index);
+		int removedSize = chunks[i].size - (removed == null ? 0 : removed.size);
+		
+		ChildSequence[] newChunks = null;
+		if (removed != null) {
+			newChunks = chunks.clone();
+			newChunks[i] = removed;
+		} else if (chunks.length == 1) {
+			return null;
+		} else {
+			newChunks = new ChildSequence[chunks.length - 1];
+			System.arraycopy(chunks, 0, newChunks, 0, i);
+			System.arraycopy(chunks, i + 1, newChunks, i, newChunks.length - i);
+		}
+		
+		return new ChildSequence(null, newChunks, count - 1, size - removedSize);
+	}
+	
+}
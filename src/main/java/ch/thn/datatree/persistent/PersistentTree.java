@@ -0,0 +1,306 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.persistent;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+import ch.thn.datatree.core.TreeNodeError;
+
+/**
+ * One version of an immutable tree. Every modification creates a new version 
+ * and leaves this version untouched. The new version shares all sub trees which 
+ * are not on the path to the modified node with this version (path copying), so 
+ * a modification only copies the nodes from the root node down to the modified 
+ * node. The child nodes of a node are kept in a {@link ChildSequence}, so each 
+ * copied node only copies the chunk of its child nodes which leads to the modified 
+ * node, not all of its child nodes. Versions can be handed to any number of threads without copying or 
+ * locking.<br />
+ * <br />
+ * The nodes of a version are accessed through {@link PersistentTreeNode} handles, 
+ * which are only created when a node is accessed. The modifying methods take a 
+ * handle of this version to identify the node to modify.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <V>
+ */
+public final class PersistentTree<V> {
+	
+	private final Entry root;
+	
+	private PersistentTreeNode<V> rootNode = null;
+	
+	/**
+	 * 
+	 * 
+	 * @param root
+	 */
+	private PersistentTree(Entry root) {
+		this.root = root;
+	}
+	
+	/**
+	 * Creates a tree which only consists of a root node with the given value
+	 * 
+	 * @param rootValue
+	 * @return
+	 */
+	public static <V> PersistentTree<V> create(V rootValue) {
+		return new PersistentTree<V>(new Entry(rootValue, ChildSequence.EMPTY));
+	}
+	
+	/**
+	 * Creates a persistent copy of the sub tree of the given node. The given node 
+	 * becomes the root node of the persistent tree. The node values are not copied.
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public static <V, N extends CollectionTreeNodeInterface<V, N>> PersistentTree<V> copyOf(N node) {
+		//In post-order, the child nodes of a node are the last entries on the stack
+		ArrayList<Entry> stack = new ArrayList<Entry>();
+		
+		Iterator<N> iterator = node.postOrderIterator(true);
+		while (iterator.hasNext()) {
+			N n = iterator.next();
+			int count = n.getChildNodesCount();
+			int start = stack.size() - count;
+			
+			Entry[] children = new Entry[count];
+			for (int i = 0; i < count; i++) {
+				children[i] = stack.get(start + i);
+			}
+			
+			for (int i = 0; i < count; i++) {
+				stack.remove(stack.size() - 1);
+			}
+			
+			stack.add(new Entry(n.getNodeValue(), ChildSequence.of(children)));
+		}
+		
+		return new PersistentTree<V>(stack.get(0));
+	}
+	
+	/**
+	 * Returns the root node of this version
+	 * 
+	 * @return
+	 */
+	public PersistentTreeNode<V> getRootNode() {
+		if (rootNode == null) {
+			rootNode = new PersistentTreeNode<V>(this, null, root, 0);
+		}
+		
+		return rootNode;
+	}
+	
+	/**
+	 * Returns the node at the given path. Each path element is the index of the 
+	 * child node on the next level, an empty path returns the root node.
+	 * 
+	 * @param path
+	 * @return
+	 */
+	public PersistentTreeNode<V> getNode(int... path) {
+		PersistentTreeNode<V> node = getRootNode();
+		
+		for (int index : path) {
+			node = node.getChildNode(index);
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * Returns the number of nodes in this version
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return root.size;
+	}
+	
+	/**
+	 * Creates a new version where the given node has the given value
+	 * 
+	 * @param node A node of this version
+	 * @param value
+	 * @return The new version
+	 */
+	public PersistentTree<V> setNodeValue(PersistentTreeNode<V> node, V value) {
+		Entry entry = checkNode(node);
+		return copyPath(node, new Entry(value, entry.children));
+	}
+	
+	/**
+	 * Creates a new version where the given node has an additional child node 
+	 * with the given value at the end of its child nodes
+	 * 
+	 * @param parentNode A node of this version
+	 * @param value
+	 * @return The new version
+	 */
+	public PersistentTree<V> addChildNode(PersistentTreeNode<V> parentNode, V value) {
+		return addChildNodeAt(parentNode, checkNode(parentNode).children.count(), value);
+	}
+	
+	/**
+	 * Creates a new version where the given node has an additional child node 
+	 * with the given value at the given index
+	 * 
+	 * @param parentNode A node of this version
+	 * @param index
+	 * @param value
+	 * @return The new version
+	 */
+	public PersistentTree<V> addChildNodeAt(PersistentTreeNode<V> parentNode, int index, V value) {
+		return addChildEntry(parentNode, index, new Entry(value, ChildSequence.EMPTY));
+	}
+	
+	/**
+	 * Creates a new version where the root node of the given tree is added as 
+	 * child node at the end of the child nodes of the given node. The given tree 
+	 * is shared, not copied.
+	 * 
+	 * @param parentNode A node of this version
+	 * @param tree
+	 * @return The new version
+	 */
+	public PersistentTree<V> addChildTree(PersistentTreeNode<V> parentNode, PersistentTree<V> tree) {
+		return addChildEntry(parentNode, checkNode(parentNode).children.count(), tree.root);
+	}
+	
+	/**
+	 * Creates a new version without the given node (and its sub tree)
+	 * 
+	 * @param node A node of this version
+	 * @return The new version
+	 */
+	public PersistentTree<V> removeNode(PersistentTreeNode<V> node) {
+		checkNode(node);
+		
+		PersistentTreeNode<V> parentNode = node.getParentNode();
+		if (parentNode == null) {
+			throw new TreeNodeError("Root node can not be removed");
+		}
+		
+		Entry parent = parentNode.getEntry();
+		
+		return copyPath(parentNode, new Entry(parent.value, parent.children.remove(node.getNodeIndex())));
+	}
+	
+	/**
+	 * Creates a new version where the given node (and its sub tree) is replaced 
+	 * with the root node (and the sub tree) of the given tree. The given tree is 
+	 * shared, not copied.
+	 * 
+	 * @param node A node of this version
+	 * @param tree
+	 * @return The new version
+	 */
+	public PersistentTree<V> replaceNode(PersistentTreeNode<V> node, PersistentTree<V> tree) {
+		checkNode(node);
+		return copyPath(node, tree.root);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param parentNode
+	 * @param index
+	 * @param child
+	 * @return
+	 */
+	private PersistentTree<V> addChildEntry(PersistentTreeNode<V> parentNode, int index, Entry child) {
+		Entry parent = checkNode(parentNode);
+		
+		if (index < 0 || index > parent.children.count()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + parent.children.count());
+		}
+		
+		return copyPath(parentNode, new Entry(parent.value, parent.children.insert(index, child)));
+	}
+	
+	/**
+	 * Creates a new version where the entry of the given node is replaced with 
+	 * the given entry. Only the ancestors of the node are copied, each with the 
+	 * chunks of its child sequence which lead to the node.
+	 * 
+	 * @param node
+	 * @param entry
+	 * @return
+	 */
+	private PersistentTree<V> copyPath(PersistentTreeNode<V> node, Entry entry) {
+		PersistentTreeNode<V> current = node;
+		
+		while (current.getParentNode() != null) {
+			PersistentTreeNode<V> parentNode = current.getParentNode();
+			Entry parent = parentNode.getEntry();
+			
+			entry = new Entry(parent.value, parent.children.set(current.getNodeIndex(), entry));
+			
+			current = parentNode;
+		}
+		
+		return new PersistentTree<V>(entry);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param node
+	 * @return
+	 */
+	private Entry checkNode(PersistentTreeNode<V> node) {
+		if (node.getTree() != this) {
+			throw new TreeNodeError("The node is not from this version of the tree");
+		}
+		
+		return node.getEntry();
+	}
+	
+	
+	/**
+	 * An immutable node, shared by all versions which contain it
+	 *
+	 */
+	static final class Entry {
+		
+		final Object value;
+		final ChildSequence children;
+		//The number of nodes in the sub tree
+		final int size;
+		
+		/**
+		 * 
+		 * 
+		 * @param value
+		 * @param children
+		 */
+		Entry(Object value, ChildSequence children) {
+			this.value = value;
+			this.children = children;
+			//The child sequence keeps the summed sizes of the child entries
+			this.size = 1 + children.size();
+		}
+		
+	}
+
+}
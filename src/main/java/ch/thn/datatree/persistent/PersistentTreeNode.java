@@ -0,0 +1,558 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.persistent;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+import ch.thn.datatree.BreadthFirstTreeIterator;
+import ch.thn.datatree.ListTreeIterator;
+import ch.thn.datatree.PostOrderTreeIterator;
+import ch.thn.datatree.TreeEventType;
+import ch.thn.datatree.TreeIterator;
+import ch.thn.datatree.TreeNodeListener;
+import ch.thn.datatree.TreeSplitIterator;
+import ch.thn.datatree.TreeVisitor;
+import ch.thn.datatree.TreeVisitor.VisitResult;
+import ch.thn.datatree.core.ListTreeNodeInterface;
+import ch.thn.datatree.persistent.PersistentTree.Entry;
+
+/**
+ * A node of one version of a {@link PersistentTree}. All navigation and 
+ * iteration methods work like the methods of the other tree nodes, all methods 
+ * which would modify the tree throw an {@link UnsupportedOperationException}. 
+ * Use the methods of {@link PersistentTree} to create modified versions.<br />
+ * <br />
+ * The handles of the child nodes are created when they are accessed and then 
+ * reused, so navigating to the same node of a version always returns the same 
+ * handle.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <V>
+ */
+public final class PersistentTreeNode<V> implements ListTreeNodeInterface<V, PersistentTreeNode<V>> {
+	
+	private final PersistentTree<V> tree;
+	private final PersistentTreeNode<V> parent;
+	private final Entry entry;
+	private final int index;
+	private final int depth;
+	
+	private PersistentTreeNode<?>[] childHandles = null;
+	private List<PersistentTreeNode<V>> childNodes = null;
+	
+	/**
+	 * 
+	 * 
+	 * @param tree
+	 * @param parent
+	 * @param entry
+	 * @param index
+	 */
+	PersistentTreeNode(PersistentTree<V> tree, PersistentTreeNode<V> parent, Entry entry, int index) {
+		this.tree = tree;
+		this.parent = parent;
+		this.entry = entry;
+		this.index = index;
+		this.depth = (parent == null) ? 0 : parent.depth + 1;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return
+	 */
+	Entry getEntry() {
+		return entry;
+	}
+	
+	/**
+	 * Returns the version of the tree this node belongs to
+	 * 
+	 * @return
+	 */
+	public PersistentTree<V> getTree() {
+		return tree;
+	}
+	
+	/**
+	 * Returns the path from the root node to this node. Each path element is 
+	 * the index of the child node on the next level. See 
+	 * {@link PersistentTree#getNode(int...)}.
+	 * 
+	 * @return
+	 */
+	public int[] getPath() {
+		int[] path = new int[depth];
+		
+		PersistentTreeNode<V> node = this;
+		for (int i = depth - 1; i >= 0; i--) {
+			path[i] = node.index;
+			node = node.parent;
+		}
+		
+		return path;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return
+	 */
+	private UnsupportedOperationException persistent() {
+		return new UnsupportedOperationException("A persistent tree can not be modified, " 
+				+ "use the methods of PersistentTree to create a new version");
+	}
+
+	@Override
+	public PersistentTreeNode<V> nodeFactory(V value) {
+		throw persistent();
+	}
+
+	@Override
+	public PersistentTreeNode<V> nodeFactory(PersistentTreeNode<V> node) {
+		throw persistent();
+	}
+
+	/**
+	 * A version of a persistent tree does not change, the listener is never notified
+	 */
+	@Override
+	public void addTreeNodeListener(TreeNodeListener<PersistentTreeNode<V>> l) {
+		//Nothing to notify
+	}
+
+	@Override
+	public void addTreeNodeListener(TreeNodeListener<PersistentTreeNode<V>> l, EnumSet<TreeEventType> eventTypes) {
+		//Nothing to notify
+	}
+
+	@Override
+	public void removeTreeNodeListener(TreeNodeListener<PersistentTreeNode<V>> l) {
+		//Nothing to notify
+	}
+
+	@Override
+	public void addSubtreeListener(TreeNodeListener<PersistentTreeNode<V>> l) {
+		//Nothing to notify
+	}
+
+	@Override
+	public void addSubtreeListener(TreeNodeListener<PersistentTreeNode<V>> l, EnumSet<TreeEventType> eventTypes) {
+		//Nothing to notify
+	}
+
+	@Override
+	public void removeSubtreeListener(TreeNodeListener<PersistentTreeNode<V>> l) {
+		//Nothing to notify
+	}
+
+	@Override
+	public List<PersistentTreeNode<V>> getChildNodes() {
+		if (childNodes == null) {
+			childNodes = new ChildNodeList();
+		}
+		
+		return childNodes;
+	}
+
+	@Override
+	public PersistentTreeNode<V> addChildNode(PersistentTreeNode<V> node) {
+		throw persistent();
+	}
+
+	@Override
+	public PersistentTreeNode<V> addChildNodeCopy(PersistentTreeNode<V> node) {
+		throw persistent();
+	}
+
+	@Override
+	public boolean addChildNodes(Collection<PersistentTreeNode<V>> nodes) {
+		throw persistent();
+	}
+
+	@Override
+	public void removeChildNodes() {
+		throw persistent();
+	}
+
+	@Override
+	public int getChildNodesCount() {
+		return entry.children.count();
+	}
+
+	@Override
+	public PersistentTreeNode<V> getParentNode() {
+		return parent;
+	}
+
+	@Override
+	public PersistentTreeNode<V> getHeadNode() {
+		return getRootNode();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V getNodeValue() {
+		return (V)entry.value;
+	}
+
+	@Override
+	public void setNodeValue(V value) {
+		throw persistent();
+	}
+
+	@Override
+	public PersistentTreeNode<V> addChildNode(V value) {
+		throw persistent();
+	}
+
+	@Override
+	public boolean removeNode() {
+		throw persistent();
+	}
+
+	@Override
+	public boolean removeChildNode(PersistentTreeNode<V> node) {
+		throw persistent();
+	}
+
+	@Override
+	public PersistentTreeNode<V> replaceNode(V value) {
+		throw persistent();
+	}
+
+	@Override
+	public PersistentTreeNode<V> replaceNode(PersistentTreeNode<V> newNode) {
+		throw persistent();
+	}
+
+	@Override
+	public PersistentTreeNode<V> getRootNode() {
+		return tree.getRootNode();
+	}
+
+	@Override
+	public boolean isRootNode() {
+		return parent == null;
+	}
+
+	@Override
+	public boolean isLeafNode() {
+		return entry.children.count() == 0;
+	}
+
+	@Override
+	public int getNodeDepth() {
+		return depth;
+	}
+
+	@Override
+	public boolean isAncestorOf(PersistentTreeNode<V> node) {
+		return node.isDescendantOf(this);
+	}
+
+	@Override
+	public boolean isDescendantOf(PersistentTreeNode<V> node) {
+		if (node.tree != tree || node.depth >= depth) {
+			return false;
+		}
+		
+		PersistentTreeNode<V> ancestor = parent;
+		while (ancestor.depth > node.depth) {
+			ancestor = ancestor.parent;
+		}
+		
+		return ancestor == node;
+	}
+
+	@Override
+	public int getSubtreeSize() {
+		return entry.size;
+	}
+
+	@Override
+	public boolean isSubtreeSizeKnown() {
+		return true;
+	}
+
+	@Override
+	public int getGlobalIndex() {
+		int globalIndex = 0;
+		
+		PersistentTreeNode<V> node = this;
+		while (node.parent != null) {
+			//The parent node itself and the sub trees of all previous siblings
+			globalIndex++;
+			globalIndex += node.parent.entry.children.sizeBefore(node.index);
+			
+			node = node.parent;
+		}
+		
+		return globalIndex;
+	}
+
+	@Override
+	public PersistentTreeNode<V> getNodeAtGlobalIndex(int index) {
+		PersistentTreeNode<V> node = getRootNode();
+		
+		if (index < 0 || index >= node.entry.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + node.entry.size);
+		}
+		
+		while (index > 0) {
+			//Skip the node itself
+			index--;
+			
+			ChildSequence children = node.entry.children;
+			int childIndex = children.indexAtOffset(index);
+			index -= children.sizeBefore(childIndex);
+			
+			node = node.getChildNode(childIndex);
+		}
+		
+		return node;
+	}
+
+	@Override
+	public TreeIterator<PersistentTreeNode<V>> iterator() {
+		return new TreeIterator<PersistentTreeNode<V>>(this);
+	}
+
+	@Override
+	public TreeIterator<PersistentTreeNode<V>> iterator(boolean subtreeOnly) {
+		return new TreeIterator<PersistentTreeNode<V>>(this, subtreeOnly);
+	}
+
+	@Override
+	public boolean accept(TreeVisitor<? super PersistentTreeNode<V>> visitor) {
+		//No stack needed, the tree can be walked with the parent nodes and indexes
+		PersistentTreeNode<V> current = this;
+		boolean enter = true;
+		
+		while (true) {
+			VisitResult result = null;
+			
+			if (enter) {
+				result = visitor.enterNode(current);
+				
+				if (result == VisitResult.CONTINUE) {
+					if (! current.isLeafNode()) {
+						current = current.getChildNode(0);
+						continue;
+					}
+					
+					result = visitor.leaveNode(current);
+				}
+			} else {
+				result = visitor.leaveNode(current);
+			}
+			
+			if (result == VisitResult.TERMINATE) {
+				return false;
+			}
+			
+			if (current == this) {
+				return true;
+			}
+			
+			if (result != VisitResult.SKIP_SIBLINGS && ! current.isLastNode()) {
+				current = current.parent.getChildNode(current.index + 1);
+				enter = true;
+			} else {
+				current = current.parent;
+				enter = false;
+			}
+		}
+	}
+
+	@Override
+	public PostOrderTreeIterator<PersistentTreeNode<V>> postOrderIterator(boolean subtreeOnly) {
+		return new PostOrderTreeIterator<PersistentTreeNode<V>>(this, subtreeOnly);
+	}
+
+	@Override
+	public BreadthFirstTreeIterator<PersistentTreeNode<V>> breadthFirstIterator(boolean subtreeOnly) {
+		return new BreadthFirstTreeIterator<PersistentTreeNode<V>>(this, subtreeOnly);
+	}
+
+	@Override
+	public TreeSplitIterator<PersistentTreeNode<V>> splitIterator() {
+		return new TreeSplitIterator<PersistentTreeNode<V>>(this);
+	}
+
+	@Override
+	public PersistentTreeNode<V> addChildNodeAt(int index, PersistentTreeNode<V> node) {
+		throw persistent();
+	}
+
+	@Override
+	public PersistentTreeNode<V> addChildNodeCopyAt(int index, PersistentTreeNode<V> node) {
+		throw persistent();
+	}
+
+	@Override
+	public PersistentTreeNode<V> addChildNodeAt(int index, V value) {
+		throw persistent();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public PersistentTreeNode<V> getChildNode(int index) {
+		ChildSequence children = entry.children;
+		
+		if (index < 0 || index >= children.count()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + children.count());
+		}
+		
+		if (childHandles == null) {
+			childHandles = new PersistentTreeNode<?>[children.count()];
+		}
+		
+		PersistentTreeNode<V> node = (PersistentTreeNode<V>)childHandles[index];
+		
+		if (node == null) {
+			node = new PersistentTreeNode<V>(tree, this, children.get(index), index);
+			childHandles[index] = node;
+		}
+		
+		return node;
+	}
+
+	@Override
+	public PersistentTreeNode<V> getFirstChildNode() {
+		if (isLeafNode()) {
+			return null;
+		}
+		
+		return getChildNode(0);
+	}
+
+	@Override
+	public PersistentTreeNode<V> getLastChildNode() {
+		if (isLeafNode()) {
+			return null;
+		}
+		
+		return getChildNode(entry.children.count() - 1);
+	}
+
+	@Override
+	public PersistentTreeNode<V> getFirstSibling() {
+		if (isRootNode()) {
+			return this;
+		}
+		
+		return parent.getFirstChildNode();
+	}
+
+	@Override
+	public PersistentTreeNode<V> getLastSibling() {
+		if (isRootNode()) {
+			return this;
+		}
+		
+		return parent.getLastChildNode();
+	}
+
+	@Override
+	public PersistentTreeNode<V> getNextSibling() {
+		if (isLastNode()) {
+			return null;
+		}
+		
+		return parent.getChildNode(index + 1);
+	}
+
+	@Override
+	public PersistentTreeNode<V> getPreviousSibling() {
+		if (isFirstNode()) {
+			return null;
+		}
+		
+		return parent.getChildNode(index - 1);
+	}
+
+	@Override
+	public PersistentTreeNode<V> removeChildNode(int index) {
+		throw persistent();
+	}
+
+	@Override
+	public int getNodeIndex() {
+		return index;
+	}
+
+	@Override
+	public int getChildNodeIndex(PersistentTreeNode<V> node) {
+		if (node.parent != this) {
+			return -1;
+		}
+		
+		return node.index;
+	}
+
+	@Override
+	public boolean isFirstNode() {
+		return index == 0;
+	}
+
+	@Override
+	public boolean isLastNode() {
+		return parent == null || index == parent.entry.children.count() - 1;
+	}
+
+	@Override
+	public ListTreeIterator<PersistentTreeNode<V>> listIterator() {
+		return new ListTreeIterator<PersistentTreeNode<V>>(this);
+	}
+
+	@Override
+	public ListTreeIterator<PersistentTreeNode<V>> listIterator(boolean subtreeOnly) {
+		return new ListTreeIterator<PersistentTreeNode<V>>(this, subtreeOnly);
+	}
+	
+	@Override
+	public String toString() {
+		return entry.value == null ? null : entry.value.toString();
+	}
+	
+	
+	/**
+	 * An unmodifiable list view of the child nodes
+	 *
+	 */
+	private class ChildNodeList extends AbstractList<PersistentTreeNode<V>> implements RandomAccess {
+		
+		@Override
+		public PersistentTreeNode<V> get(int index) {
+			return getChildNode(index);
+		}
+		
+		@Override
+		public int size() {
+			return entry.children.count();
+		}
+		
+	}
+
+}
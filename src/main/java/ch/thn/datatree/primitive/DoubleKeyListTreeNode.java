@@ -0,0 +1,168 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.primitive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.thn.datatree.KeyListTreeNode;
+import ch.thn.datatree.TreeEventType;
+import ch.thn.datatree.TreeNodeListener;
+import ch.thn.datatree.core.GenericKeyListTreeNode;
+
+/**
+ * A {@link KeyListTreeNode} with a <code>double</code> value. The value is stored 
+ * unboxed and can be read and changed without boxing with {@link #getDoubleValue()} 
+ * and {@link #setDoubleValue(double)}. Value changes are reported unboxed to 
+ * {@link DoubleValueListener}s.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <K>
+ */
+public class DoubleKeyListTreeNode<K> extends GenericKeyListTreeNode<K, Double, DoubleKeyListTreeNode<K>> {
+
+	private double value = 0;
+
+	private List<DoubleValueListener<DoubleKeyListTreeNode<K>>> valueListeners = null;
+
+	/**
+	 * 
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	public DoubleKeyListTreeNode(K key, double value) {
+		super(key, null);
+		this.value = value;
+	}
+
+	/**
+	 * Adds a new child node with the given key and value
+	 * 
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	public DoubleKeyListTreeNode<K> addChildNode(K key, double value) {
+		return addChildNode(new DoubleKeyListTreeNode<K>(key, value));
+	}
+
+	/**
+	 * Returns the value of this node without boxing it
+	 * 
+	 * @return
+	 */
+	public double getDoubleValue() {
+		return value;
+	}
+
+	/**
+	 * Sets the value of this node. The value is only boxed if there are 
+	 * {@link TreeNodeListener}s registered on this node.
+	 * 
+	 * @param value
+	 */
+	public void setDoubleValue(double value) {
+		internalValueChanging();
+		double oldValue = this.value;
+		this.value = value;
+
+		if (valueListeners != null) {
+			for (int i = 0; i < valueListeners.size(); i++) {
+				valueListeners.get(i).valueChanged(this, oldValue, value);
+			}
+		}
+
+		if (hasTreeNodeListeners(TreeEventType.VALUE_CHANGED)) {
+			fireNodeEvent(TreeEventType.VALUE_CHANGED, this, getParentNode(), getNodeIndex(), Double.valueOf(oldValue));
+		}
+	}
+
+	/**
+	 * Returns the boxed value of this node. Use {@link #getDoubleValue()} to avoid 
+	 * boxing.
+	 */
+	@Override
+	public Double getNodeValue() {
+		return Double.valueOf(value);
+	}
+
+	/**
+	 * Sets the value of this node. Use {@link #setDoubleValue(double)} to avoid 
+	 * boxing.
+	 * 
+	 * @param value Must not be <code>null</code>
+	 */
+	@Override
+	public void setNodeValue(Double value) {
+		setDoubleValue(value.doubleValue());
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param l
+	 */
+	public void addDoubleValueListener(DoubleValueListener<DoubleKeyListTreeNode<K>> l) {
+		if (valueListeners == null) {
+			valueListeners = new ArrayList<DoubleValueListener<DoubleKeyListTreeNode<K>>>(1);
+		}
+
+		if (! valueListeners.contains(l)) {
+			valueListeners.add(l);
+		}
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param l
+	 */
+	public void removeDoubleValueListener(DoubleValueListener<DoubleKeyListTreeNode<K>> l) {
+		if (valueListeners != null) {
+			valueListeners.remove(l);
+		}
+	}
+
+	@Override
+	public DoubleKeyListTreeNode<K> nodeFactory(K key, Double value) {
+		return new DoubleKeyListTreeNode<K>(key, value.doubleValue());
+	}
+
+	@Override
+	public DoubleKeyListTreeNode<K> nodeFactory(Double value) {
+		return new DoubleKeyListTreeNode<K>(null, value.doubleValue());
+	}
+
+	@Override
+	public DoubleKeyListTreeNode<K> nodeFactory(DoubleKeyListTreeNode<K> node) {
+		return new DoubleKeyListTreeNode<K>(node.getNodeKey(), node.getDoubleValue());
+	}
+
+	@Override
+	protected DoubleKeyListTreeNode<K> internalGetThis() {
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + getNodeKey() + "] " + value;
+	}
+
+}
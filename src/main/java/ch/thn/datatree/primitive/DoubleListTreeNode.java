@@ -0,0 +1,171 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.primitive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.thn.datatree.ListTreeNode;
+import ch.thn.datatree.TreeEventType;
+import ch.thn.datatree.TreeNodeListener;
+import ch.thn.datatree.core.GenericListTreeNode;
+
+/**
+ * A {@link ListTreeNode} with a <code>double</code> value. The value is stored 
+ * unboxed and can be read and changed without boxing with {@link #getDoubleValue()} 
+ * and {@link #setDoubleValue(double)}. Value changes are reported unboxed to 
+ * {@link DoubleValueListener}s.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class DoubleListTreeNode extends GenericListTreeNode<Double, DoubleListTreeNode> {
+
+	private double value = 0;
+
+	private List<DoubleValueListener<DoubleListTreeNode>> valueListeners = null;
+
+	/**
+	 * 
+	 * 
+	 * @param value
+	 */
+	public DoubleListTreeNode(double value) {
+		this(value, false);
+	}
+
+	/**
+	 * Creates a node which stores its children in an array backed list if 
+	 * <code>arrayBacked</code> is set (see {@link ListTreeNode#ListTreeNode(Object, boolean)}).
+	 * 
+	 * @param value
+	 * @param arrayBacked
+	 */
+	public DoubleListTreeNode(double value, boolean arrayBacked) {
+		super(null, arrayBacked);
+		this.value = value;
+	}
+
+	/**
+	 * Adds a new child node with the given value
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public DoubleListTreeNode addChildNode(double value) {
+		return addChildNode(new DoubleListTreeNode(value, isArrayBacked()));
+	}
+
+	/**
+	 * Returns the value of this node without boxing it
+	 * 
+	 * @return
+	 */
+	public double getDoubleValue() {
+		return value;
+	}
+
+	/**
+	 * Sets the value of this node. The value is only boxed if there are 
+	 * {@link TreeNodeListener}s registered on this node.
+	 * 
+	 * @param value
+	 */
+	public void setDoubleValue(double value) {
+		internalValueChanging();
+		double oldValue = this.value;
+		this.value = value;
+
+		if (valueListeners != null) {
+			for (int i = 0; i < valueListeners.size(); i++) {
+				valueListeners.get(i).valueChanged(this, oldValue, value);
+			}
+		}
+
+		if (hasTreeNodeListeners(TreeEventType.VALUE_CHANGED)) {
+			fireNodeEvent(TreeEventType.VALUE_CHANGED, this, getParentNode(), getNodeIndex(), Double.valueOf(oldValue));
+		}
+	}
+
+	/**
+	 * Returns the boxed value of this node. Use {@link #getDoubleValue()} to avoid 
+	 * boxing.
+	 */
+	@Override
+	public Double getNodeValue() {
+		return Double.valueOf(value);
+	}
+
+	/**
+	 * Sets the value of this node. Use {@link #setDoubleValue(double)} to avoid 
+	 * boxing.
+	 * 
+	 * @param value Must not be <code>null</code>
+	 */
+	@Override
+	public void setNodeValue(Double value) {
+		setDoubleValue(value.doubleValue());
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param l
+	 */
+	public void addDoubleValueListener(DoubleValueListener<DoubleListTreeNode> l) {
+		if (valueListeners == null) {
+			valueListeners = new ArrayList<DoubleValueListener<DoubleListTreeNode>>(1);
+		}
+
+		if (! valueListeners.contains(l)) {
+			valueListeners.add(l);
+		}
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param l
+	 */
+	public void removeDoubleValueListener(DoubleValueListener<DoubleListTreeNode> l) {
+		if (valueListeners != null) {
+			valueListeners.remove(l);
+		}
+	}
+
+	@Override
+	public DoubleListTreeNode nodeFactory(Double value) {
+		return new DoubleListTreeNode(value.doubleValue(), isArrayBacked());
+	}
+
+	@Override
+	public DoubleListTreeNode nodeFactory(DoubleListTreeNode node) {
+		return new DoubleListTreeNode(node.getDoubleValue(), node.isArrayBacked());
+	}
+
+	@Override
+	protected DoubleListTreeNode internalGetThis() {
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return Double.toString(value);
+	}
+
+}
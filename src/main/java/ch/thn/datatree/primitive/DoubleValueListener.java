@@ -0,0 +1,41 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.primitive;
+
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+
+
+/**
+ * Listens to value changes of nodes with an unboxed <code>double</code> value
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <N>
+ */
+public interface DoubleValueListener<N extends CollectionTreeNodeInterface<Double, N>> {
+	
+	/**
+	 * Called when the value of a node changed
+	 * 
+	 * @param node The node of which the value changed
+	 * @param oldValue
+	 * @param newValue
+	 */
+	public void valueChanged(N node, double oldValue, double newValue);
+
+}
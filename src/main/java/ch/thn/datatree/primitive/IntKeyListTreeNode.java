@@ -0,0 +1,168 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.primitive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.thn.datatree.KeyListTreeNode;
+import ch.thn.datatree.TreeEventType;
+import ch.thn.datatree.TreeNodeListener;
+import ch.thn.datatree.core.GenericKeyListTreeNode;
+
+/**
+ * A {@link KeyListTreeNode} with a <code>int</code> value. The value is stored 
+ * unboxed and can be read and changed without boxing with {@link #getIntValue()} 
+ * and {@link #setIntValue(int)}. Value changes are reported unboxed to 
+ * {@link IntValueListener}s.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <K>
+ */
+public class IntKeyListTreeNode<K> extends GenericKeyListTreeNode<K, Integer, IntKeyListTreeNode<K>> {
+
+	private int value = 0;
+
+	private List<IntValueListener<IntKeyListTreeNode<K>>> valueListeners = null;
+
+	/**
+	 * 
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	public IntKeyListTreeNode(K key, int value) {
+		super(key, null);
+		this.value = value;
+	}
+
+	/**
+	 * Adds a new child node with the given key and value
+	 * 
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	public IntKeyListTreeNode<K> addChildNode(K key, int value) {
+		return addChildNode(new IntKeyListTreeNode<K>(key, value));
+	}
+
+	/**
+	 * Returns the value of this node without boxing it
+	 * 
+	 * @return
+	 */
+	public int getIntValue() {
+		return value;
+	}
+
+	/**
+	 * Sets the value of this node. The value is only boxed if there are 
+	 * {@link TreeNodeListener}s registered on this node.
+	 * 
+	 * @param value
+	 */
+	public void setIntValue(int value) {
+		internalValueChanging();
+		int oldValue = this.value;
+		this.value = value;
+
+		if (valueListeners != null) {
+			for (int i = 0; i < valueListeners.size(); i++) {
+				valueListeners.get(i).valueChanged(this, oldValue, value);
+			}
+		}
+
+		if (hasTreeNodeListeners(TreeEventType.VALUE_CHANGED)) {
+			fireNodeEvent(TreeEventType.VALUE_CHANGED, this, getParentNode(), getNodeIndex(), Integer.valueOf(oldValue));
+		}
+	}
+
+	/**
+	 * Returns the boxed value of this node. Use {@link #getIntValue()} to avoid 
+	 * boxing.
+	 */
+	@Override
+	public Integer getNodeValue() {
+		return Integer.valueOf(value);
+	}
+
+	/**
+	 * Sets the value of this node. Use {@link #setIntValue(int)} to avoid 
+	 * boxing.
+	 * 
+	 * @param value Must not be <code>null</code>
+	 */
+	@Override
+	public void setNodeValue(Integer value) {
+		setIntValue(value.intValue());
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param l
+	 */
+	public void addIntValueListener(IntValueListener<IntKeyListTreeNode<K>> l) {
+		if (valueListeners == null) {
+			valueListeners = new ArrayList<IntValueListener<IntKeyListTreeNode<K>>>(1);
+		}
+
+		if (! valueListeners.contains(l)) {
+			valueListeners.add(l);
+		}
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param l
+	 */
+	public void removeIntValueListener(IntValueListener<IntKeyListTreeNode<K>> l) {
+		if (valueListeners != null) {
+			valueListeners.remove(l);
+		}
+	}
+
+	@Override
+	public IntKeyListTreeNode<K> nodeFactory(K key, Integer value) {
+		return new IntKeyListTreeNode<K>(key, value.intValue());
+	}
+
+	@Override
+	public IntKeyListTreeNode<K> nodeFactory(Integer value) {
+		return new IntKeyListTreeNode<K>(null, value.intValue());
+	}
+
+	@Override
+	public IntKeyListTreeNode<K> nodeFactory(IntKeyListTreeNode<K> node) {
+		return new IntKeyListTreeNode<K>(node.getNodeKey(), node.getIntValue());
+	}
+
+	@Override
+	protected IntKeyListTreeNode<K> internalGetThis() {
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + getNodeKey() + "] " + value;
+	}
+
+}
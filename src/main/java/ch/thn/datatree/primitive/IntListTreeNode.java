@@ -0,0 +1,171 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.primitive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.thn.datatree.ListTreeNode;
+import ch.thn.datatree.TreeEventType;
+import ch.thn.datatree.TreeNodeListener;
+import ch.thn.datatree.core.GenericListTreeNode;
+
+/**
+ * A {@link ListTreeNode} with a <code>int</code> value. The value is stored 
+ * unboxed and can be read and changed without boxing with {@link #getIntValue()} 
+ * and {@link #setIntValue(int)}. Value changes are reported unboxed to 
+ * {@link IntValueListener}s.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class IntListTreeNode extends GenericListTreeNode<Integer, IntListTreeNode> {
+
+	private int value = 0;
+
+	private List<IntValueListener<IntListTreeNode>> valueListeners = null;
+
+	/**
+	 * 
+	 * 
+	 * @param value
+	 */
+	public IntListTreeNode(int value) {
+		this(value, false);
+	}
+
+	/**
+	 * Creates a node which stores its children in an array backed list if 
+	 * <code>arrayBacked</code> is set (see {@link ListTreeNode#ListTreeNode(Object, boolean)}).
+	 * 
+	 * @param value
+	 * @param arrayBacked
+	 */
+	public IntListTreeNode(int value, boolean arrayBacked) {
+		super(null, arrayBacked);
+		this.value = value;
+	}
+
+	/**
+	 * Adds a new child node with the given value
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public IntListTreeNode addChildNode(int value) {
+		return addChildNode(new IntListTreeNode(value, isArrayBacked()));
+	}
+
+	/**
+	 * Returns the value of this node without boxing it
+	 * 
+	 * @return
+	 */
+	public int getIntValue() {
+		return value;
+	}
+
+	/**
+	 * Sets the value of this node. The value is only boxed if there are 
+	 * {@link TreeNodeListener}s registered on this node.
+	 * 
+	 * @param value
+	 */
+	public void setIntValue(int value) {
+		internalValueChanging();
+		int oldValue = this.value;
+		this.value = value;
+
+		if (valueListeners != null) {
+			for (int i = 0; i < valueListeners.size(); i++) {
+				valueListeners.get(i).valueChanged(this, oldValue, value);
+			}
+		}
+
+		if (hasTreeNodeListeners(TreeEventType.VALUE_CHANGED)) {
+			fireNodeEvent(TreeEventType.VALUE_CHANGED, this, getParentNode(), getNodeIndex(), Integer.valueOf(oldValue));
+		}
+	}
+
+	/**
+	 * Returns the boxed value of this node. Use {@link #getIntValue()} to avoid 
+	 * boxing.
+	 */
+	@Override
+	public Integer getNodeValue() {
+		return Integer.valueOf(value);
+	}
+
+	/**
+	 * Sets the value of this node. Use {@link #setIntValue(int)} to avoid 
+	 * boxing.
+	 * 
+	 * @param value Must not be <code>null</code>
+	 */
+	@Override
+	public void setNodeValue(Integer value) {
+		setIntValue(value.intValue());
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param l
+	 */
+	public void addIntValueListener(IntValueListener<IntListTreeNode> l) {
+		if (valueListeners == null) {
+			valueListeners = new ArrayList<IntValueListener<IntListTreeNode>>(1);
+		}
+
+		if (! valueListeners.contains(l)) {
+			valueListeners.add(l);
+		}
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param l
+	 */
+	public void removeIntValueListener(IntValueListener<IntListTreeNode> l) {
+		if (valueListeners != null) {
+			valueListeners.remove(l);
+		}
+	}
+
+	@Override
+	public IntListTreeNode nodeFactory(Integer value) {
+		return new IntListTreeNode(value.intValue(), isArrayBacked());
+	}
+
+	@Override
+	public IntListTreeNode nodeFactory(IntListTreeNode node) {
+		return new IntListTreeNode(node.getIntValue(), node.isArrayBacked());
+	}
+
+	@Override
+	protected IntListTreeNode internalGetThis() {
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return Integer.toString(value);
+	}
+
+}
@@ -0,0 +1,171 @@
+/**
+ *    Copyright 2015 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.datatree.primitive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.thn.datatree.ListTreeNode;
+import ch.thn.datatree.TreeEventType;
+import ch.thn.datatree.TreeNodeListener;
+import ch.thn.datatree.core.GenericListTreeNode;
+
+/**
+ * A {@link ListTreeNode} with a <code>long</code> value. The value is stored 
+ * unboxed and can be read and changed without boxing with {@link #getLongValue()} 
+ * and {@link #setLongValue(long)}. Value changes are reported unboxed to 
+ * {@link LongValueListener}s.
+ * 
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class LongListTreeNode extends GenericListTreeNode<Long, LongListTreeNode> {
+
+	private long value = 0;
+
+	private List<LongValueListener<LongListTreeNode>> valueListeners = null;
+
+	/**
+	 * 
+	 * 
+	 * @param value
+	 */
+	public LongListTreeNode(long value) {
+		this(value, false);
+	}
+
+	/**
+	 * Creates a node which stores its children in an array backed list if 
+	 * <code>arrayBacked</code> is set (see {@link ListTreeNode#ListTreeNode(Object, boolean)}).
+	 * 
+	 * @param value
+	 * @param arrayBacked
+	 */
+	public LongListTreeNode(long value, boolean arrayBacked) {
+		super(null, arrayBacked);
+		this.value = value;
+	}
+
+	/**
+	 * Adds a new child node with the given value
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public LongListTreeNode addChildNode(long value) {
+		return addChildNode(new LongListTreeNode(value, isArrayBacked()));
+	}
+
+	/**
+	 * Returns the value of this node without boxing it
+	 * 
+	 * @return
+	 */
+	public long getLongValue() {
+		return value;
+	}
+
+	/**
+	 * Sets the value of this node. The value is only boxed if there are 
+	 * {@link TreeNodeListener}s registered on this node.
+	 * 
+	 * @param value
+	 */
+	public void setLongValue(long value) {
+		internalValueChanging();
+		long oldValue = this.value;
+		this.value = value;
+
+		if (valueListeners != null) {
+			for (int i = 0; i < valueListeners.size(); i++) {
+				valueListeners.get(i).valueChanged(this, oldValue, value);
+			}
+		}
+
+		if (hasTreeNodeListeners(TreeEventType.VALUE_CHANGED)) {
+			fireNodeEvent(TreeEventType.VALUE_CHANGED, this, getParentNode(), getNodeIndex(), Long.valueOf(oldValue));
+		}
+	}
+
+	/**
+	 * Returns the boxed value of this node. Use {@link #getLongValue()} to avoid 
+	 * boxing.
+	 */
+	@Override
+	public Long getNodeValue() {
+		return Long.valueOf(value);
+	}
+
+	/**
+	 * Sets the value of this node. Use {@link #setLongValue(long)} to avoid 
+	 * boxing.
+	 * 
+	 * @param value Must not be <code>null</code>
+	 */
+	@Override
+	public void setNodeValue(Long value) {
+		setLongValue(value.longValue());
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param l
+	 */
+	public void addLongValueListener(LongValueListener<LongListTreeNode> l) {
+		if (valueListeners == null) {
+			valueListeners = new ArrayList<LongValueListener<LongListTreeNode>>(1);
+		}
+
+		if (! valueListeners.contains(l)) {
+			valueListeners.add(l);
+		}
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param l
+	 */
+	public void removeLongValueListener(LongValueListener<LongListTreeNode> l) {
+		if (valueListeners != null) {
+			valueListeners.remove(l);
+		}
+	}
+
+	@Override
+	public LongListTreeNode nodeFactory(Long value) {
+		return new LongListTreeNode(value.longValue(), isArrayBacked());
+	}
+
+	@Override
+	public LongListTreeNode nodeFactory(LongListTreeNode node) {
+		return new LongListTreeNode(node.getLongValue(), node.isArrayBacked());
+	}
+
+	@Override
+	protected LongListTreeNode internalGetThis() {
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(value);
+	}
+
+}
@@ -4,11 +4,22 @@ import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
 import ch.thn.datatree.core.CollectionTreeNodeInterface;
+import ch.thn.datatree.core.TreeNodeError;
+import ch.thn.datatree.primitive.DoubleListTreeNode;
+import ch.thn.datatree.primitive.DoubleValueListener;
+import ch.thn.datatree.primitive.IntKeyListTreeNode;
+import ch.thn.datatree.primitive.IntValueListener;
 
 
 
@@ -59,6 +70,621 @@ public class EventTest {
 		
 	}
 	
+	@Test
+	public void testPrimitiveValueEvent() throws Exception {
+		
+		final List<String> changes = new ArrayList<String>();
+		
+		DoubleListTreeNode doubleNode = new DoubleListTreeNode(1.5);
+		DoubleListTreeNode doubleChild = doubleNode.addChildNode(2.5);
+		
+		doubleChild.addDoubleValueListener(new DoubleValueListener<DoubleListTreeNode>() {
+			
+			@Override
+			public void valueChanged(DoubleListTreeNode node, double oldValue, double newValue) {
+				changes.add(oldValue + "->" + newValue);
+			}
+		});
+		
+		doubleChild.setDoubleValue(3.5);
+		doubleChild.setNodeValue(4.5);
+		
+		assertThat(changes.toString(), is("[2.5->3.5, 3.5->4.5]"));
+		assertThat(doubleChild.getDoubleValue(), is(4.5));
+		assertThat(doubleChild.getNodeValue(), is(4.5));
+		assertThat(doubleNode.getChildNode(0).toString(), is("4.5"));
+		
+		//Copies keep the unboxed value
+		DoubleListTreeNode copy = DataTreeUtil.copyTree(doubleNode);
+		assertThat(copy.getChildNode(0).getDoubleValue(), is(4.5));
+		
+		//Boxed events for the tree node listeners
+		changes.clear();
+		IntKeyListTreeNode<String> intNode = new IntKeyListTreeNode<String>("root", 1);
+		IntKeyListTreeNode<String> intChild = intNode.addChildNode("child", 2);
+		
+		intChild.addIntValueListener(new IntValueListener<IntKeyListTreeNode<String>>() {
+			
+			@Override
+			public void valueChanged(IntKeyListTreeNode<String> node, int oldValue, int newValue) {
+				changes.add(node.getNodeKey() + ":" + oldValue + "->" + newValue);
+			}
+		});
+		
+		intChild.addTreeNodeListener(new TreeNodeListener<IntKeyListTreeNode<String>>() {
+			
+			@Override
+			public void removedFromTree(TreeNodeEvent<IntKeyListTreeNode<String>> e) {}
+			
+			@Override
+			public void nodeValueChanged(TreeNodeEvent<IntKeyListTreeNode<String>> e) {
+				changes.add("event:" + e.getOldValue() + "->" + e.getNode().getNodeValue());
+			}
+			
+			@Override
+			public void childNodeRemoved(TreeNodeEvent<IntKeyListTreeNode<String>> e) {}
+			
+			@Override
+			public void childNodeAdded(TreeNodeEvent<IntKeyListTreeNode<String>> e) {}
+			
+			@Override
+			public void addedToTree(TreeNodeEvent<IntKeyListTreeNode<String>> e) {}
+		});
+		
+		intChild.setIntValue(3);
+		
+		assertThat(changes.toString(), is("[child:2->3, event:2->3]"));
+		assertThat(intNode.getChildNode("child", 0).toString(), is("[child] 3"));
+		
+	}
+	
+	@Test
+	public void testListenerDispatch() throws Exception {
+		
+		final List<String> events = new ArrayList<String>();
+		
+		class RecordingListener implements TreeNodeListener<ListTreeNode<String>> {
+			private final String name;
+			RecordingListener(String name) { this.name = name; }
+			@Override
+			public void childNodeRemoved(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add(name + ":childRemoved=" + e.getNode());
+				//Removing the listener while the event is delivered
+				e.getSourceNode().removeTreeNodeListener(this);
+			}
+			@Override
+			public void childNodeAdded(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add(name + ":childAdded=" + e.getNode());
+			}
+			@Override
+			public void nodeValueChanged(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add(name + ":valueChanged=" + e.getNode());
+			}
+			@Override
+			public void addedToTree(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add(name + ":added=" + e.getNode());
+			}
+			@Override
+			public void removedFromTree(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add(name + ":removed=" + e.getNode());
+			}
+		}
+		
+		ListTreeNode<String> tree = new ListTreeNode<String>("Tree");
+		ListTreeNode<String> child = new ListTreeNode<String>("Child");
+		
+		RecordingListener listener1 = new RecordingListener("1");
+		tree.addTreeNodeListener(listener1);
+		tree.addTreeNodeListener(listener1);
+		tree.addTreeNodeListener(new RecordingListener("2"));
+		child.addTreeNodeListener(new RecordingListener("c"));
+		
+		//The added node is notified once, no matter how many listeners the parent node has
+		tree.addChildNode(child);
+		assertThat(events.toString(), is("[1:childAdded=Child, 2:childAdded=Child, c:added=Child]"));
+		
+		//Both listeners remove themselves while the event is delivered
+		events.clear();
+		tree.removeChildNode(child);
+		assertThat(events.toString(), is("[1:childRemoved=Child, 2:childRemoved=Child, c:removed=Child]"));
+		
+		events.clear();
+		tree.setNodeValue("Changed");
+		tree.addChildNode(child);
+		assertThat(events.toString(), is("[c:added=Child]"));
+		
+	}
+	
+	@Test
+	public void testSubtreeListener() throws Exception {
+		
+		final List<String> events = new ArrayList<String>();
+		
+		TreeNodeListener<ListTreeNode<String>> listener = new TreeNodeListener<ListTreeNode<String>>() {
+			@Override
+			public void childNodeRemoved(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add(e.getSourceNode() + ":childRemoved=" + e.getNode());
+			}
+			@Override
+			public void childNodeAdded(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add(e.getSourceNode() + ":childAdded=" + e.getNode());
+			}
+			@Override
+			public void nodeValueChanged(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add(e.getSourceNode() + ":valueChanged=" + e.getOldValue());
+			}
+			@Override
+			public void addedToTree(TreeNodeEvent<ListTreeNode<String>> e) {}
+			@Override
+			public void removedFromTree(TreeNodeEvent<ListTreeNode<String>> e) {}
+		};
+		
+		ListTreeNode<String> tree = new ListTreeNode<String>("Tree");
+		TreeTest.buildValueTree(tree);
+		
+		ListTreeNode<String> child2 = tree.getChildNode(1);
+		child2.addSubtreeListener(listener);
+		
+		//Events of the node itself and of all descendants, also of new nodes
+		child2.setNodeValue("Child 2 changed");
+		ListTreeNode<String> newNode = child2.getChildNode(1).getChildNode(1).addChildNode("New");
+		newNode.addChildNode("New child");
+		newNode.removeNode();
+		
+		//Not in the sub tree
+		tree.getChildNode(0).addChildNode("Outside");
+		tree.setNodeValue("Tree changed");
+		
+		assertThat(events.toString(), is("[Child 2 changed:valueChanged=Child 2, " 
+				+ "Child 2.2.2:childAdded=New, New:childAdded=New child, Child 2.2.2:childRemoved=New]"));
+		
+		//Registered on the root node, a listener sees the whole tree
+		events.clear();
+		child2.removeSubtreeListener(listener);
+		tree.addSubtreeListener(listener);
+		child2.getChildNode(0).setNodeValue("Deep change");
+		child2.addChildNode("Another node");
+		
+		assertThat(events.toString(), is("[Deep change:valueChanged=Child 2.1, Child 2 changed:childAdded=Another node]"));
+		
+		tree.removeSubtreeListener(listener);
+		events.clear();
+		child2.addChildNode("Not notified");
+		assertTrue(events.isEmpty());
+		
+		//A sub tree which is moved gets the listeners of its new ancestors only
+		ListTreeNode<String> child1 = tree.getChildNode(0);
+		child1.addSubtreeListener(listener);
+		ListTreeNode<String> moved = child2.getChildNode(1);
+		moved.removeNode();
+		moved.getChildNode(0).setNodeValue("Detached");
+		child1.addChildNode(moved);
+		moved.getChildNode(0).setNodeValue("Moved");
+		moved.removeNode();
+		moved.getChildNode(0).setNodeValue("Detached again");
+		
+		assertThat(events.toString(), is("[Child 1:childAdded=Child 2.2, Moved:valueChanged=Detached, " 
+				+ "Child 1:childRemoved=Child 2.2]"));
+		
+	}
+	
+	@Test
+	public void testBatch() throws Exception {
+		
+		final List<String> batches = new ArrayList<String>();
+		final List<String> events = new ArrayList<String>();
+		
+		BatchTreeNodeListener<ListTreeNode<String>> batchListener = new BatchTreeNodeListener<ListTreeNode<String>>() {
+			@Override
+			public void batchCommitted(TreeNodeBatchEvent<ListTreeNode<String>> e) {
+				batches.add(e.getIndexRanges() + " added=" + e.getAddedNodes() + " removed=" + e.getRemovedNodes());
+			}
+			@Override
+			public void childNodeRemoved(TreeNodeEvent<ListTreeNode<String>> e) {
+				batches.add("childRemoved=" + e.getNode());
+			}
+			@Override
+			public void childNodeAdded(TreeNodeEvent<ListTreeNode<String>> e) {
+				batches.add("childAdded=" + e.getNode());
+			}
+			@Override
+			public void nodeValueChanged(TreeNodeEvent<ListTreeNode<String>> e) {}
+			@Override
+			public void addedToTree(TreeNodeEvent<ListTreeNode<String>> e) {}
+			@Override
+			public void removedFromTree(TreeNodeEvent<ListTreeNode<String>> e) {}
+		};
+		
+		TreeNodeListener<ListTreeNode<String>> listener = new TreeNodeListener<ListTreeNode<String>>() {
+			@Override
+			public void childNodeRemoved(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add("childRemoved=" + e.getNode() + "@" + e.getNodeIndex());
+			}
+			@Override
+			public void childNodeAdded(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add("childAdded=" + e.getNode() + "@" + e.getNodeIndex());
+			}
+			@Override
+			public void nodeValueChanged(TreeNodeEvent<ListTreeNode<String>> e) {}
+			@Override
+			public void addedToTree(TreeNodeEvent<ListTreeNode<String>> e) {}
+			@Override
+			public void removedFromTree(TreeNodeEvent<ListTreeNode<String>> e) {}
+		};
+		
+		ListTreeNode<String> tree = new ListTreeNode<String>("Tree");
+		tree.addTreeNodeListener(batchListener);
+		tree.addTreeNodeListener(listener);
+		
+		tree.beginBatch();
+		tree.addChildNode("A");
+		tree.addChildNode("B");
+		
+		//Nested batch
+		tree.beginBatch();
+		tree.addChildNode("C");
+		tree.addChildNode("D");
+		tree.commit();
+		
+		assertTrue(tree.isInBatch());
+		assertTrue(batches.isEmpty());
+		assertTrue(events.isEmpty());
+		
+		tree.removeChildNode(3);
+		tree.removeChildNode(2);
+		tree.removeChildNode(0);
+		tree.commit();
+		
+		assertFalse(tree.isInBatch());
+		assertThat(batches.toString(), is("[[+[0..3], -[2..3], -[0..0]] added=[A, B, C, D] removed=[D, C, A]]"));
+		assertThat(events.toString(), is("[childAdded=A@0, childAdded=B@1, childAdded=C@2, childAdded=D@3, " 
+				+ "childRemoved=D@3, childRemoved=C@2, childRemoved=A@0]"));
+		
+		//Without a batch, every change is delivered right away
+		batches.clear();
+		tree.addChildNode("E");
+		assertThat(batches.toString(), is("[childAdded=E]"));
+		
+		//A batch listener only receives the changes it is registered for
+		ListTreeNode<String> added = new ListTreeNode<String>("Added");
+		added.addTreeNodeListener(batchListener, EnumSet.of(TreeEventType.CHILD_ADDED));
+		batches.clear();
+		added.beginBatch();
+		added.addChildNode("X");
+		added.addChildNode("Y");
+		added.removeChildNode(0);
+		added.commit();
+		assertThat(batches.toString(), is("[[+[0..1]] added=[X, Y] removed=[]]"));
+		
+		batches.clear();
+		added.beginBatch();
+		added.removeChildNode(0);
+		added.commit();
+		assertTrue(batches.isEmpty());
+		
+		try {
+			tree.commit();
+			fail("Commit without batch");
+		} catch (TreeNodeError e) {
+			//Expected
+		}
+		
+	}
+	
+	@Test
+	public void testEventMask() throws Exception {
+		
+		final List<String> events = new ArrayList<String>();
+		
+		TreeNodeListener<ListTreeNode<String>> listener = new TreeNodeListener<ListTreeNode<String>>() {
+			@Override
+			public void childNodeRemoved(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add("childRemoved=" + e.getNode());
+			}
+			@Override
+			public void childNodeAdded(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add("childAdded=" + e.getNode());
+			}
+			@Override
+			public void nodeValueChanged(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add("valueChanged=" + e.getOldValue());
+			}
+			@Override
+			public void addedToTree(TreeNodeEvent<ListTreeNode<String>> e) {}
+			@Override
+			public void removedFromTree(TreeNodeEvent<ListTreeNode<String>> e) {}
+		};
+		
+		ListTreeNode<String> tree = new ListTreeNode<String>("Tree");
+		tree.addTreeNodeListener(listener, EnumSet.of(TreeEventType.VALUE_CHANGED));
+		
+		tree.addChildNode("A").removeNode();
+		tree.setNodeValue("Tree changed");
+		assertThat(events.toString(), is("[valueChanged=Tree]"));
+		
+		//Registering again changes the event types
+		events.clear();
+		tree.addTreeNodeListener(listener, EnumSet.of(TreeEventType.CHILD_ADDED));
+		tree.addChildNode("B");
+		tree.setNodeValue("Tree");
+		assertThat(events.toString(), is("[childAdded=B]"));
+		
+		//Removed with the original listener
+		events.clear();
+		tree.removeTreeNodeListener(listener);
+		tree.addChildNode("C");
+		assertTrue(events.isEmpty());
+		
+		//Sub tree listener
+		tree.addSubtreeListener(listener, EnumSet.of(TreeEventType.CHILD_REMOVED));
+		tree.getChildNode(0).addChildNode("B1").removeNode();
+		tree.getChildNode(0).setNodeValue("B changed");
+		assertThat(events.toString(), is("[childRemoved=B1]"));
+		tree.removeSubtreeListener(listener);
+		
+		//Registered for all types first, then only for value changes
+		events.clear();
+		tree.addTreeNodeListener(listener);
+		tree.addTreeNodeListener(listener, EnumSet.of(TreeEventType.VALUE_CHANGED));
+		tree.addChildNode("D");
+		tree.setNodeValue("Tree changed again");
+		assertThat(events.toString(), is("[valueChanged=Tree]"));
+		
+		events.clear();
+		tree.removeTreeNodeListener(listener);
+		tree.setNodeValue("Tree");
+		assertTrue(events.isEmpty());
+		
+		tree.addSubtreeListener(listener);
+		tree.addSubtreeListener(listener, EnumSet.of(TreeEventType.VALUE_CHANGED));
+		tree.getChildNode(0).setNodeValue("B");
+		assertThat(events.toString(), is("[valueChanged=B changed]"));
+		
+		events.clear();
+		tree.removeSubtreeListener(listener);
+		tree.getChildNode(0).setNodeValue("B changed");
+		assertTrue(events.isEmpty());
+		
+	}
+	
+	@Test
+	public void testAsyncListener() throws Exception {
+		
+		final List<String> events = new ArrayList<String>();
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		
+		TreeNodeListener<ListTreeNode<String>> listener = new TreeNodeListener<ListTreeNode<String>>() {
+			@Override
+			public void childNodeRemoved(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add("childRemoved=" + e.getNode());
+			}
+			@Override
+			public void childNodeAdded(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add("childAdded=" + e.getNode());
+			}
+			@Override
+			public void nodeValueChanged(TreeNodeEvent<ListTreeNode<String>> e) {
+				events.add("valueChanged=" + e.getOldValue());
+			}
+			@Override
+			public void addedToTree(TreeNodeEvent<ListTreeNode<String>> e) {}
+			@Override
+			public void removedFromTree(TreeNodeEvent<ListTreeNode<String>> e) {}
+		};
+		
+		//Runs the tasks only when the test says so
+		Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				tasks.add(command);
+			}
+		};
+		
+		AsyncTreeNodeListener<ListTreeNode<String>> async = new AsyncTreeNodeListener<ListTreeNode<String>>(
+				listener, executor, 3, AsyncTreeNodeListener.OverflowPolicy.DISCARD_NEWEST);
+		
+		ListTreeNode<String> tree = new ListTreeNode<String>("Tree");
+		tree.addSubtreeListener(async, EnumSet.of(TreeEventType.CHILD_ADDED, TreeEventType.VALUE_CHANGED));
+		
+		ListTreeNode<String> a = tree.addChildNode("A");
+		a.addChildNode("A1");
+		a.setNodeValue("A changed");
+		tree.addChildNode("B");
+		
+		//Nothing delivered yet, one drain task and the last event discarded
+		assertTrue(events.isEmpty());
+		assertThat(tasks.size(), is(1));
+		assertThat(async.getQueuedEventCount(), is(3));
+		assertThat(async.getDiscardedEventCount(), is(1L));
+		
+		//The node has been changed before the event has been delivered
+		tasks.remove(0).run();
+		assertThat(events.toString(), is("[childAdded=A changed, childAdded=A1, valueChanged=A]"));
+		assertTrue(async.awaitDelivery(0, TimeUnit.SECONDS));
+		
+		//Delivered in order on another thread
+		events.clear();
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		async = new AsyncTreeNodeListener<ListTreeNode<String>>(
+				listener, executorService, 10, AsyncTreeNodeListener.OverflowPolicy.BLOCK);
+		tree.addSubtreeListener(async);
+		
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 100; i++) {
+			tree.addChildNode("Node " + i);
+			expected.add("childAdded=Node " + i);
+		}
+		
+		assertTrue(async.awaitDelivery(10, TimeUnit.SECONDS));
+		executorService.shutdown();
+		
+		assertThat(events, is(expected));
+		assertThat(async.getDiscardedEventCount(), is(0L));
+		
+		//The listener fails and the executor rejects the next drain task
+		events.clear();
+		tasks.clear();
+		final boolean[] rejecting = new boolean[] {false};
+		executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				if (rejecting[0]) {
+					throw new RejectedExecutionException();
+				}
+				
+				tasks.add(command);
+			}
+		};
+		
+		TreeNodeListener<ListTreeNode<String>> failingListener = new TreeNodeListener<ListTreeNode<String>>() {
+			@Override
+			public void childNodeRemoved(TreeNodeEvent<ListTreeNode<String>> e) {}
+			@Override
+			public void childNodeAdded(TreeNodeEvent<ListTreeNode<String>> e) {
+				if (e.getNode().getNodeValue().equals("Bad")) {
+					throw new IllegalStateException("Listener failed");
+				}
+				
+				events.add("childAdded=" + e.getNode());
+			}
+			@Override
+			public void nodeValueChanged(TreeNodeEvent<ListTreeNode<String>> e) {}
+			@Override
+			public void addedToTree(TreeNodeEvent<ListTreeNode<String>> e) {}
+			@Override
+			public void removedFromTree(TreeNodeEvent<ListTreeNode<String>> e) {}
+		};
+		
+		ListTreeNode<String> other = new ListTreeNode<String>("Other");
+		async = new AsyncTreeNodeListener<ListTreeNode<String>>(
+				failingListener, executor, 5, AsyncTreeNodeListener.OverflowPolicy.BLOCK);
+		other.addTreeNodeListener(async);
+		other.addChildNode("Bad");
+		other.addChildNode("Good");
+		
+		rejecting[0] = true;
+		try {
+			tasks.remove(0).run();
+			fail("Listener exception not passed on");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is("Listener failed"));
+		}
+		
+		assertTrue(async.awaitDelivery(0, TimeUnit.SECONDS));
+		assertThat(async.getQueuedEventCount(), is(1));
+		
+		//The next event submits a new drain task
+		rejecting[0] = false;
+		other.addChildNode("Next");
+		tasks.remove(0).run();
+		assertThat(events.toString(), is("[childAdded=Good, childAdded=Next]"));
+		
+		//A rejected drain task does not fail the tree modification. The events 
+		//stay queued, or are delivered by the firing thread with BLOCK.
+		events.clear();
+		rejecting[0] = true;
+		async = new AsyncTreeNodeListener<ListTreeNode<String>>(
+				failingListener, executor, 5, AsyncTreeNodeListener.OverflowPolicy.DISCARD_NEWEST);
+		other = new ListTreeNode<String>("Other");
+		other.addTreeNodeListener(async);
+		other.addChildNode("Queued");
+		assertThat(async.getQueuedEventCount(), is(1));
+		assertTrue(events.isEmpty());
+		
+		rejecting[0] = false;
+		other.addChildNode("Submitted");
+		tasks.remove(0).run();
+		assertThat(events.toString(), is("[childAdded=Queued, childAdded=Submitted]"));
+		
+		events.clear();
+		rejecting[0] = true;
+		async = new AsyncTreeNodeListener<ListTreeNode<String>>(
+				failingListener, executor, 5, AsyncTreeNodeListener.OverflowPolicy.BLOCK);
+		other.addTreeNodeListener(async);
+		other.addChildNode("Delivered");
+		assertThat(events.toString(), is("[childAdded=Delivered]"));
+		assertThat(async.getQueuedEventCount(), is(0));
+		
+	}
+	
+	@Test
+	public void testPublisher() throws Exception {
+		
+		/**
+		 * Records the events, requests the given number of events when subscribed
+		 */
+		class RecordingSubscriber implements TreeEventPublisher.Subscriber<TreeNodeEvent<ListTreeNode<String>>> {
+			private final long initialRequest;
+			private final List<String> events = new ArrayList<String>();
+			private TreeEventPublisher.Subscription subscription = null;
+			
+			public RecordingSubscriber(long initialRequest) {
+				this.initialRequest = initialRequest;
+			}
+			@Override
+			public void onSubscribe(TreeEventPublisher.Subscription subscription) {
+				this.subscription = subscription;
+				subscription.request(initialRequest);
+			}
+			@Override
+			public void onNext(TreeNodeEvent<ListTreeNode<String>> item) {
+				events.add(item.getEventType() + "=" 
+						+ (item.getEventType() == TreeEventType.VALUE_CHANGED ? item.getOldValue() : item.getNode()));
+			}
+			@Override
+			public void onError(Throwable throwable) {
+				events.add("error=" + throwable.getClass().getSimpleName());
+			}
+			@Override
+			public void onComplete() {
+				events.add("complete");
+			}
+		}
+		
+		ListTreeNode<String> tree = new ListTreeNode<String>("Tree");
+		TreeEventPublisher<ListTreeNode<String>> publisher = new TreeEventPublisher<ListTreeNode<String>>(tree, 
+				EnumSet.of(TreeEventType.CHILD_ADDED, TreeEventType.VALUE_CHANGED), 
+				2, TreeEventPublisher.OverflowStrategy.COALESCE);
+		
+		RecordingSubscriber slow = new RecordingSubscriber(1);
+		RecordingSubscriber fast = new RecordingSubscriber(Long.MAX_VALUE);
+		publisher.subscribe(slow);
+		publisher.subscribe(fast);
+		assertThat(publisher.getSubscriberCount(), is(2));
+		
+		ListTreeNode<String> a = tree.addChildNode("A");
+		a.setNodeValue("A1");
+		a.setNodeValue("A2");
+		//Buffer full -> the oldest event is dropped
+		tree.addChildNode("B");
+		//Replaces the buffered value change of A
+		a.setNodeValue("A3");
+		
+		assertThat(slow.events.toString(), is("[CHILD_ADDED=A]"));
+		
+		//All buffered events with one request
+		slow.subscription.request(5);
+		assertThat(slow.events.toString(), is("[CHILD_ADDED=A, CHILD_ADDED=B, VALUE_CHANGED=A2]"));
+		assertThat(fast.events.toString(), 
+				is("[CHILD_ADDED=A, VALUE_CHANGED=A, VALUE_CHANGED=A1, CHILD_ADDED=B, VALUE_CHANGED=A2]"));
+		
+		//Invalid request
+		RecordingSubscriber invalid = new RecordingSubscriber(0);
+		publisher.subscribe(invalid);
+		assertThat(invalid.events.toString(), is("[error=IllegalArgumentException]"));
+		
+		publisher.close();
+		tree.addChildNode("C");
+		assertThat(slow.events.toString(), is("[CHILD_ADDED=A, CHILD_ADDED=B, VALUE_CHANGED=A2, complete]"));
+		assertThat(fast.events.size(), is(6));
+		assertThat(publisher.getSubscriberCount(), is(0));
+		
+		RecordingSubscriber late = new RecordingSubscriber(1);
+		publisher.subscribe(late);
+		assertThat(late.events.toString(), is("[complete]"));
+		
+	}
+	
 	@Test
 	public void testRemoveEvent() throws Exception {
 		
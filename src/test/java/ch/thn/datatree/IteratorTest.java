@@ -0,0 +1,430 @@
+package ch.thn.datatree;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import ch.thn.datatree.DataTreeUtil.TreeNodeProcessor;
+import ch.thn.datatree.TreeVisitor.VisitResult;
+import ch.thn.datatree.core.CollectionTreeNodeInterface;
+
+
+
+/**
+ * 
+ * 
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class IteratorTest {
+	
+	
+	@Test
+	public void splitIterator() throws Exception {
+		
+		System.out.println("\n ================= Split iterator =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		SetTreeNode<String> setNode = new SetTreeNode<String>("Tree");
+		
+		TreeTest.buildValueTree(listNode);
+		TreeTest.buildValueTree(setNode);
+		
+		List<String> reference = buildIterationList(listNode.iterator());
+		
+		//Not split -> same order as the tree iterator
+		assertThat(buildIterationList(listNode.splitIterator()), is(reference));
+		
+		for (CollectionTreeNodeInterface<String, ?> node : new CollectionTreeNodeInterface[] {listNode, setNode}) {
+			List<TreeSplitIterator<?>> parts = new ArrayList<TreeSplitIterator<?>>();
+			parts.add(node.splitIterator());
+			
+			for (int i = 0; i < parts.size() && parts.size() < 6; i++) {
+				TreeSplitIterator<?> part = parts.get(i).trySplit();
+				if (part != null) {
+					parts.add(part);
+					i--;
+				}
+			}
+			
+			List<String> splitList = new ArrayList<String>();
+			for (TreeSplitIterator<?> part : parts) {
+				List<String> partList = buildIterationList(part);
+				System.out.println(partList);
+				splitList.addAll(partList);
+			}
+			
+			//Every node is returned exactly once
+			assertThat(parts.size(), is(6));
+			Collections.sort(splitList);
+			List<String> sortedReference = new ArrayList<String>(reference);
+			Collections.sort(sortedReference);
+			assertThat(splitList, is(sortedReference));
+		}
+		
+		//With known sub tree sizes, the split halves the nodes instead of the branches
+		ListTreeNode<String> unbalanced = new ListTreeNode<String>("Root");
+		unbalanced.addChildNode("A");
+		unbalanced.addChildNode("B");
+		unbalanced.addChildNode("C");
+		ListTreeNode<String> big = unbalanced.addChildNode("D");
+		for (int i = 1; i <= 4; i++) {
+			big.addChildNode("D." + i);
+		}
+		
+		assertThat(unbalanced.getSubtreeSize(), is(9));
+		TreeSplitIterator<ListTreeNode<String>> iterator = unbalanced.splitIterator();
+		assertThat(buildIterationList(iterator.trySplit()).toString(), is("[D, D.1, D.2, D.3, D.4]"));
+		assertThat(buildIterationList(iterator).toString(), is("[Root, A, B, C]"));
+		
+	}
+	
+	@Test
+	public void processParallel() throws Exception {
+		
+		System.out.println("\n ================= Parallel processing =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		TreeTest.buildValueTree(listNode);
+		
+		final List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		
+		try {
+			DataTreeUtil.processParallel(listNode, new TreeNodeProcessor<ListTreeNode<String>>() {
+	
+				@Override
+				public void process(ListTreeNode<String> node) {
+					processed.add(node.getNodeValue());
+				}
+			}, executor, 4);
+		} finally {
+			executor.shutdown();
+		}
+		
+		List<String> reference = buildIterationList(listNode.iterator());
+		Collections.sort(reference);
+		Collections.sort(processed);
+		
+		assertThat(processed, is(reference));
+		
+	}
+	
+	
+	@Test
+	public void postOrderIterator() throws Exception {
+		
+		System.out.println("\n ================= Post-order iterator =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		SetTreeNode<String> setNode = new SetTreeNode<String>("Tree");
+		
+		TreeTest.buildValueTree(listNode);
+		TreeTest.buildValueTree(setNode);
+		
+		List<String> reference = Arrays.asList("Child 1.1", "Child 1.2", "Child 1", 
+				"Child 2.1", "Child 2.2.1", "Child 2.2.2.1", "Child 2.2.2", "Child 2.2", 
+				"Child 2.3", "Child 2.4.1", "Child 2.4", "Child 2", 
+				"Child 3.1", "Child 3.2", "Child 3", "Child 4.2", "Child 4.1", "Child 4", "Tree");
+		
+		assertThat(buildIterationList(listNode.postOrderIterator(true)), is(reference));
+		assertThat(buildIterationList(setNode.postOrderIterator(false)), is(reference));
+		
+		ListTreeNode<String> listStart = findNode(listNode.iterator(), "Child 2.2");
+		SetTreeNode<String> setStart = findNode(setNode.iterator(), "Child 2.2");
+		
+		assertThat(buildIterationList(listStart.postOrderIterator(true)), 
+				is(reference.subList(4, 8)));
+		assertThat(buildIterationList(setStart.postOrderIterator(true)), 
+				is(reference.subList(4, 8)));
+		
+		//Continues with the rest of the tree
+		assertThat(buildIterationList(listStart.postOrderIterator(false)), 
+				is(reference.subList(4, reference.size())));
+		assertThat(buildIterationList(setStart.postOrderIterator(false)), 
+				is(reference.subList(4, reference.size())));
+		
+	}
+	
+	@Test
+	public void breadthFirstIterator() throws Exception {
+		
+		System.out.println("\n ================= Breadth first iterator =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		SetTreeNode<String> setNode = new SetTreeNode<String>("Tree");
+		
+		TreeTest.buildValueTree(listNode);
+		TreeTest.buildValueTree(setNode);
+		
+		List<String> reference = Arrays.asList("Tree", 
+				"Child 1", "Child 2", "Child 3", "Child 4", 
+				"Child 1.1", "Child 1.2", "Child 2.1", "Child 2.2", "Child 2.3", "Child 2.4", 
+				"Child 3.1", "Child 3.2", "Child 4.1", 
+				"Child 2.2.1", "Child 2.2.2", "Child 2.4.1", "Child 4.2", 
+				"Child 2.2.2.1");
+		
+		assertThat(buildIterationList(listNode.breadthFirstIterator(true)), is(reference));
+		assertThat(buildIterationList(setNode.breadthFirstIterator(false)), is(reference));
+		
+		ListTreeNode<String> listStart = findNode(listNode.iterator(), "Child 2.2");
+		SetTreeNode<String> setStart = findNode(setNode.iterator(), "Child 2.2");
+		
+		List<String> subtreeReference = Arrays.asList("Child 2.2", "Child 2.2.1", 
+				"Child 2.2.2", "Child 2.2.2.1");
+		
+		assertThat(buildIterationList(listStart.breadthFirstIterator(true)), is(subtreeReference));
+		assertThat(buildIterationList(setStart.breadthFirstIterator(true)), is(subtreeReference));
+		
+		//Continues with the rest of the tree
+		assertThat(buildIterationList(listStart.breadthFirstIterator(false)), 
+				is(reference.subList(8, reference.size())));
+		assertThat(buildIterationList(setStart.breadthFirstIterator(false)), 
+				is(reference.subList(8, reference.size())));
+		
+	}
+	
+	
+	@Test
+	public void setTreeIterationFromNode() throws Exception {
+		
+		System.out.println("\n ================= Set tree iteration from node =====================\n");
+		
+		SetTreeNode<String> setNode = new SetTreeNode<String>("Tree");
+		KeySetTreeNode<String, String> keySetNode = new KeySetTreeNode<String, String>("tree", "Tree");
+		
+		TreeTest.buildValueTree(setNode);
+		TreeTest.buildKeyValueTree(keySetNode);
+		
+		List<String> referenceRest = Arrays.asList("Child 2.2", "Child 2.2.1", 
+				"Child 2.2.2", "Child 2.2.2.1", "Child 2.3", "Child 2.4", "Child 2.4.1", 
+				"Child 3", "Child 3.1", "Child 3.2", "Child 4", "Child 4.1", "Child 4.2");
+		List<String> referenceSubtree = referenceRest.subList(0, 4);
+		
+		SetTreeNode<String> setStart = findNode(setNode.iterator(), "Child 2.2");
+		KeySetTreeNode<String, String> keySetStart = findNode(keySetNode.iterator(), "Child 2.2");
+		
+		assertThat(buildIterationList(setStart.iterator(true)), is(referenceSubtree));
+		assertThat(buildIterationList(keySetStart.iterator(true)), is(referenceSubtree));
+		
+		assertThat(buildIterationList(setStart.iterator(false)), is(referenceRest));
+		assertThat(buildIterationList(keySetStart.iterator(false)), is(referenceRest));
+		
+		//Reaching the end does not start over
+		TreeIterator<SetTreeNode<String>> iterator = setStart.iterator(false);
+		buildIterationList(iterator);
+		assertFalse(iterator.hasNext());
+		
+	}
+	
+	
+	@Test
+	public void listIteratorBackward() throws Exception {
+		
+		System.out.println("\n ================= List iterator backward =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		ListTreeNode<String> arrayNode = new ListTreeNode<String>("Tree", true);
+		
+		TreeTest.buildValueTree(listNode);
+		TreeTest.buildValueTree(arrayNode);
+		
+		List<String> reference = buildIterationList(listNode.listIterator());
+		Collections.reverse(reference);
+		
+		for (ListTreeNode<String> node : Arrays.asList(listNode, arrayNode)) {
+			ListTreeNode<String> lastNode = findNode(node.iterator(), "Child 4.2");
+			
+			ListTreeIterator<ListTreeNode<String>> iterator = lastNode.listIterator(false);
+			List<String> backward = new ArrayList<String>();
+			while (iterator.hasPrevious()) {
+				backward.add(iterator.previous().getNodeValue());
+			}
+			
+			assertThat(backward, is(reference));
+			assertNull(iterator.peekPrevious());
+			
+			//And forward again through the whole tree
+			List<String> forward = buildIterationList(iterator);
+			Collections.reverse(forward);
+			assertThat(forward, is(reference));
+			
+			//Changing the direction returns the same node
+			ListTreeNode<String> start = findNode(node.iterator(), "Child 2.2");
+			iterator = start.listIterator(false);
+			assertThat(iterator.next().getNodeValue(), is("Child 2.2"));
+			assertThat(iterator.next().getNodeValue(), is("Child 2.2.1"));
+			assertThat(iterator.previous().getNodeValue(), is("Child 2.2.1"));
+			assertThat(iterator.previous().getNodeValue(), is("Child 2.2"));
+			assertThat(iterator.previous().getNodeValue(), is("Child 2.1"));
+			assertThat(iterator.peekPrevious().getNodeValue(), is("Child 2"));
+			assertThat(iterator.next().getNodeValue(), is("Child 2.1"));
+			assertThat(iterator.peekNext().getNodeValue(), is("Child 2.2"));
+			
+			//Sub tree only
+			iterator = findNode(node.iterator(), "Child 2.2.2.1").listIterator(true);
+			assertThat(iterator.previous().getNodeValue(), is("Child 2.2.2.1"));
+			assertFalse(iterator.hasPrevious());
+			assertThat(iterator.next().getNodeValue(), is("Child 2.2.2.1"));
+			assertFalse(iterator.hasNext());
+			
+			iterator = findNode(node.iterator(), "Child 2").listIterator(true);
+			List<String> subtree = buildIterationList(iterator);
+			backward = new ArrayList<String>();
+			while (iterator.hasPrevious()) {
+				backward.add(iterator.previous().getNodeValue());
+			}
+			Collections.reverse(backward);
+			assertThat(backward, is(subtree));
+		}
+		
+		//Removing while iterating backward
+		ListTreeIterator<ListTreeNode<String>> iterator = findNode(listNode.iterator(), "Child 3").listIterator(false);
+		assertThat(iterator.previous().getNodeValue(), is("Child 3"));
+		assertThat(iterator.previous().getNodeValue(), is("Child 2.4.1"));
+		iterator.remove();
+		assertThat(iterator.previous().getNodeValue(), is("Child 2.4"));
+		assertTrue(findNode(listNode.getChildNode(1).getChildNode(3).iterator(), "Child 2.4.1") == null);
+		
+		//The root node and the start node of a sub tree can not be removed
+		iterator = listNode.listIterator(false);
+		iterator.next();
+		try {
+			iterator.remove();
+			fail("Removed the root node");
+		} catch (UnsupportedOperationException e) {
+			//Expected
+		}
+		assertThat(iterator.next().getNodeValue(), is("Child 1"));
+		
+		ListTreeNode<String> child2 = listNode.getChildNode(1);
+		iterator = child2.listIterator(true);
+		iterator.next();
+		try {
+			iterator.remove();
+			fail("Removed the start node");
+		} catch (UnsupportedOperationException e) {
+			//Expected
+		}
+		assertTrue(child2.getParentNode() == listNode);
+		assertTrue(iterator.hasNext());
+		assertThat(iterator.next().getNodeValue(), is("Child 2.1"));
+		
+	}
+	
+	
+	@Test
+	public void visitor() throws Exception {
+		
+		System.out.println("\n ================= Visitor =====================\n");
+		
+		SetTreeNode<String> setNode = new SetTreeNode<String>("Tree");
+		TreeTest.buildValueTree(setNode);
+		
+		final List<String> visited = new ArrayList<String>();
+		
+		//Skip the sub tree of "Child 2", the siblings of "Child 1.1" and stop at "Child 3.1"
+		boolean completed = setNode.accept(new TreeVisitor<SetTreeNode<String>>() {
+			
+			@Override
+			public VisitResult enterNode(SetTreeNode<String> node) {
+				visited.add("+" + node.getNodeValue());
+				
+				if (node.getNodeValue().equals("Child 2")) {
+					return VisitResult.SKIP_SUBTREE;
+				} else if (node.getNodeValue().equals("Child 3.1")) {
+					return VisitResult.TERMINATE;
+				}
+				
+				return VisitResult.CONTINUE;
+			}
+			
+			@Override
+			public VisitResult leaveNode(SetTreeNode<String> node) {
+				visited.add("-" + node.getNodeValue());
+				
+				if (node.getNodeValue().equals("Child 1.1")) {
+					return VisitResult.SKIP_SIBLINGS;
+				}
+				
+				return VisitResult.CONTINUE;
+			}
+		});
+		
+		System.out.println(visited);
+		
+		assertFalse(completed);
+		assertThat(visited, is(Arrays.asList("+Tree", "+Child 1", "+Child 1.1", "-Child 1.1", 
+				"-Child 1", "+Child 2", "+Child 3", "+Child 3.1")));
+		
+		//A complete walk visits every node twice
+		visited.clear();
+		completed = setNode.getChildNodes().iterator().next().accept(new TreeVisitor<SetTreeNode<String>>() {
+			
+			@Override
+			public VisitResult enterNode(SetTreeNode<String> node) {
+				visited.add("+" + node.getNodeValue());
+				return VisitResult.CONTINUE;
+			}
+			
+			@Override
+			public VisitResult leaveNode(SetTreeNode<String> node) {
+				visited.add("-" + node.getNodeValue());
+				return VisitResult.CONTINUE;
+			}
+		});
+		
+		assertTrue(completed);
+		assertThat(visited, is(Arrays.asList("+Child 1", "+Child 1.1", "-Child 1.1", 
+				"+Child 1.2", "-Child 1.2", "-Child 1")));
+		
+	}
+	
+	
+	/**
+	 * 
+	 * 
+	 * @param iterator
+	 * @param value
+	 * @return
+	 */
+	public static <N extends CollectionTreeNodeInterface<String, N>> N findNode(Iterator<N> iterator, String value) {
+		while (iterator.hasNext()) {
+			N node = iterator.next();
+			if (value.equals(node.getNodeValue())) {
+				return node;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param iterator
+	 * @return
+	 */
+	@SuppressWarnings("rawtypes")
+	public static List<String> buildIterationList(Iterator iterator) {
+		List<String> list = new ArrayList<String>();
+		
+		while (iterator.hasNext()) {
+			list.add(String.valueOf(((CollectionTreeNodeInterface)iterator.next()).getNodeValue()));
+		}
+		
+		return list;
+	}
+	
+
+}
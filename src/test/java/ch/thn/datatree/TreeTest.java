@@ -4,13 +4,29 @@ import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
+import ch.thn.datatree.TreeVisitor.VisitResult;
+import ch.thn.datatree.concurrent.ConcurrentListTreeNode;
+import ch.thn.datatree.concurrent.StripedTreeLock;
 import ch.thn.datatree.core.CollectionTreeNodeInterface;
 import ch.thn.datatree.core.ListTreeNodeInterface;
 import ch.thn.datatree.core.MapTreeNodeInterface;
+import ch.thn.datatree.core.TreeNodeError;
+import ch.thn.datatree.frozen.FrozenTreeNode;
+import ch.thn.datatree.offheap.OffHeapTree;
+import ch.thn.datatree.offheap.OffHeapTreeNode;
+import ch.thn.datatree.persistent.PersistentTree;
+import ch.thn.datatree.persistent.PersistentTreeNode;
 import ch.thn.datatree.printer.TreeNodePlainTextPrinter;
 import ch.thn.datatree.printer.generic.PlainTextTreePrinter;
 
@@ -206,6 +222,72 @@ public class TreeTest {
 				
 	}
 	
+	@Test
+	public void treeIterationFromNode() throws Exception {
+		
+		System.out.println("\n ================= Tree iteration from node =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		KeyListTreeNode<String, String> keyListNode = new KeyListTreeNode<String, String>("tree", "Tree");
+		
+		buildValueTree(listNode);
+		buildKeyValueTree(keyListNode);
+		
+		List<String> referenceRest = new ArrayList<String>();
+		referenceRest.add("Child 2.2");
+		referenceRest.add("Child 2.2.1");
+		referenceRest.add("Child 2.2.2");
+		referenceRest.add("Child 2.2.2.1");
+		referenceRest.add("Child 2.3");
+		referenceRest.add("Child 2.4");
+		referenceRest.add("Child 2.4.1");
+		referenceRest.add("Child 3");
+		referenceRest.add("Child 3.1");
+		referenceRest.add("Child 3.2");
+		referenceRest.add("Child 4");
+		referenceRest.add("Child 4.1");
+		referenceRest.add("Child 4.2");
+		
+		List<String> referenceSubtree = referenceRest.subList(0, 4);
+		
+		List<String> listRest = new ArrayList<String>();
+		List<String> keyListRest = new ArrayList<String>();
+		List<String> listSubtree = new ArrayList<String>();
+		
+		ListTreeIterator<ListTreeNode<String>> iterator = listNode.getChildNode(1).getChildNode(1).listIterator(false);
+		while (iterator.hasNext()) {
+			listRest.add(iterator.next().getNodeValue());
+		}
+		
+		//Reaching the end does not start over
+		assertFalse(iterator.hasNext());
+		assertNull(iterator.peekNext());
+		
+		ListTreeIterator<KeyListTreeNode<String, String>> keyListIterator = keyListNode.getChildNode(1).getChildNode(1).listIterator(false);
+		while (keyListIterator.hasNext()) {
+			keyListRest.add(keyListIterator.next().getNodeValue());
+		}
+		
+		iterator = listNode.getChildNode(1).getChildNode(1).listIterator(true);
+		while (iterator.hasNext()) {
+			listSubtree.add(iterator.next().getNodeValue());
+		}
+		
+		System.out.println("-- Reference rest of tree -------------------------------------");
+		System.out.println(referenceRest);
+		System.out.println("-- List tree -------------------------------------");
+		System.out.println(listRest);
+		System.out.println("-- Key list tree -------------------------------------");
+		System.out.println(keyListRest);
+		System.out.println("-- List sub tree -------------------------------------");
+		System.out.println(listSubtree);
+		
+		assertThat(listRest, is(referenceRest));
+		assertThat(keyListRest, is(referenceRest));
+		assertThat(listSubtree, is(referenceSubtree));
+		
+	}
+	
 	@Test
 	public void treeIterationAndNavigation() throws Exception {
 		
@@ -315,6 +397,948 @@ public class TreeTest {
 		assertThat(iterationList, is(reference));
 	}
 	
+	@Test
+	public void arrayBackedListTree() throws Exception {
+		
+		System.out.println("\n ================= Array backed list tree =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		ListTreeNode<String> arrayListNode = new ListTreeNode<String>("Tree", true);
+		
+		buildValueTree(listNode);
+		buildValueTree(arrayListNode);
+		
+		TreeNodePlainTextPrinter printer = new TreeNodePlainTextPrinter();
+		
+		StringBuilder listNodeOut = printer.print(listNode);
+		StringBuilder arrayListNodeOut = printer.print(arrayListNode);
+		
+		System.out.println("-- List tree -------------------------------------");
+		System.out.println(listNodeOut);
+		System.out.println("-- Array backed list tree -------------------------------------");
+		System.out.println(arrayListNodeOut);
+		
+		//Child nodes created through the node use the same storage
+		assertTrue(arrayListNode.getChildNode(1).getChildNode(1).isArrayBacked());
+		assertTrue(DataTreeUtil.copyTree(arrayListNode).isArrayBacked());
+		
+		assertThat(arrayListNode.getChildNode(1).getChildNode(2).getNextSibling().getNodeValue(), is("Child 2.4"));
+		assertThat(arrayListNode.getChildNode(1).getChildNode(2).getPreviousSibling().getNodeValue(), is("Child 2.2"));
+		assertThat(arrayListNode.removeChildNode(2).getNodeValue(), is("Child 3"));
+		assertThat(arrayListNode.getChildNode(2).getNodeValue(), is("Child 4"));
+		
+		arrayListNode.addChildNodeAt(2, "Child 3")
+			.addChildNode("Child 3.1").getParentNode()
+			.addChildNode("Child 3.2");
+		
+		assertThat(arrayListNodeOut.toString(), is(equalTo(listNodeOut.toString())));
+		assertThat(printer.print(arrayListNode).toString(), is(equalTo(listNodeOut.toString())));
+		assertThat(buildBackwardListIterationList(arrayListNode), is(buildBackwardListIterationList(listNode)));
+		
+	}
+	
+	@Test
+	public void nodeIndex() throws Exception {
+		
+		System.out.println("\n ================= Node index =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		ListTreeNode<String> arrayListNode = new ListTreeNode<String>("Tree", true);
+		KeyListTreeNode<String, String> keyListNode = new KeyListTreeNode<String, String>("", "Tree");
+		
+		for (int i = 0; i < 20; i++) {
+			listNode.addChildNode("Child " + i);
+			arrayListNode.addChildNode("Child " + i);
+			keyListNode.addChildNode("child_" + i, "Child " + i);
+		}
+		
+		checkNodeIndexes(listNode);
+		checkNodeIndexes(arrayListNode);
+		checkNodeIndexes(keyListNode);
+		
+		//Inserting and removing in the middle changes the following indexes
+		listNode.addChildNodeAt(5, "Child X");
+		arrayListNode.addChildNodeAt(5, "Child X");
+		keyListNode.addChildNodeAt(5, "Child X");
+		checkNodeIndexes(listNode);
+		checkNodeIndexes(arrayListNode);
+		checkNodeIndexes(keyListNode);
+		
+		listNode.removeChildNode(2);
+		arrayListNode.getChildNode(2).removeNode();
+		keyListNode.removeChildNode(keyListNode.getChildNode(2));
+		checkNodeIndexes(listNode);
+		checkNodeIndexes(arrayListNode);
+		checkNodeIndexes(keyListNode);
+		
+		listNode.getChildNode(7).replaceNode("Child Y");
+		arrayListNode.getChildNode(7).replaceNode("Child Y");
+		keyListNode.getChildNode(7).replaceNode("Child Y");
+		keyListNode.removeChildNodes("child_11");
+		checkNodeIndexes(listNode);
+		checkNodeIndexes(arrayListNode);
+		checkNodeIndexes(keyListNode);
+		
+		assertThat(listNode.getChildNode(7).getNodeValue(), is("Child Y"));
+		assertThat(listNode.getChildNode(7).getNodeIndex(), is(7));
+		assertTrue(listNode.getLastChildNode().isLastNode());
+		assertTrue(listNode.getFirstChildNode().isFirstNode());
+		
+	}
+	
+	@Test
+	public void nodeDepthAndRoot() throws Exception {
+		
+		System.out.println("\n ================= Node depth and root =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		ListTreeNode<String> otherNode = new ListTreeNode<String>("Other tree");
+		
+		buildValueTree(listNode);
+		
+		ListTreeNode<String> child2 = listNode.getChildNode(1);
+		ListTreeNode<String> child2221 = child2.getChildNode(1).getChildNode(1).getChildNode(0);
+		
+		assertThat(child2221.getNodeDepth(), is(4));
+		assertThat(child2221.getRootNode(), is(sameInstance(listNode)));
+		assertThat(DataTreeUtil.highestNodeLevel(listNode), is(4));
+		
+		//Move a whole branch to another tree
+		child2.removeNode();
+		assertThat(child2221.getNodeDepth(), is(3));
+		assertThat(child2221.getRootNode(), is(sameInstance(child2)));
+		assertThat(DataTreeUtil.highestNodeLevel(listNode), is(3));
+		
+		otherNode.addChildNode("Other child").addChildNode(child2);
+		assertThat(child2221.getNodeDepth(), is(5));
+		assertThat(child2221.getRootNode(), is(sameInstance(otherNode)));
+		assertThat(child2221.getHeadNode(), is(sameInstance(otherNode)));
+		
+		//Leaf nodes
+		ListTreeNode<String> leaf = new ListTreeNode<String>("Leaf");
+		assertThat(leaf.getNodeDepth(), is(0));
+		assertThat(leaf.getRootNode(), is(sameInstance(leaf)));
+		child2221.addChildNode(leaf);
+		assertThat(leaf.getNodeDepth(), is(6));
+		assertThat(leaf.getRootNode(), is(sameInstance(otherNode)));
+		leaf.removeNode();
+		assertThat(leaf.getNodeDepth(), is(0));
+		assertThat(leaf.getRootNode(), is(sameInstance(leaf)));
+		
+		//Replacing a node moves its children
+		ListTreeNode<String> child222 = child2221.getParentNode();
+		child222.replaceNode("Child 2.2.2 replaced");
+		assertThat(child2221.getParentNode().getNodeValue(), is("Child 2.2.2 replaced"));
+		assertThat(child2221.getNodeDepth(), is(5));
+		assertThat(child222.getNodeDepth(), is(0));
+		assertThat(child2221.getRootNode(), is(sameInstance(otherNode)));
+		
+	}
+	
+	@Test
+	public void globalIndex() throws Exception {
+		
+		System.out.println("\n ================= Global index =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		SetTreeNode<String> setNode = new SetTreeNode<String>("Tree");
+		KeyListTreeNode<String, String> keyListNode = new KeyListTreeNode<String, String>("tree", "Tree");
+		KeySetTreeNode<String, String> keySetNode = new KeySetTreeNode<String, String>("tree", "Tree");
+		
+		buildValueTree(listNode);
+		buildValueTree(setNode);
+		buildKeyValueTree(keyListNode);
+		buildKeyValueTree(keySetNode);
+		
+		checkGlobalIndexes(listNode);
+		checkGlobalIndexes(setNode);
+		checkGlobalIndexes(keyListNode);
+		checkGlobalIndexes(keySetNode);
+		
+		ListTreeNode<String> child2 = listNode.getChildNode(1);
+		assertThat(child2.getSubtreeSize(), is(9));
+		assertThat(child2.getGlobalIndex(), is(4));
+		assertThat(listNode.getNodeAtGlobalIndex(4), is(sameInstance(child2)));
+		
+		//Changes in the tree
+		child2.addChildNodeAt(0, "Child 2.0").addChildNode("Child 2.0.1");
+		checkGlobalIndexes(listNode);
+		assertThat(listNode.getNodeAtGlobalIndex(6).getNodeValue(), is("Child 2.0.1"));
+		
+		child2.getChildNode(2).removeNode();
+		checkGlobalIndexes(listNode);
+		assertThat(child2.getSubtreeSize(), is(7));
+		assertThat(listNode.getSubtreeSize(), is(17));
+		
+		keyListNode.getChildNode(1).addChildNodeAt(0, new KeyListTreeNode<String, String>("key", "Child 2.0"));
+		checkGlobalIndexes(keyListNode);
+		
+		//The index of the list iterator
+		ListTreeIterator<ListTreeNode<String>> iterator = child2.listIterator(true);
+		assertThat(iterator.nextIndex(), is(0));
+		iterator.next();
+		iterator.next();
+		assertThat(iterator.nextIndex(), is(2));
+		assertThat(iterator.previousIndex(), is(1));
+		iterator.previous();
+		assertThat(iterator.nextIndex(), is(1));
+		
+		iterator = child2.listIterator(false);
+		iterator.next();
+		assertThat(iterator.nextIndex(), is(5));
+		assertThat(iterator.previousIndex(), is(4));
+		
+		try {
+			listNode.getNodeAtGlobalIndex(17);
+			fail("Index out of bounds expected");
+		} catch (IndexOutOfBoundsException e) {
+			//Expected
+		}
+		
+	}
+	
+	@Test
+	public void ancestorCheck() throws Exception {
+		
+		System.out.println("\n ================= Ancestor check =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		SetTreeNode<String> setNode = new SetTreeNode<String>("Tree");
+		
+		buildValueTree(listNode);
+		buildValueTree(setNode);
+		
+		checkAncestors(listNode);
+		checkAncestors(setNode);
+		
+		ListTreeNode<String> child2 = listNode.getChildNode(1);
+		ListTreeNode<String> child22 = child2.getChildNode(1);
+		ListTreeNode<String> child2221 = child22.getChildNode(1).getChildNode(0);
+		
+		assertTrue(child2.isAncestorOf(child2221));
+		assertTrue(child2221.isDescendantOf(listNode));
+		assertFalse(child2221.isAncestorOf(child2));
+		assertFalse(child2.isAncestorOf(child2));
+		assertFalse(listNode.getChildNode(0).isAncestorOf(child2221));
+		
+		//Adding leaf nodes keeps the labels
+		ListTreeNode<String> leaf = child2221;
+		for (int i = 0; i < 100; i++) {
+			leaf = leaf.addChildNode("Leaf " + i);
+			child22.addChildNode("Leaf " + i);
+		}
+		
+		assertTrue(child2.isAncestorOf(leaf));
+		assertFalse(listNode.getChildNode(2).isAncestorOf(leaf));
+		checkAncestors(listNode);
+		
+		//Moving a branch
+		ListTreeNode<String> otherNode = new ListTreeNode<String>("Other tree");
+		child22.removeNode();
+		assertFalse(child2.isAncestorOf(leaf));
+		assertFalse(listNode.isAncestorOf(child2221));
+		assertTrue(child22.isAncestorOf(leaf));
+		
+		otherNode.addChildNode(child22);
+		assertTrue(otherNode.isAncestorOf(leaf));
+		assertFalse(listNode.isAncestorOf(leaf));
+		checkAncestors(otherNode);
+		
+		//Removing a leaf
+		leaf.removeNode();
+		assertFalse(otherNode.isAncestorOf(leaf));
+		assertFalse(leaf.isDescendantOf(child2221));
+		
+	}
+	
+	@Test
+	public void ancestorIndex() throws Exception {
+		
+		System.out.println("\n ================= Ancestor index =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		buildValueTree(listNode);
+		
+		ListTreeNode<String> child2 = listNode.getChildNode(1);
+		ListTreeNode<String> child21 = child2.getChildNode(0);
+		ListTreeNode<String> child22 = child2.getChildNode(1);
+		ListTreeNode<String> child2221 = child22.getChildNode(1).getChildNode(0);
+		ListTreeNode<String> child42 = listNode.getChildNode(3).getChildNode(0).getChildNode(0);
+		
+		TreeAncestorIndex<ListTreeNode<String>> index = new TreeAncestorIndex<ListTreeNode<String>>(child21);
+		
+		assertThat(index.lowestCommonAncestor(child2221, child21), is(sameInstance(child2)));
+		assertThat(index.lowestCommonAncestor(child21, child2221), is(sameInstance(child2)));
+		assertThat(index.lowestCommonAncestor(child2221, child22), is(sameInstance(child22)));
+		assertThat(index.lowestCommonAncestor(child2221, child42), is(sameInstance(listNode)));
+		assertThat(index.lowestCommonAncestor(child42, child42), is(sameInstance(child42)));
+		
+		assertThat(index.ancestorAtDepth(child2221, 0), is(sameInstance(listNode)));
+		assertThat(index.ancestorAtDepth(child2221, 1), is(sameInstance(child2)));
+		assertThat(index.ancestorAtDepth(child2221, 2), is(sameInstance(child22)));
+		assertThat(index.ancestorAtDepth(child2221, 4), is(sameInstance(child2221)));
+		assertNull(index.ancestorAtDepth(child2221, 5));
+		
+		//Changing the tree updates the index
+		ListTreeNode<String> newNode = child42.addChildNode("Child 4.3");
+		assertThat(index.getNodeDepth(newNode), is(4));
+		assertThat(index.lowestCommonAncestor(newNode, child42), is(sameInstance(child42)));
+		
+		child22.removeNode();
+		assertNull(index.lowestCommonAncestor(child2221, child21));
+		assertThat(index.getNodeDepth(child2221), is(-1));
+		
+		listNode.getChildNode(0).addChildNode(child22);
+		assertThat(index.lowestCommonAncestor(child2221, child21), is(sameInstance(listNode)));
+		assertThat(index.ancestorAtDepth(child2221, 1), is(sameInstance(listNode.getChildNode(0))));
+		
+		index.dispose();
+		
+	}
+	
+	@Test
+	public void frozenTree() throws Exception {
+		
+		System.out.println("\n ================= Frozen tree =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		SetTreeNode<String> setNode = new SetTreeNode<String>("Tree");
+		
+		buildValueTree(listNode);
+		buildValueTree(setNode);
+		
+		FrozenTreeNode<String> frozenListNode = DataTreeUtil.freeze(listNode);
+		FrozenTreeNode<String> frozenSetNode = DataTreeUtil.freeze(setNode);
+		
+		TreeNodePlainTextPrinter<ListTreeNode<String>> listPrinter = new TreeNodePlainTextPrinter<ListTreeNode<String>>();
+		TreeNodePlainTextPrinter<FrozenTreeNode<String>> frozenPrinter = new TreeNodePlainTextPrinter<FrozenTreeNode<String>>();
+		
+		String reference = listPrinter.print(listNode).toString();
+		System.out.println(frozenPrinter.print(frozenListNode));
+		
+		assertThat(frozenPrinter.print(frozenListNode).toString(), is(reference));
+		assertThat(frozenPrinter.print(frozenSetNode).toString(), is(reference));
+		assertThat(frozenListNode.getTree().size(), is(19));
+		
+		//Same iteration and navigation
+		assertThat(buildForwardListIterationList(frozenListNode), is(buildForwardListIterationList(listNode)));
+		assertThat(buildBackwardListIterationList(frozenListNode), is(buildBackwardListIterationList(listNode)));
+		
+		for (ListTreeNode<String> node : listNode) {
+			FrozenTreeNode<String> frozenNode = frozenListNode.getNodeAtGlobalIndex(node.getGlobalIndex());
+			
+			assertThat(frozenNode.getNodeValue(), is(node.getNodeValue()));
+			assertThat(frozenNode.getNodeDepth(), is(node.getNodeDepth()));
+			assertThat(frozenNode.getNodeIndex(), is(node.getNodeIndex()));
+			assertThat(frozenNode.getSubtreeSize(), is(node.getSubtreeSize()));
+			assertThat(frozenNode.getChildNodesCount(), is(node.getChildNodesCount()));
+			
+			if (! node.isRootNode()) {
+				assertThat(frozenNode.getParentNode().getNodeValue(), is(node.getParentNode().getNodeValue()));
+				assertThat(frozenNode.getFirstSibling().getNodeValue(), is(node.getFirstSibling().getNodeValue()));
+				assertThat(frozenNode.getLastSibling().getNodeValue(), is(node.getParentNode().getLastChildNode().getNodeValue()));
+				assertThat(String.valueOf(frozenNode.getPreviousSibling()), is(String.valueOf(node.getPreviousSibling())));
+				assertThat(String.valueOf(frozenNode.getNextSibling()), is(String.valueOf(node.getNextSibling())));
+				assertThat(frozenNode.getParentNode().getChildNodeIndex(frozenNode), is(node.getNodeIndex()));
+			}
+		}
+		
+		//Child nodes in any order
+		FrozenTreeNode<String> frozenChild2 = frozenListNode.getChildNode(1);
+		for (int i = frozenChild2.getChildNodesCount() - 1; i >= 0; i--) {
+			assertThat(frozenChild2.getChildNode(i).getNodeValue(), is(listNode.getChildNode(1).getChildNode(i).getNodeValue()));
+			assertThat(frozenChild2.getChildNode(i).getNodeIndex(), is(i));
+		}
+		
+		FrozenTreeNode<String> frozenChild2221 = frozenChild2.getChildNode(1).getChildNode(1).getChildNode(0);
+		assertThat(frozenChild2221.getNodeValue(), is("Child 2.2.2.1"));
+		assertThat(frozenChild2221.getParentNode(), is(sameInstance(frozenChild2.getChildNode(1).getChildNode(1))));
+		assertTrue(frozenChild2.isAncestorOf(frozenChild2221));
+		assertFalse(frozenListNode.getChildNode(2).isAncestorOf(frozenChild2221));
+		
+		//Walk with skipped branches
+		final List<String> visited = new ArrayList<String>();
+		frozenListNode.accept(new TreeVisitor<FrozenTreeNode<String>>() {
+			
+			@Override
+			public VisitResult enterNode(FrozenTreeNode<String> node) {
+				visited.add("+" + node);
+				return node.getNodeValue().equals("Child 2.2") ? VisitResult.SKIP_SIBLINGS : VisitResult.CONTINUE;
+			}
+			
+			@Override
+			public VisitResult leaveNode(FrozenTreeNode<String> node) {
+				visited.add("-" + node);
+				return node.getNodeValue().equals("Child 3") ? VisitResult.TERMINATE : VisitResult.CONTINUE;
+			}
+		});
+		
+		assertThat(visited.toString(), is("[+Tree, +Child 1, +Child 1.1, -Child 1.1, +Child 1.2, -Child 1.2, -Child 1, " 
+				+ "+Child 2, +Child 2.1, -Child 2.1, +Child 2.2, -Child 2, +Child 3, +Child 3.1, -Child 3.1, " 
+				+ "+Child 3.2, -Child 3.2, -Child 3]"));
+		
+		try {
+			frozenChild2.addChildNode("New child");
+			fail("A frozen tree should not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			//Expected
+		}
+		
+		try {
+			frozenChild2.getChildNodes().remove(0);
+			fail("A frozen tree should not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			//Expected
+		}
+		
+	}
+	
+	@Test
+	public void offHeapTree() throws Exception {
+		
+		System.out.println("\n ================= Off-heap tree =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		buildValueTree(listNode);
+		
+		//Same structure, with the global index as key and the depth as value
+		OffHeapTree tree = new OffHeapTree();
+		OffHeapTreeNode offHeapNode = tree.createNode(0, 0);
+		
+		List<OffHeapTreeNode> offHeapNodes = new ArrayList<OffHeapTreeNode>();
+		offHeapNodes.add(offHeapNode);
+		
+		for (ListTreeNode<String> node : listNode) {
+			if (! node.isRootNode()) {
+				OffHeapTreeNode parent = offHeapNodes.get(node.getParentNode().getGlobalIndex());
+				offHeapNodes.add(parent.addChildNode(offHeapNodes.size(), node.getNodeDepth()));
+			}
+		}
+		
+		System.out.println(new TreeNodePlainTextPrinter<OffHeapTreeNode>().print(offHeapNode));
+		
+		assertThat(tree.size(), is(19));
+		assertThat(offHeapNode.getSubtreeSize(), is(19));
+		
+		int index = 0;
+		for (OffHeapTreeNode node : offHeapNode) {
+			ListTreeNode<String> reference = listNode.getNodeAtGlobalIndex(index);
+			
+			assertThat(node, is(sameInstance(offHeapNodes.get(index))));
+			assertThat(node.getKey(), is((long)index));
+			assertThat(node.getLongValue(), is((long)reference.getNodeDepth()));
+			assertThat(node.getGlobalIndex(), is(index));
+			assertThat(offHeapNode.getNodeAtGlobalIndex(index), is(sameInstance(node)));
+			assertThat(node.getNodeIndex(), is(reference.getNodeIndex()));
+			assertThat(node.getSubtreeSize(), is(reference.getSubtreeSize()));
+			assertThat(node.getChildNodesCount(), is(reference.getChildNodesCount()));
+			index++;
+		}
+		
+		//Backwards iteration
+		List<Long> keys = new ArrayList<Long>();
+		ListTreeIterator<OffHeapTreeNode> iterator = offHeapNode.listIterator();
+		while (iterator.hasNext()) {
+			iterator.next();
+		}
+		while (iterator.hasPrevious()) {
+			keys.add(0, iterator.previous().getKey());
+		}
+		
+		assertThat(keys.size(), is(19));
+		assertThat(keys.get(18), is(18L));
+		
+		//Move child 2.2 to the front of child 1
+		OffHeapTreeNode child1 = offHeapNode.getChildNode(0);
+		OffHeapTreeNode child22 = offHeapNode.getChildNode(1).getChildNode(1);
+		int child22Size = child22.getSubtreeSize();
+		
+		assertTrue(child22.removeNode());
+		assertTrue(child22.isRootNode());
+		child1.addChildNodeAt(0, child22);
+		
+		assertThat(child1.getFirstChildNode(), is(sameInstance(child22)));
+		assertThat(child22.getParentNode(), is(sameInstance(child1)));
+		assertThat(child22.getGlobalIndex(), is(2));
+		assertThat(child1.getSubtreeSize(), is(3 + child22Size));
+		assertTrue(child1.isAncestorOf(child22.getFirstChildNode()));
+		
+		try {
+			child22.addChildNode(child1);
+			fail("A node can not be added to its own sub tree");
+		} catch (TreeNodeError e) {
+			//Expected
+		}
+		
+		//Release child 3 and reuse its records
+		OffHeapTreeNode child3 = offHeapNode.getLastChildNode();
+		int child3Size = child3.getSubtreeSize();
+		
+		try {
+			child3.release();
+			fail("A node with a parent node can not be released");
+		} catch (TreeNodeError e) {
+			//Expected
+		}
+		
+		child3.removeNode();
+		child3.release();
+		
+		assertFalse(child3.isValid());
+		assertThat(tree.size(), is(19 - child3Size));
+		
+		offHeapNode.addChildNode(100, 1);
+		assertThat(tree.size(), is(20 - child3Size));
+		assertThat(offHeapNode.getSubtreeSize(), is(tree.size()));
+		assertThat(offHeapNode.getLastChildNode().getKey(), is(100L));
+		
+	}
+	
+	@Test
+	public void lazyChildNodes() throws Exception {
+		
+		System.out.println("\n ================= Lazy child nodes =====================\n");
+		
+		final List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+		
+		//Three child nodes per node, down to depth 3
+		ChildLoader<ListTreeNode<String>> loader = new ChildLoader<ListTreeNode<String>>() {
+			
+			@Override
+			public Collection<ListTreeNode<String>> loadChildNodes(ListTreeNode<String> node) {
+				loaded.add(node.getNodeValue());
+				
+				List<ListTreeNode<String>> childNodes = new ArrayList<ListTreeNode<String>>();
+				if (node.getNodeValue().length() < 4) {
+					for (int i = 1; i <= 3; i++) {
+						childNodes.add(new ListTreeNode<String>(node.getNodeValue() + i));
+					}
+				}
+				
+				return childNodes;
+			}
+		};
+		
+		ListTreeNode<String> tree = new ListTreeNode<String>("T");
+		tree.setChildLoader(loader);
+		
+		assertFalse(tree.isChildNodesLoaded());
+		assertTrue(loaded.isEmpty());
+		
+		assertThat(tree.getChildNodesCount(), is(3));
+		assertThat(loaded.toString(), is("[T]"));
+		
+		ListTreeNode<String> child2 = tree.getChildNode(1);
+		assertThat(child2.getNodeValue(), is("T2"));
+		assertThat(child2.getChildLoader(), is(sameInstance(loader)));
+		assertFalse(child2.isChildNodesLoaded());
+		
+		//Walking a branch only loads the branch
+		int count = 0;
+		for (Iterator<ListTreeNode<String>> it = child2.iterator(true); it.hasNext(); it.next()) {
+			count++;
+		}
+		
+		assertThat(count, is(13));
+		assertThat(loaded.size(), is(14));
+		assertFalse(tree.getChildNode(0).isChildNodesLoaded());
+		
+		//Unloading a collapsed branch loads it again when it is accessed
+		assertTrue(child2.unloadChildNodes());
+		assertFalse(child2.isChildNodesLoaded());
+		assertThat(tree.getSubtreeSize(), is(40));
+		//All 40 nodes, with the 13 nodes of the unloaded branch loaded twice
+		assertThat(loaded.size(), is(53));
+		
+		//Prefetched child nodes are only added when accessed
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		ListTreeNode<String> prefetched = new ListTreeNode<String>("P");
+		prefetched.setChildLoader(loader);
+		prefetched.prefetchChildNodes(executor);
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		
+		assertThat(loaded.get(loaded.size() - 1), is("P"));
+		assertFalse(prefetched.isChildNodesLoaded());
+		assertThat(prefetched.getChildNodesCount(), is(3));
+		assertThat(loaded.size(), is(54));
+		
+		//Removing the child nodes of an unloaded node does not load them
+		ListTreeNode<String> removed = prefetched.getChildNode(0);
+		removed.removeChildNodes();
+		assertTrue(removed.isLeafNode());
+		assertThat(loaded.size(), is(54));
+		
+	}
+	
+	@Test
+	public void persistentTree() throws Exception {
+		
+		System.out.println("\n ================= Persistent tree =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		buildValueTree(listNode);
+		
+		TreeNodePlainTextPrinter<ListTreeNode<String>> listPrinter = new TreeNodePlainTextPrinter<ListTreeNode<String>>();
+		TreeNodePlainTextPrinter<PersistentTreeNode<String>> persistentPrinter = new TreeNodePlainTextPrinter<PersistentTreeNode<String>>();
+		
+		String reference = listPrinter.print(listNode).toString();
+		
+		PersistentTree<String> version1 = DataTreeUtil.persist(listNode);
+		
+		assertThat(persistentPrinter.print(version1.getRootNode()).toString(), is(reference));
+		assertThat(version1.size(), is(19));
+		assertThat(buildForwardListIterationList(version1.getRootNode()), is(buildForwardListIterationList(listNode)));
+		assertThat(buildBackwardListIterationList(version1.getRootNode()), is(buildBackwardListIterationList(listNode)));
+		
+		for (ListTreeNode<String> node : listNode) {
+			PersistentTreeNode<String> persistentNode = version1.getRootNode().getNodeAtGlobalIndex(node.getGlobalIndex());
+			
+			assertThat(persistentNode.getNodeValue(), is(node.getNodeValue()));
+			assertThat(persistentNode.getGlobalIndex(), is(node.getGlobalIndex()));
+			assertThat(persistentNode.getNodeDepth(), is(node.getNodeDepth()));
+			assertThat(persistentNode.getSubtreeSize(), is(node.getSubtreeSize()));
+			assertThat(version1.getNode(persistentNode.getPath()), is(sameInstance(persistentNode)));
+		}
+		
+		//Each modification creates a new version
+		PersistentTreeNode<String> child2221 = version1.getNode(1, 1, 1, 0);
+		assertThat(child2221.getNodeValue(), is("Child 2.2.2.1"));
+		assertTrue(version1.getNode(1).isAncestorOf(child2221));
+		assertFalse(version1.getNode(2).isAncestorOf(child2221));
+		
+		PersistentTree<String> version2 = version1.setNodeValue(child2221, "Changed");
+		PersistentTree<String> version3 = version2.removeNode(version2.getNode(0));
+		PersistentTree<String> version4 = version3.addChildNodeAt(version3.getRootNode(), 0, "New child");
+		PersistentTree<String> version5 = version4.addChildTree(version4.getNode(0), version1);
+		PersistentTree<String> version6 = version5.replaceNode(version5.getNode(0, 0), PersistentTree.create("Replaced"));
+		
+		assertThat(persistentPrinter.print(version1.getRootNode()).toString(), is(reference));
+		assertThat(version1.getNode(1, 1, 1, 0).getNodeValue(), is("Child 2.2.2.1"));
+		
+		assertThat(version2.getNode(1, 1, 1, 0).getNodeValue(), is("Changed"));
+		assertThat(version2.size(), is(19));
+		
+		assertThat(version3.size(), is(16));
+		assertThat(version3.getNode(0).getNodeValue(), is("Child 2"));
+		assertThat(version3.getNode(0, 1, 1, 0).getNodeValue(), is("Changed"));
+		
+		assertThat(version4.size(), is(17));
+		assertThat(version4.getNode(0).getNodeValue(), is("New child"));
+		assertThat(version4.getNode(1).getNodeValue(), is("Child 2"));
+		
+		assertThat(version5.size(), is(36));
+		assertThat(version5.getNode(0, 0, 1, 1, 1, 0).getNodeValue(), is("Child 2.2.2.1"));
+		assertThat(version5.getNode(0, 0, 1, 1, 1, 0).getGlobalIndex(), is(child2221.getGlobalIndex() + 2));
+		
+		assertThat(version6.size(), is(18));
+		assertThat(version6.getNode(0, 0).getNodeValue(), is("Replaced"));
+		assertTrue(version6.getNode(0, 0).isLeafNode());
+		
+		//A node with many child nodes (spread over several chunks)
+		ListTreeNode<String> wideNode = new ListTreeNode<String>("Wide");
+		List<String> wideReference = new ArrayList<String>();
+		List<Integer> wideSizes = new ArrayList<Integer>();
+		for (int i = 0; i < 1500; i++) {
+			wideNode.addChildNode("Wide " + i);
+			wideReference.add("Wide " + i);
+			wideSizes.add(1);
+		}
+		
+		PersistentTree<String> wide = DataTreeUtil.persist(wideNode);
+		for (int i = 0; i < 700; i++) {
+			int index = (i * 7919) % wideReference.size();
+			
+			if (i % 3 == 0) {
+				wide = wide.removeNode(wide.getNode(index));
+				wideReference.remove(index);
+				wideSizes.remove(index);
+			} else if (i % 3 == 1) {
+				wide = wide.addChildNodeAt(wide.getRootNode(), index, "Added " + i);
+				wideReference.add(index, "Added " + i);
+				wideSizes.add(index, 1);
+			} else {
+				wide = wide.addChildNode(wide.getNode(index), "Grandchild " + i);
+				wide = wide.setNodeValue(wide.getNode(index), "Set " + i);
+				wideReference.set(index, "Set " + i);
+				wideSizes.set(index, wideSizes.get(index) + 1);
+			}
+		}
+		
+		List<String> wideValues = new ArrayList<String>();
+		List<Integer> wideValueSizes = new ArrayList<Integer>();
+		int wideSize = 1;
+		for (PersistentTreeNode<String> child : wide.getRootNode().getChildNodes()) {
+			wideValues.add(child.getNodeValue());
+			wideValueSizes.add(child.getSubtreeSize());
+			wideSize += child.getSubtreeSize();
+		}
+		
+		assertThat(wideValues, is(wideReference));
+		assertThat(wideValueSizes, is(wideSizes));
+		assertThat(wide.size(), is(wideSize));
+		
+		for (PersistentTreeNode<String> node : wide.getRootNode()) {
+			assertThat(wide.getRootNode().getNodeAtGlobalIndex(node.getGlobalIndex()), is(sameInstance(node)));
+		}
+		
+		try {
+			version2.setNodeValue(child2221, "Other version");
+			fail("Only nodes of the same version can be modified");
+		} catch (TreeNodeError e) {
+			//Expected
+		}
+		
+		try {
+			child2221.setNodeValue("Changed");
+			fail("A persistent tree node should not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			//Expected
+		}
+		
+	}
+	
+	@Test
+	public void copyTreeOnWrite() throws Exception {
+		
+		System.out.println("\n ================= Copy-on-write copy =====================\n");
+		
+		ListTreeNode<String> listNode = new ListTreeNode<String>("Tree");
+		buildValueTree(listNode);
+		
+		TreeNodePlainTextPrinter<ListTreeNode<String>> printer = new TreeNodePlainTextPrinter<ListTreeNode<String>>();
+		
+		ListTreeNode<String> eagerCopy = DataTreeUtil.copyTree(listNode);
+		ListTreeNode<String> copy = DataTreeUtil.copyTreeOnWrite(listNode);
+		
+		assertThat(copy.getNodeValue(), is("Tree"));
+		assertFalse(copy.isChildNodesLoaded());
+		
+		//Changes in the source tree materialize the path in the copy first
+		listNode.getChildNode(1).getChildNode(1).setNodeValue("Changed");
+		listNode.getChildNode(0).removeChildNodes();
+		listNode.getChildNode(2).addChildNode("Added to source");
+		
+		assertTrue(copy.isChildNodesLoaded());
+		assertTrue(copy.getChildNode(1).isChildNodesLoaded());
+		assertFalse(copy.getChildNode(1).getChildNode(0).isChildNodesLoaded());
+		assertFalse(copy.getChildNode(1).getChildNode(1).getChildNode(1).isChildNodesLoaded());
+		
+		//Changes in the copy do not change the source tree
+		copy.getChildNode(1).getChildNode(1).getChildNode(1).addChildNode("Added to copy");
+		eagerCopy.getChildNode(1).getChildNode(1).getChildNode(1).addChildNode("Added to copy");
+		
+		System.out.println(printer.print(copy));
+		
+		assertThat(printer.print(copy).toString(), is(printer.print(eagerCopy).toString()));
+		assertThat(copy.getSubtreeSize(), is(20));
+		assertThat(listNode.getSubtreeSize(), is(18));
+		assertThat(listNode.getChildNode(1).getChildNode(1).getChildNode(1).getChildNodesCount(), is(1));
+		
+		//A copy of a copy
+		ListTreeNode<String> copyOfCopy = DataTreeUtil.copyTreeOnWrite(copy);
+		copy.getChildNode(0).removeNode();
+		assertThat(copyOfCopy.getChildNode(0).getNodeValue(), is("Child 1"));
+		assertThat(copyOfCopy.getSubtreeSize(), is(20));
+		
+		//Removing the child nodes of a copy which has not loaded them yet
+		ListTreeNode<String> source = new ListTreeNode<String>("Source");
+		source.addChildNode("A");
+		source.addChildNode("B");
+		ListTreeNode<String> copy1 = source.copyTreeOnWrite();
+		ListTreeNode<String> copy2 = copy1.copyTreeOnWrite();
+		copy1.removeChildNodes();
+		assertThat(copy1.getChildNodesCount(), is(0));
+		assertThat(copy2.getChildNodesCount(), is(2));
+		assertThat(source.getChildNodesCount(), is(2));
+		
+		//The copy of a node which is detached from its tree before it changes
+		ListTreeNode<String> other = new ListTreeNode<String>("Other");
+		ListTreeNode<String> branch = other.addChildNode("Branch");
+		branch.addChildNode("C");
+		ListTreeNode<String> branchCopy = branch.getChildNode(0).copyTreeOnWrite();
+		branch.removeNode();
+		branch.getChildNode(0).addChildNode("D");
+		assertThat(branchCopy.getChildNodesCount(), is(0));
+		
+	}
+	
+	@Test
+	public void concurrentTree() throws Exception {
+		
+		final ConcurrentListTreeNode<String> tree = new ConcurrentListTreeNode<String>("Tree");
+		final int branches = 8;
+		final int nodesPerBranch = 500;
+		
+		for (int i = 0; i < branches; i++) {
+			tree.addChildNode("Branch " + i);
+		}
+		
+		//Each thread builds its own branch, while other threads read it
+		ExecutorService executor = Executors.newFixedThreadPool(branches * 2);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		
+		for (int i = 0; i < branches; i++) {
+			final ConcurrentListTreeNode<String> branch = tree.getChildNode(i);
+			
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					ConcurrentListTreeNode<String> parent = branch;
+					for (int j = 0; j < nodesPerBranch; j++) {
+						ConcurrentListTreeNode<String> node = parent.addChildNode("Node " + j);
+						
+						if (j % 10 == 0) {
+							parent = node;
+						}
+						
+						node.setNodeValue(node.getNodeValue() + " changed");
+					}
+				}
+			}));
+			
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < nodesPerBranch; j++) {
+						for (ConcurrentListTreeNode<String> child : branch.getChildNodes()) {
+							child.getNodeValue();
+							child.getChildNodesCount();
+						}
+						
+						branch.getSubtreeSize();
+					}
+				}
+			}));
+		}
+		
+		for (Future<?> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		
+		executor.shutdown();
+		
+		assertThat(tree.getSubtreeSize(), is(1 + branches + branches * nodesPerBranch));
+		for (int i = 0; i < branches; i++) {
+			assertThat(tree.getChildNode(i).getSubtreeSize(), is(1 + nodesPerBranch));
+			assertThat(tree.getChildNode(i).getChildNode(0).getNodeValue(), is("Node 0 changed"));
+		}
+		
+		//Iterating over the tree with the whole tree locked
+		StripedTreeLock lock = tree.getTreeLock();
+		int count = 0;
+		lock.lockTree(false);
+		try {
+			for (@SuppressWarnings("unused") ConcurrentListTreeNode<String> node : tree) {
+				count++;
+			}
+		} finally {
+			lock.unlockTree(false);
+		}
+		
+		assertThat(count, is(tree.getSubtreeSize()));
+		
+		//Queries while the tree is locked for reading, by several threads at once
+		final int size = tree.getSubtreeSize();
+		executor = Executors.newFixedThreadPool(branches);
+		futures.clear();
+		
+		for (int i = 0; i < branches; i++) {
+			final ConcurrentListTreeNode<String> node = tree.getChildNode(i).getChildNode(0).getChildNode(1);
+			
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					StripedTreeLock treeLock = tree.getTreeLock();
+					treeLock.lockTree(false);
+					try {
+						assertThat(node.getNodeIndex(), is(1));
+						
+						ListTreeIterator<ConcurrentListTreeNode<String>> iterator = tree.listIterator();
+						int index = 0;
+						while (iterator.hasNext()) {
+							assertThat(iterator.nextIndex(), is(index));
+							iterator.next();
+							index++;
+						}
+						
+						assertThat(index, is(size));
+					} finally {
+						treeLock.unlockTree(false);
+					}
+				}
+			}));
+		}
+		
+		for (Future<?> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		
+		executor.shutdown();
+		
+		//Nodes of another tree use another lock
+		try {
+			tree.addChildNode(new ConcurrentListTreeNode<String>("Other tree"));
+			fail("Node with another lock added");
+		} catch (TreeNodeError e) {
+			//Expected
+		}
+		
+	}
+	
+	/**
+	 * Compares the ancestor checks of all node pairs with the parent node chains
+	 * 
+	 * @param headNode
+	 */
+	private <N extends CollectionTreeNodeInterface<String, N>> void checkAncestors(N headNode) {
+		for (N node : headNode) {
+			for (N other : headNode) {
+				boolean ancestor = false;
+				for (N parent = other.getParentNode(); parent != null; parent = parent.getParentNode()) {
+					if (parent == node) {
+						ancestor = true;
+						break;
+					}
+				}
+				
+				assertThat(node + " / " + other, node.isAncestorOf(other), is(ancestor));
+				assertThat(node + " / " + other, other.isDescendantOf(node), is(ancestor));
+			}
+		}
+	}
+	
+	/**
+	 * Compares the global index of all nodes with their position in the tree
+	 * 
+	 * @param headNode
+	 */
+	private <N extends CollectionTreeNodeInterface<String, N>> void checkGlobalIndexes(N headNode) {
+		int index = 0;
+		
+		for (N node : headNode) {
+			assertThat(node.getNodeValue(), node.getGlobalIndex(), is(index));
+			assertThat(headNode.getNodeAtGlobalIndex(index), is(sameInstance(node)));
+			index++;
+		}
+		
+		assertThat(headNode.getSubtreeSize(), is(index));
+	}
+	
+	/**
+	 * Compares the (cached) node index of all child nodes with their actual position
+	 * 
+	 * @param node
+	 */
+	private <N extends ListTreeNodeInterface<String, N>> void checkNodeIndexes(N node) {
+		List<N> childNodes = new ArrayList<N>(node.getChildNodes());
+		
+		for (int i = 0; i < childNodes.size(); i++) {
+			assertThat(childNodes.get(i).getNodeValue(), childNodes.get(i).getNodeIndex(), is(i));
+			assertThat(node.getChildNodeIndex(childNodes.get(i)), is(i));
+		}
+	}
+	
 	@SuppressWarnings("unchecked")
 	@Test
 	public void treeIntersectFull() throws Exception {